@@ -0,0 +1,82 @@
+package commons.configuration.ext.benchmark;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
+import org.apache.commons.configuration.SystemConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import commons.configuration.ext.RuntimeConfiguration;
+import commons.configuration.ext.spring.ConfigurationFactory;
+
+/**
+ * Lookup throughput and latency percentiles of the composite built by {@link ConfigurationFactory}. The runtime
+ * configuration is the last child so every lookup passes the earlier children first. {@link #getObject()} measures
+ * building the composite.
+ *
+ * @author Timothy Storm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationFactoryBenchmark {
+    @Param({ "1000" })
+    public int keys;
+
+    @Param({ "1", "4" })
+    public int children;
+
+    ConfigurationFactory _factory;
+
+    Configuration _composite;
+
+    /** keys of the source, read only once set up */
+    String[] _keys;
+
+    @Setup
+    public void setUp() throws Exception {
+        Collection<Configuration> configs = new ArrayList<>();
+        configs.add(new SystemConfiguration());
+        for (int i = 1; i < children; i++) {
+            configs.add(new MapConfiguration(new HashMap<String, Object>()));
+        }
+        RuntimeConfiguration runtime = new RuntimeConfiguration();
+        runtime.load(new StringReader(new RuntimeXmlGenerator().keys(keys).generate()));
+        configs.add(runtime);
+        _factory = new ConfigurationFactory(configs);
+        _composite = _factory.getObject();
+
+        _keys = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            _keys[i] = RuntimeXmlGenerator.key(i);
+        }
+    }
+
+    @Benchmark
+    public String getString(KeyCursor cursor) {
+        return _composite.getString(cursor.next(_keys));
+    }
+
+    @Benchmark
+    public Configuration getObject() throws Exception {
+        return _factory.getObject();
+    }
+}
@@ -0,0 +1,22 @@
+package commons.configuration.ext.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Position of a benchmark thread in the keys of a benchmark, kept per thread so threads don't share a counter.
+ *
+ * @author Timothy Storm
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+    int _next;
+
+    /**
+     * @return the next of the keys, wrapping around
+     */
+    String next(String[] keys) {
+        int next = _next++ & Integer.MAX_VALUE;
+        return keys[next % keys.length];
+    }
+}
@@ -0,0 +1,72 @@
+package commons.configuration.ext.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import commons.configuration.ext.ConcurrentRuntimeConfiguration;
+import commons.configuration.ext.RuntimeConfiguration;
+
+/**
+ * Key lookup throughput and latency percentiles of {@link RuntimeConfiguration} and
+ * {@link ConcurrentRuntimeConfiguration}, single threaded and contended.
+ *
+ * @author Timothy Storm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeConfigurationBenchmark {
+    @Param({ "1000" })
+    public int keys;
+
+    @Param({ "runtime", "concurrent" })
+    public String type;
+
+    RuntimeConfiguration _config;
+
+    /** keys of the source, read only once set up */
+    String[] _keys;
+
+    @Setup
+    public void setUp() throws Exception {
+        _config = "concurrent".equals(type) ? new ConcurrentRuntimeConfiguration() : new RuntimeConfiguration();
+        _config.load(new StringReader(new RuntimeXmlGenerator().keys(keys).generate()));
+
+        _keys = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            _keys[i] = RuntimeXmlGenerator.key(i);
+        }
+    }
+
+    @Benchmark
+    public String getString(KeyCursor cursor) {
+        return _config.getString(cursor.next(_keys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getString_contended(KeyCursor cursor) {
+        return _config.getString(cursor.next(_keys));
+    }
+
+    @Benchmark
+    public boolean containsKey_missing() {
+        return _config.containsKey("missing.key");
+    }
+}
@@ -0,0 +1,74 @@
+package commons.configuration.ext.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import commons.configuration.ext.RuntimeConfiguration;
+import commons.configuration.ext.RuntimeConfigurationHandler;
+
+/**
+ * Load and save throughput and latency percentiles of {@link RuntimeConfigurationHandler}
+ *
+ * @author Timothy Storm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeConfigurationHandlerBenchmark {
+    @Param({ "100", "10000" })
+    public int keys;
+
+    @Param({ "4" })
+    public int environments;
+
+    @Param({ "4" })
+    public int hostsPerEnvironment;
+
+    @Param({ "32" })
+    public int valueSize;
+
+    String _xml;
+
+    RuntimeConfiguration _loaded;
+
+    @Setup
+    public void setUp() throws Exception {
+        _xml = new RuntimeXmlGenerator().keys(keys).environments(environments)
+                .hostsPerEnvironment(hostsPerEnvironment).valueSize(valueSize).generate();
+
+        _loaded = new RuntimeConfiguration();
+        _loaded.load(new StringReader(_xml));
+    }
+
+    @Benchmark
+    public Configuration load() throws Exception {
+        Configuration config = new BaseConfiguration();
+        new RuntimeConfigurationHandler().load(new StringReader(_xml), config);
+        return config;
+    }
+
+    @Benchmark
+    public String save() throws Exception {
+        StringWriter writer = new StringWriter(_xml.length());
+        new RuntimeConfigurationHandler().save(_loaded, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package commons.configuration.ext.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generates synthetic runtime configuration xml for benchmarks. The local environment is always the last one declared
+ * and localhost is its last host, so host resolution has to look at every host.
+ * 
+ * <pre>
+ * String xml = new RuntimeXmlGenerator().keys(1000).environments(8).hostsPerEnvironment(4).valueSize(64).generate();
+ * </pre>
+ *
+ * @author Timothy Storm
+ */
+public class RuntimeXmlGenerator {
+    /** target namespace of the runtime schema, see META-INF/configuration-ext.schemas */
+    static final String NAMESPACE = "http://commons.apache.org/schema/env-configuration";
+
+    /** every n-th key has a global (*) value */
+    static final int GLOBAL_EVERY = 10;
+
+    private int _keys = 100, _environments = 4, _hostsPerEnvironment = 4, _valueSize = 32;
+
+    /**
+     * @return name of the environment the generated configuration resolves to
+     */
+    public String localEnvironment() {
+        return environment(_environments - 1);
+    }
+
+    static String environment(int index) {
+        return "ENV" + index;
+    }
+
+    static String key(int index) {
+        return "key." + index;
+    }
+
+    public RuntimeXmlGenerator environments(int environments) {
+        if (environments < 1) throw new IllegalArgumentException("at least one environment required!");
+        _environments = environments;
+        return this;
+    }
+
+    public RuntimeXmlGenerator hostsPerEnvironment(int hostsPerEnvironment) {
+        if (hostsPerEnvironment < 1) throw new IllegalArgumentException("at least one host required!");
+        _hostsPerEnvironment = hostsPerEnvironment;
+        return this;
+    }
+
+    public RuntimeXmlGenerator keys(int keys) {
+        if (keys < 0) throw new IllegalArgumentException("keys must not be negative!");
+        _keys = keys;
+        return this;
+    }
+
+    public RuntimeXmlGenerator valueSize(int valueSize) {
+        if (valueSize < 1) throw new IllegalArgumentException("value size must be positive!");
+        _valueSize = valueSize;
+        return this;
+    }
+
+    /**
+     * @return generated runtime configuration xml
+     */
+    public String generate() {
+        StringBuilder xml = new StringBuilder(_keys * _environments * (_valueSize + 32));
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<configuration xmlns=\"").append(NAMESPACE).append("\">\n");
+
+        xml.append("  <context>\n");
+        for (int env = 0; env < _environments; env++) {
+            xml.append("    <hosts env=\"").append(environment(env)).append("\">\n");
+            for (int host = 0; host < _hostsPerEnvironment; host++) {
+                boolean local = env == _environments - 1 && host == _hostsPerEnvironment - 1;
+                xml.append("      <host>");
+                xml.append(local ? "localhost" : "host-" + env + "-" + host + ".example.com");
+                xml.append("</host>\n");
+            }
+            xml.append("    </hosts>\n");
+        }
+        xml.append("  </context>\n");
+
+        for (int key = 0; key < _keys; key++) {
+            xml.append("  <property key=\"").append(key(key)).append("\">\n");
+            if (key % GLOBAL_EVERY == 0) value(xml, "*", key);
+            for (int env = 0; env < _environments; env++) {
+                value(xml, environment(env), key);
+            }
+            xml.append("  </property>\n");
+        }
+        xml.append("</configuration>\n");
+        return xml.toString();
+    }
+
+    private void value(StringBuilder xml, String env, int key) {
+        xml.append("    <value env=\"").append(env).append("\">");
+        String seed = env + "-" + key + "-";
+        for (int i = 0; i < _valueSize; i++) {
+            xml.append(seed.charAt(i % seed.length()));
+        }
+        xml.append("</value>\n");
+    }
+
+    /**
+     * Generates the xml into a file
+     * 
+     * @param file
+     *            to write
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public File write(File file) throws IOException {
+        Files.write(file.toPath(), generate().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,228 @@
+package commons.configuration.ext;
+
+import java.io.File;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertyConverter;
+
+/**
+ * A read optimized {@link RuntimeConfiguration}. Properties are published as an immutable, flat key to value table
+ * through a single volatile reference so reads take no locks and create no garbage. Loads, reloads and updates build a
+ * new table off to the side and swap it in atomically; readers see either the old or the new table, never a partially
+ * loaded one.
+ * <p>
+ * <em>Note:</em> reads do not consult the reloading strategy. Reloading is triggered by calling {@link #reload()} or
+ * {@link #refresh()}, or by a strategy that reloads in the background. A refresh publishes the reloaded table in one
+ * swap; the configuration is never observed empty.
+ *
+ * @author Timothy Storm
+ */
+public class ConcurrentRuntimeConfiguration extends RuntimeConfiguration {
+    /**
+     * immutable <key, value> table, values are a String or an unmodifiable List. Not initialized in the declaration
+     * because the super constructors may already have loaded it.
+     */
+    private volatile Map<String, Object> _table;
+
+    /** table under construction by {@link #addPropertiesDirect(Map)}, only accessed under the reload lock */
+    private Map<String, Object> _bulk;
+
+    public ConcurrentRuntimeConfiguration() {
+        super();
+        if (_table == null) _table = Collections.emptyMap();
+    }
+
+    public ConcurrentRuntimeConfiguration(File file) throws ConfigurationException {
+        super(file);
+        if (_table == null) _table = Collections.emptyMap();
+    }
+
+    public ConcurrentRuntimeConfiguration(String fileName) throws ConfigurationException {
+        super(fileName);
+        if (_table == null) _table = Collections.emptyMap();
+    }
+
+    public ConcurrentRuntimeConfiguration(URL url) throws ConfigurationException {
+        super(url);
+        if (_table == null) _table = Collections.emptyMap();
+    }
+
+    /**
+     * Adds a value to a table under construction, turning repeated values into an unmodifiable list.
+     */
+    @SuppressWarnings("unchecked")
+    private static void add(Map<String, Object> table, String key, Object value) {
+        Object previous = table.get(key);
+        if (previous == null) table.put(key, value);
+        else {
+            List<Object> list = new ArrayList<>();
+            if (previous instanceof List) list.addAll((List<Object>) previous);
+            else list.add(previous);
+            list.add(value);
+            table.put(key, Collections.unmodifiableList(list));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The diff is applied to a copy of the current table which is then published in one swap.
+     */
+    @Override
+    protected void apply(PropertiesDiff diff) {
+        synchronized (reloadLock) {
+            Map<String, Object> table = new HashMap<>(_table);
+            table.keySet().removeAll(diff.getRemoved().keySet());
+            table.putAll(diff.getChanged());
+            table.putAll(diff.getAdded());
+            publish(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The properties are added to a single copy of the current table which is then published in one swap.
+     */
+    @Override
+    protected void addPropertiesDirect(Map<String, ?> properties) {
+        synchronized (reloadLock) {
+            Map<String, Object> table = new HashMap<>(_table);
+            _bulk = table;
+            try {
+                super.addPropertiesDirect(properties);
+            } finally {
+                _bulk = null;
+            }
+            publish(table);
+        }
+    }
+
+    @Override
+    protected void addPropertyDirect(String key, Object value) {
+        synchronized (reloadLock) {
+            if (_bulk != null) {
+                add(_bulk, key, value);
+                return;
+            }
+
+            Map<String, Object> table = new HashMap<>(_table);
+            add(table, key, value);
+            publish(table);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (reloadLock) {
+            fireEvent(EVENT_CLEAR, null, null, true);
+            publish(new HashMap<String, Object>());
+            fireEvent(EVENT_CLEAR, null, null, false);
+        }
+    }
+
+    @Override
+    protected void clearPropertyDirect(String key) {
+        synchronized (reloadLock) {
+            if (!_table.containsKey(key)) return;
+
+            Map<String, Object> table = new HashMap<>(_table);
+            table.remove(key);
+            publish(table);
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return _table.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The keys of the current table; later changes are not visible to the iterator.
+     */
+    @Override
+    public Iterator<String> getKeys() {
+        return _table.keySet().iterator();
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        return _table.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The current table, it is immutable so no copy is made.
+     */
+    @Override
+    protected Map<String, Object> getPropertyTable() {
+        return _table;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _table.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The source is loaded into a staging configuration and merged into a copy of the current table, which is then
+     * published in one step.
+     */
+    @Override
+    public void load(Reader reader) throws ConfigurationException {
+        synchronized (reloadLock) {
+            Map<String, Object> staged = stage(reader);
+
+            // the table is still null when loaded by a super constructor
+            Map<String, Object> table = new HashMap<>();
+            if (_table != null) table.putAll(_table);
+            for (Entry<String, Object> entry : staged.entrySet()) {
+                if (entry.getValue() instanceof List) for (Object value : (List<?>) entry.getValue())
+                    add(table, entry.getKey(), value);
+                else add(table, entry.getKey(), entry.getValue());
+            }
+            publish(table);
+        }
+    }
+
+    /**
+     * Swaps in a new table. The table must not be changed afterwards.
+     *
+     * @param table
+     *            to publish
+     */
+    protected void publish(Map<String, Object> table) {
+        _table = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The property is replaced in a single swap so readers never observe it missing.
+     */
+    @Override
+    public void setProperty(String key, Object value) {
+        synchronized (reloadLock) {
+            fireEvent(EVENT_SET_PROPERTY, key, value, true);
+
+            Map<String, Object> table = new HashMap<>(_table);
+            table.remove(key);
+            char delimiter = isDelimiterParsingDisabled() ? DISABLED_DELIMITER : getListDelimiter();
+            for (Iterator<?> values = PropertyConverter.toIterator(value, delimiter); values.hasNext();) {
+                add(table, key, values.next());
+            }
+            publish(table);
+
+            fireEvent(EVENT_SET_PROPERTY, key, value, false);
+            possiblySave();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package commons.configuration.ext;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Counts the characters read through it
+ * 
+ * @author Timothy Storm
+ */
+class CountingReader extends FilterReader {
+    private long _count;
+
+    CountingReader(Reader in) {
+        super(in);
+    }
+
+    long count() {
+        return _count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c != -1) _count++;
+        return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) _count += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        _count += skipped;
+        return skipped;
+    }
+}
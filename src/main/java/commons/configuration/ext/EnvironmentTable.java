@@ -0,0 +1,212 @@
+package commons.configuration.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * The values of every environment of a runtime configuration source. Environments are interned to int ids and each key
+ * maps to an array of values indexed by environment id, so a lookup is one hash probe and one array index and
+ * allocates nothing. Global (*) values are resolved into every environment up front.
+ * <p>
+ * Values are as written in the source; they are neither interpolated nor parsed. Instances are immutable.
+ *
+ * @author Timothy Storm
+ * @see RuntimeConfiguration#setKeepEnvironments(boolean)
+ */
+public final class EnvironmentTable {
+    /** environment names by id */
+    private final String[] _environments;
+
+    /** <environment, id> */
+    private final Map<String, Integer> _environmentIds;
+
+    /** <key, row> in document order */
+    private final Map<String, Integer> _rows;
+
+    /** values by row and environment id, null where the key has no value */
+    private final String[][] _values;
+
+    /** types by row and environment id, a row is null if none of its values declare a type */
+    private final ValueType[][] _types;
+
+    private EnvironmentTable(String[] environments, Map<String, Integer> environmentIds, Map<String, Integer> rows,
+            String[][] values, ValueType[][] types) {
+        _environments = environments;
+        _environmentIds = environmentIds;
+        _rows = rows;
+        _values = values;
+        _types = types;
+    }
+
+    /**
+     * @param id
+     *            of the environment
+     * @return name of the environment
+     * @throws IndexOutOfBoundsException
+     *             if the id is unknown
+     */
+    public String getEnvironment(int id) {
+        return _environments[id];
+    }
+
+    /**
+     * @param environment
+     *            name of the environment
+     * @return id of the environment, -1 if the environment is unknown
+     */
+    public int getEnvironmentId(String environment) {
+        Integer id = _environmentIds.get(environment);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return names of the environments, indexed by id
+     */
+    public List<String> getEnvironments() {
+        return Collections.unmodifiableList(Arrays.asList(_environments));
+    }
+
+    /**
+     * @return keys of the source in document order
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(_rows.keySet());
+    }
+
+    /**
+     * @param environment
+     *            id of the environment
+     * @return <key, value> of the environment in document order
+     */
+    public Map<String, String> getProperties(int environment) {
+        checkEnvironment(environment);
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (Entry<String, Integer> row : _rows.entrySet()) {
+            String value = _values[row.getValue()][environment];
+            if (value != null) properties.put(row.getKey(), value);
+        }
+        return properties;
+    }
+
+    /**
+     * @param key
+     *            of the property
+     * @param environment
+     *            id of the environment
+     * @return value of the key in the environment, null if it has none
+     * @throws IndexOutOfBoundsException
+     *             if the environment id is unknown
+     */
+    public String getString(String key, int environment) {
+        checkEnvironment(environment);
+        Integer row = _rows.get(key);
+        return row == null ? null : _values[row][environment];
+    }
+
+    /**
+     * @param environment
+     *            id of the environment
+     * @return <key, type> of the values of the environment that declare a type
+     */
+    public Map<String, ValueType> getTypes(int environment) {
+        checkEnvironment(environment);
+        Map<String, ValueType> types = new HashMap<>();
+        for (Entry<String, Integer> row : _rows.entrySet()) {
+            ValueType[] rowTypes = _types[row.getValue()];
+            if (rowTypes != null && rowTypes[environment] != null) types.put(row.getKey(), rowTypes[environment]);
+        }
+        return types;
+    }
+
+    private void checkEnvironment(int environment) {
+        if (environment < 0 || environment >= _environments.length) {
+            throw new IndexOutOfBoundsException("unknown environment id " + environment);
+        }
+    }
+
+    /**
+     * Collects the values of a source as it is parsed. A key declared again replaces the earlier declaration and a
+     * global (*) value wins over the environment values of its property, as when a single environment is loaded.
+     */
+    static class Builder {
+        private static final String GLOBAL = "*";
+
+        private final List<String> _environments = new ArrayList<>();
+
+        private final Map<String, Integer> _environmentIds = new HashMap<>();
+
+        /** <key, <environment id, value>>, the global value is kept under -1 */
+        private final Map<String, Map<Integer, String>> _values = new LinkedHashMap<>();
+
+        /** <key, <environment id, type>> */
+        private final Map<String, Map<Integer, ValueType>> _types = new HashMap<>();
+
+        /**
+         * @return id of the environment, interned on first use
+         */
+        int environment(String environment) {
+            if (GLOBAL.equals(environment)) return -1;
+
+            Integer id = _environmentIds.get(environment);
+            if (id == null) {
+                _environmentIds.put(environment, id = _environments.size());
+                _environments.add(environment);
+            }
+            return id;
+        }
+
+        /**
+         * Starts a property, dropping any earlier declaration of the key
+         */
+        void property(String key) {
+            _values.remove(key);
+            _types.remove(key);
+            _values.put(key, new HashMap<Integer, String>());
+        }
+
+        void value(String key, String environment, String value, ValueType type) {
+            int id = environment(environment);
+            _values.get(key).put(id, value);
+
+            Map<Integer, ValueType> types = _types.get(key);
+            if (type != null) {
+                if (types == null) _types.put(key, types = new HashMap<>());
+                types.put(id, type);
+            } else if (types != null) types.remove(id);
+        }
+
+        EnvironmentTable build() {
+            int environments = _environments.size();
+            Map<String, Integer> rows = new LinkedHashMap<>();
+            String[][] values = new String[_values.size()][];
+            ValueType[][] types = new ValueType[_values.size()][];
+
+            for (Entry<String, Map<Integer, String>> property : _values.entrySet()) {
+                int row = rows.size();
+                rows.put(property.getKey(), row);
+                Map<Integer, String> byEnvironment = property.getValue();
+                Map<Integer, ValueType> typeByEnvironment = _types.get(property.getKey());
+
+                values[row] = new String[environments];
+                if (typeByEnvironment != null && !typeByEnvironment.isEmpty()) types[row] = new ValueType[environments];
+
+                String global = byEnvironment.get(-1);
+                for (int env = 0; env < environments; env++) {
+                    int source = global != null ? -1 : env;
+                    values[row][env] = byEnvironment.get(source);
+                    if (types[row] != null) types[row][env] = typeByEnvironment.get(source);
+                }
+            }
+
+            return new EnvironmentTable(_environments.toArray(new String[environments]), new HashMap<>(
+                    _environmentIds), rows, values, types);
+        }
+    }
+}
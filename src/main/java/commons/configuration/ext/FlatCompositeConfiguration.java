@@ -0,0 +1,180 @@
+package commons.configuration.ext;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.apache.commons.configuration.event.EventSource;
+
+/**
+ * A {@link CompositeConfiguration} that serves lookups from a single flattened key to value index instead of asking
+ * each child configuration in turn. The index honors the precedence of the children, the first child containing a key
+ * wins, and is rebuilt on the next read after a child signals a change.
+ * <p>
+ * <em>Note:</em> only children that are an {@link EventSource} signal changes. Changes that fire no event, e.g.
+ * {@link System#setProperty(String, String)} behind a {@link org.apache.commons.configuration.SystemConfiguration},
+ * are picked up after {@link #invalidate()}. Children that reload lazily on read are never read by a lookup; reload
+ * them in the background instead, see {@link commons.configuration.ext.reloading.WatchServiceReloadingStrategy}.
+ *
+ * @author Timothy Storm
+ */
+public class FlatCompositeConfiguration extends CompositeConfiguration implements ConfigurationListener {
+    /**
+     * <key, value> of the children by precedence, null when stale. Not initialized in the declaration because the
+     * super constructors already add children.
+     */
+    private volatile Map<String, Object> _index;
+
+    /** counts invalidations, an index built across an invalidation is not kept */
+    private AtomicLong _changes;
+
+    public FlatCompositeConfiguration() {
+        super();
+    }
+
+    public FlatCompositeConfiguration(Collection<? extends Configuration> configurations) {
+        super(configurations);
+        listen(getInMemoryConfiguration());
+    }
+
+    public FlatCompositeConfiguration(Configuration inMemoryConfiguration,
+            Collection<? extends Configuration> configurations) {
+        super(inMemoryConfiguration, configurations);
+        listen(inMemoryConfiguration);
+    }
+
+    @Override
+    public void addConfiguration(Configuration config, boolean asInMemory) {
+        super.addConfiguration(config, asInMemory);
+        listen(config);
+        invalidate();
+    }
+
+    @Override
+    protected void addPropertyDirect(String key, Object token) {
+        super.addPropertyDirect(key, token);
+        invalidate();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < getNumberOfConfigurations(); i++) {
+            Configuration config = getConfiguration(i);
+            if (config instanceof EventSource) ((EventSource) config).removeConfigurationListener(this);
+        }
+        super.clear();
+        listen(getInMemoryConfiguration());
+        invalidate();
+    }
+
+    @Override
+    protected void clearPropertyDirect(String key) {
+        super.clearPropertyDirect(key);
+        invalidate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Copies get their own index.
+     */
+    @Override
+    public Object clone() {
+        FlatCompositeConfiguration copy = (FlatCompositeConfiguration) super.clone();
+        copy._changes = new AtomicLong();
+        copy.invalidate();
+        return copy;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Invalidates the index after a child changed.
+     */
+    @Override
+    public void configurationChanged(ConfigurationEvent event) {
+        if (!event.isBeforeUpdate()) invalidate();
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return index().containsKey(key);
+    }
+
+    @Override
+    public Iterator<String> getKeys() {
+        return index().keySet().iterator();
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        return index().get(key);
+    }
+
+    /**
+     * @return the current index, built from the children if stale
+     */
+    private Map<String, Object> index() {
+        Map<String, Object> index = _index;
+        if (index != null) return index;
+
+        // children are read without holding a lock of this configuration, a child firing an event while it is read
+        // must never wait on this configuration
+        long changes = changes().get();
+        Map<String, Object> built = new LinkedHashMap<>();
+        for (int i = 0; i < getNumberOfConfigurations(); i++) {
+            Configuration config = getConfiguration(i);
+            for (Iterator<String> keys = config.getKeys(); keys.hasNext();) {
+                String key = keys.next();
+                if (!built.containsKey(key)) built.put(key, config.getProperty(key));
+            }
+        }
+        index = Collections.unmodifiableMap(built);
+
+        _index = index;
+        if (changes().get() != changes) _index = null; // a child changed while building
+        return index;
+    }
+
+    private synchronized AtomicLong changes() {
+        if (_changes == null) _changes = new AtomicLong();
+        return _changes;
+    }
+
+    /**
+     * Discards the index, the next read rebuilds it from the children. Call this after changing a child that does not
+     * signal its changes.
+     */
+    public void invalidate() {
+        changes().incrementAndGet();
+        _index = null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index().isEmpty();
+    }
+
+    private void listen(Configuration config) {
+        if (!(config instanceof EventSource)) return;
+
+        // a child added twice is listened to once
+        EventSource source = (EventSource) config;
+        source.removeConfigurationListener(this);
+        source.addConfigurationListener(this);
+    }
+
+    @Override
+    public void removeConfiguration(Configuration config) {
+        super.removeConfiguration(config);
+        if (config instanceof EventSource && config != getInMemoryConfiguration()) {
+            ((EventSource) config).removeConfigurationListener(this);
+        }
+        invalidate();
+    }
+}
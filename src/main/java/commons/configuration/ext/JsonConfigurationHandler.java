@@ -0,0 +1,341 @@
+package commons.configuration.ext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import commons.configuration.ext.matcher.HostMatcher;
+
+/**
+ * Handles runtime configurations written as json. The model is that of runtime xml; the source is parsed in a single
+ * streaming pass without schema validation, the host environment is resolved as soon as the context has been read and
+ * only the global (*) and host environment values are kept.
+ *
+ * <pre>
+ * {
+ *   "context": {
+ *     "local": ["localhost", "127.0.0.1"],
+ *     "prod": "prod.example.com"
+ *   },
+ *   "properties": {
+ *     "name": "app",
+ *     "url": { "local": "http://localhost", "prod": "https://example.com" },
+ *     "port": { "*": { "value": 8080, "type": "int" } }
+ *   }
+ * }
+ * </pre>
+ *
+ * A property mapped directly to a value is global (*). Numbers and booleans are read as their text, null as an empty
+ * value. The context must precede the properties.
+ *
+ * @author Timothy Storm
+ * @see RuntimeFormat#JSON
+ */
+public class JsonConfigurationHandler extends RuntimeConfigurationHandler {
+    public JsonConfigurationHandler() {
+        super();
+    }
+
+    public JsonConfigurationHandler(Collection<HostMatcher> hostMatchers) {
+        super(hostMatchers);
+    }
+
+    /**
+     * Writes a json string
+     */
+    private static void quote(Writer out, String text) throws IOException {
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.write(text, from, i - from);
+                if (c == '"' || c == '\\') out.write(new char[] { '\\', c });
+                else if (c == '\n') out.write("\\n");
+                else if (c == '\r') out.write("\\r");
+                else if (c == '\t') out.write("\\t");
+                else out.write(String.format("\\u%04x", (int) c));
+                from = i + 1;
+            }
+        }
+        out.write(text, from, text.length() - from);
+        out.write('"');
+    }
+
+    /**
+     * {@inheritDoc}
+     * Parses json in a single pass, reporting it as runtime xml elements.
+     */
+    @Override
+    protected void parse(Reader source) throws SAXException, IOException {
+        new Parser(source, this).parse();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Saves a zero level json configuration template, properties are streamed to the destination as the keys are
+     * iterated.
+     */
+    @Override
+    public synchronized void save(Configuration config, Writer destination) throws ConfigurationException {
+        if (config == null) throw new NullPointerException();
+
+        try {
+            destination.write("{\n  \"context\": {\n    \"0\": [\"localhost\"]\n  },\n  \"properties\": {");
+            String separator = "\n    ";
+            for (Iterator<String> keys = config.getKeys(); keys.hasNext();) {
+                String key = keys.next();
+                Object value = config.getProperty(key);
+
+                if (value != null) {
+                    destination.write(separator);
+                    quote(destination, key);
+                    destination.write(": { \"0\": ");
+                    quote(destination, StringUtils.replace(String.valueOf(value), ",", "\\,"));
+                    destination.write(" }");
+                    separator = ",\n    ";
+                }
+            }
+            destination.write("\n  }\n}\n");
+            destination.flush();
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    /**
+     * Recursive descent json parser reporting to a {@link RuntimeTreeHandler}. Scalars are reported as their source
+     * text, no numbers are parsed.
+     */
+    private static class Parser implements Locator {
+        private final Reader _source;
+
+        private final RuntimeTreeHandler _tree;
+
+        private final char[] _buffer = new char[8192];
+
+        private final StringBuilder _text = new StringBuilder();
+
+        private int _position, _limit, _line = 1, _column = 1;
+
+        Parser(Reader source, RuntimeConfigurationHandler handler) {
+            _source = source;
+            _tree = new RuntimeTreeHandler(handler, this);
+        }
+
+        private SAXParseException error(String message) {
+            return new SAXParseException(message, this);
+        }
+
+        private void expect(char expected) throws SAXException, IOException {
+            int c = next();
+            if (c != expected) throw error("expected '" + expected + "' but found " + found(c));
+        }
+
+        private static String found(int c) {
+            return c == -1 ? "end of document" : "'" + (char) c + "'";
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return _column;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return _line;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        /**
+         * @return the next character, -1 at the end of the source
+         */
+        private int next() throws IOException {
+            if (_position == _limit && !fill()) return -1;
+
+            char c = _buffer[_position++];
+            if (c == '\n') {
+                _line++;
+                _column = 1;
+            } else _column++;
+            return c;
+        }
+
+        private boolean fill() throws IOException {
+            _limit = _source.read(_buffer);
+            _position = 0;
+            if (_limit == -1) {
+                _limit = 0;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the next character that is not white space without consuming it, -1 at the end of the source
+         */
+        private int peek() throws IOException {
+            for (;;) {
+                if (_position == _limit && !fill()) return -1;
+                char c = _buffer[_position];
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\uFEFF') return c;
+                next();
+            }
+        }
+
+        void parse() throws SAXException, IOException {
+            _tree.startDocument();
+            if (peek() != '{') throw error("expected '{' but found " + found(peek()));
+            value();
+            if (peek() != -1) throw error("unexpected " + found(peek()) + " after the configuration");
+            _tree.endDocument();
+        }
+
+        private void array() throws SAXException, IOException {
+            expect('[');
+            _tree.startArray();
+            if (peek() == ']') next();
+            else for (;;) {
+                value();
+                int c = peek();
+                next();
+                if (c == ']') break;
+                if (c != ',') throw error("expected ',' or ']' but found " + found(c));
+            }
+            _tree.end();
+        }
+
+        private void object() throws SAXException, IOException {
+            expect('{');
+            _tree.startObject();
+            if (peek() == '}') next();
+            else for (;;) {
+                if (peek() != '"') throw error("expected a member name but found " + found(peek()));
+                _tree.key(string());
+                if (peek() != ':') throw error("expected ':' but found " + found(peek()));
+                next();
+                value();
+                int c = peek();
+                next();
+                if (c == '}') break;
+                if (c != ',') throw error("expected ',' or '}' but found " + found(c));
+            }
+            _tree.end();
+        }
+
+        /**
+         * @return an unquoted literal; a number, true, false or null
+         */
+        private String literal() throws SAXException, IOException {
+            _text.setLength(0);
+            for (;;) {
+                if (_position == _limit && !fill()) break;
+                char c = _buffer[_position];
+                if (!Character.isLetterOrDigit(c) && c != '-' && c != '+' && c != '.') break;
+                _text.append(c);
+                next();
+            }
+            String literal = _text.toString();
+            if (literal.isEmpty()) throw error("unexpected " + found(peek()));
+            if ("null".equals(literal)) return null;
+            if (!"true".equals(literal) && !"false".equals(literal) && !isNumber(literal)) {
+                throw error("invalid literal '" + literal + "'");
+            }
+            return literal;
+        }
+
+        private static boolean isNumber(String literal) {
+            int i = literal.charAt(0) == '-' ? 1 : 0;
+            if (i == literal.length() || !Character.isDigit(literal.charAt(i))) return false;
+            try {
+                Double.parseDouble(literal);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private String string() throws SAXException, IOException {
+            expect('"');
+            _text.setLength(0);
+            for (;;) {
+                int c = next();
+                if (c == '"') return _text.toString();
+                if (c == -1 || c < 0x20) throw error("unterminated string");
+                if (c != '\\') {
+                    _text.append((char) c);
+                    continue;
+                }
+
+                c = next();
+                switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    _text.append((char) c);
+                    break;
+                case 'b':
+                    _text.append('\b');
+                    break;
+                case 'f':
+                    _text.append('\f');
+                    break;
+                case 'n':
+                    _text.append('\n');
+                    break;
+                case 'r':
+                    _text.append('\r');
+                    break;
+                case 't':
+                    _text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) throw error("invalid unicode escape");
+                        code = code * 16 + digit;
+                    }
+                    _text.append((char) code);
+                    break;
+                default:
+                    throw error("invalid escape " + found(c));
+                }
+            }
+        }
+
+        private void value() throws SAXException, IOException {
+            switch (peek()) {
+            case '{':
+                object();
+                break;
+            case '[':
+                array();
+                break;
+            case '"':
+                _tree.scalar(string());
+                break;
+            default:
+                _tree.scalar(literal());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package commons.configuration.ext;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Key level difference between two property tables. Reloads report the diff through a single
+ * {@link RuntimeConfiguration#EVENT_PROPERTIES_CHANGED} event.
+ *
+ * @author Timothy Storm
+ */
+public class PropertiesDiff {
+    private final Map<String, Object> _added, _changed, _removed;
+
+    private PropertiesDiff(Map<String, Object> added, Map<String, Object> changed, Map<String, Object> removed) {
+        _added = Collections.unmodifiableMap(added);
+        _changed = Collections.unmodifiableMap(changed);
+        _removed = Collections.unmodifiableMap(removed);
+    }
+
+    /**
+     * Compares two property tables
+     *
+     * @param before
+     *            <key, value> table before the change
+     * @param after
+     *            <key, value> table after the change
+     * @return difference of the tables
+     */
+    public static PropertiesDiff compare(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> added = new LinkedHashMap<>(), changed = new LinkedHashMap<>();
+        for (Entry<String, Object> entry : after.entrySet()) {
+            Object previous = before.get(entry.getKey());
+            if (previous == null) added.put(entry.getKey(), entry.getValue());
+            else if (!previous.equals(entry.getValue())) changed.put(entry.getKey(), entry.getValue());
+        }
+
+        Map<String, Object> removed = new LinkedHashMap<>();
+        for (Entry<String, Object> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) removed.put(entry.getKey(), entry.getValue());
+        }
+        return new PropertiesDiff(added, changed, removed);
+    }
+
+    /**
+     * @return <key, value> of keys that did not exist before
+     */
+    public Map<String, Object> getAdded() {
+        return _added;
+    }
+
+    /**
+     * @return <key, new value> of keys whose value changed
+     */
+    public Map<String, Object> getChanged() {
+        return _changed;
+    }
+
+    /**
+     * @return <key, old value> of keys that no longer exist
+     */
+    public Map<String, Object> getRemoved() {
+        return _removed;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return _added.isEmpty() && _changed.isEmpty() && _removed.isEmpty();
+    }
+
+    /**
+     * @return number of added, changed and removed keys
+     */
+    public int size() {
+        return _added.size() + _changed.size() + _removed.size();
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + _added.keySet() + ", changed=" + _changed.keySet() + ", removed=" + _removed.keySet();
+    }
+}
@@ -0,0 +1,122 @@
+package commons.configuration.ext;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Resolves the ${key} references between the properties of a single source at load time. Properties are resolved in
+ * dependency order, each exactly once, and cycles are reported before anything is loaded.
+ * <p>
+ * Only references to keys of the source are resolved, the rest are left for the configuration to interpolate on read;
+ * e.g. ${sys:user.home}, keys of other configurations, escaped $${key} references and references to values holding a
+ * list (an unescaped list delimiter) since those read as their first element.
+ *
+ * @author Timothy Storm
+ */
+final class PropertyInterpolator {
+    private static final String PREFIX = "${", SUFFIX = "}";
+
+    private static final char ESCAPE = '$';
+
+    /** <key, raw value> of the source */
+    private final Map<String, String> _raw;
+
+    /** list delimiter of the configuration */
+    private final char _delimiter;
+
+    /** true = values are never split into lists */
+    private final boolean _delimiterParsingDisabled;
+
+    /** <key, resolved value> of the properties resolved so far */
+    private final Map<String, String> _resolved = new HashMap<>();
+
+    private PropertyInterpolator(Map<String, String> raw, char delimiter, boolean delimiterParsingDisabled) {
+        _raw = raw;
+        _delimiter = delimiter;
+        _delimiterParsingDisabled = delimiterParsingDisabled;
+    }
+
+    /**
+     * @param properties
+     *            <key, raw value> of a source
+     * @param delimiter
+     *            list delimiter of the configuration the properties are loaded into
+     * @param delimiterParsingDisabled
+     *            true if the configuration never splits values into lists
+     * @return <key, resolved value> in the order of the properties
+     * @throws ConfigurationException
+     *             if the properties reference each other in a cycle
+     */
+    static Map<String, String> interpolate(Map<String, String> properties, char delimiter,
+            boolean delimiterParsingDisabled) throws ConfigurationException {
+        PropertyInterpolator interpolator = new PropertyInterpolator(properties, delimiter, delimiterParsingDisabled);
+        Map<String, String> interpolated = new LinkedHashMap<>();
+        for (String key : properties.keySet()) {
+            interpolated.put(key, interpolator.resolve(key, new LinkedHashSet<String>()));
+        }
+        return interpolated;
+    }
+
+    /**
+     * @return true if the value holds more than one value once split on the list delimiter
+     */
+    private boolean isList(String value) {
+        if (_delimiterParsingDisabled) return false;
+        for (int i = value.indexOf(_delimiter); i >= 0; i = value.indexOf(_delimiter, i + 1)) {
+            if (i == 0 || value.charAt(i - 1) != '\\') return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param path
+     *            keys being resolved, in order
+     * @return the resolved value of the key
+     */
+    private String resolve(String key, Set<String> path) throws ConfigurationException {
+        String resolved = _resolved.get(key);
+        if (resolved != null) return resolved;
+
+        if (!path.add(key)) {
+            throw new ConfigurationException("circular property reference " + StringUtils.join(path, " -> ")
+                    + " -> " + key);
+        }
+
+        String value = _raw.get(key);
+        if (value.contains(PREFIX)) value = substitute(value, path);
+
+        path.remove(key);
+        _resolved.put(key, value);
+        return value;
+    }
+
+    private String substitute(String value, Set<String> path) throws ConfigurationException {
+        StringBuilder substituted = new StringBuilder(value.length());
+        int from = 0;
+        for (int start; (start = value.indexOf(PREFIX, from)) >= 0;) {
+            int end = value.indexOf(SUFFIX, start + PREFIX.length());
+            if (end < 0) break;
+
+            // escaped references are kept as is, the configuration unescapes them on read
+            if (start > 0 && value.charAt(start - 1) == ESCAPE) {
+                substituted.append(value, from, end + 1);
+                from = end + 1;
+                continue;
+            }
+
+            String reference = value.substring(start + PREFIX.length(), end);
+            String target = _raw.get(reference);
+            substituted.append(value, from, start);
+            if (target == null || isList(target)) substituted.append(value, start, end + 1);
+            else substituted.append(resolve(reference, path));
+            from = end + 1;
+        }
+        return substituted.append(value, from, value.length()).toString();
+    }
+}
@@ -0,0 +1,321 @@
+package commons.configuration.ext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Append only journal of property changes made on top of a runtime configuration source. Each record holds the full
+ * value of a key in an environment after a change, or its removal, so replaying a record twice has the effect of
+ * replaying it once; a journal that survives the compaction of its changes into the source replays harmlessly.
+ * <p>
+ * The file starts with a magic number and a version, each record is written as
+ *
+ * <pre>
+ * int length | byte op | environment | key | int count | values... | int crc32
+ * </pre>
+ *
+ * where strings are an int length and utf-8 bytes and the checksum covers the bytes between length and checksum. A
+ * torn or corrupt record ends the journal, it and everything after it is truncated when the journal is opened.
+ *
+ * @author Timothy Storm
+ * @see RuntimeConfiguration#setJournalFile(File)
+ */
+final class PropertyJournal implements Closeable {
+    private static final Log LOG = LogFactory.getLog(PropertyJournal.class);
+
+    /** "RJNL" */
+    private static final int MAGIC = 0x524a4e4c;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_LENGTH = 8;
+
+    /** records larger than this are taken to be corrupt */
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    /** record ops */
+    static final byte PUT = 1, REMOVE = 2;
+
+    /** a change of a key */
+    static class Record {
+        final byte op;
+
+        /** of the configuration the change was made in */
+        final String environment;
+
+        final String key;
+
+        /** values of the key after the change, empty for a removal */
+        final List<String> values;
+
+        Record(byte op, String environment, String key, List<String> values) {
+            this.op = op;
+            this.environment = environment;
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    private final File _file;
+
+    private FileChannel _channel;
+
+    private int _size;
+
+    private PropertyJournal(File file, FileChannel channel, int size) {
+        _file = file;
+        _channel = channel;
+        _size = size;
+    }
+
+    /**
+     * Opens a journal, creating it if the file doesn't exist or is empty
+     *
+     * @param file
+     *            of the journal
+     * @param records
+     *            receives the intact records of the journal in order
+     * @return the journal, positioned to append
+     * @throws IOException
+     *             if the journal cannot be read or written, or the file is not a journal
+     */
+    static PropertyJournal open(File file, List<Record> records) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end = HEADER_LENGTH;
+            if (channel.size() == 0) {
+                writeHeader(channel);
+            } else {
+                readHeader(file, channel);
+                end = read(channel, records);
+            }
+            if (end < channel.size()) {
+                LOG.warn("truncating torn or corrupt records at the end of journal '" + file + "'");
+                channel.truncate(end);
+                channel.force(false);
+            }
+            channel.position(end);
+            return new PropertyJournal(file, channel, records.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the record, length and checksum included, ready to be written
+     */
+    private static ByteBuffer encode(byte op, String environment, String key, List<String> values) {
+        byte[] environmentBytes = environment.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> valueBytes = new ArrayList<>(values.size());
+        int size = 1 + 4 + environmentBytes.length + 4 + keyBytes.length + 4;
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            valueBytes.add(bytes);
+            size += 4 + bytes.length;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(4 + size + 4);
+        record.putInt(size).put(op).putInt(environmentBytes.length).put(environmentBytes).putInt(keyBytes.length)
+                .put(keyBytes).putInt(valueBytes.size());
+        for (byte[] bytes : valueBytes) {
+            record.putInt(bytes.length).put(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, size);
+        record.putInt((int) crc.getValue()).flip();
+        return record;
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalStateException("invalid string length");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the records following the header
+     *
+     * @return position after the last intact record
+     */
+    private static long read(FileChannel channel, List<Record> records) throws IOException {
+        long position = HEADER_LENGTH;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        CRC32 crc = new CRC32();
+        for (;;) {
+            length.clear();
+            if (readFully(channel, length, position) < 4) return position;
+            int size = length.getInt(0);
+            if (size <= 0 || size > MAX_RECORD_LENGTH) return position;
+
+            ByteBuffer record = ByteBuffer.allocate(size + 4);
+            if (readFully(channel, record, position + 4) < size + 4) return position;
+            crc.reset();
+            crc.update(record.array(), 0, size);
+            if ((int) crc.getValue() != record.getInt(size)) return position;
+
+            try {
+                record.clear();
+                record.limit(size);
+                byte op = record.get();
+                String environment = decode(record);
+                String key = decode(record);
+                int count = record.getInt();
+                List<String> values = new ArrayList<>(Math.min(count, size));
+                for (int i = 0; i < count; i++) {
+                    values.add(decode(record));
+                }
+                if ((op != PUT && op != REMOVE) || record.hasRemaining()) return position;
+                records.add(new Record(op, environment, key, Collections.unmodifiableList(values)));
+            } catch (RuntimeException e) {
+                // lengths inside the record don't add up
+                return position;
+            }
+            position += 4 + size + 4;
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) break;
+            read += n;
+        }
+        return read;
+    }
+
+    /**
+     * @throws IOException
+     *             if the file is not a journal of this version
+     */
+    private static void readHeader(File file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (readFully(channel, header, 0) < HEADER_LENGTH || header.getInt(0) != MAGIC) {
+            throw new IOException("'" + file + "' is not a journal");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("journal '" + file + "' has version " + header.getInt(4) + ", not " + VERSION);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Appends a record and forces it to the device before returning
+     *
+     * @param op
+     *            {@link #PUT} or {@link #REMOVE}
+     * @param environment
+     *            of the configuration the change is made in
+     * @param key
+     *            changed
+     * @param values
+     *            of the key after the change, empty for a removal
+     * @throws IOException
+     *             if the record cannot be written, the journal is left as it was
+     */
+    synchronized void append(byte op, String environment, String key, List<String> values) throws IOException {
+        ByteBuffer record = encode(op, environment, key, values);
+        long start = _channel.position();
+        try {
+            write(_channel, record);
+            _channel.force(false);
+        } catch (IOException e) {
+            // drop a partial record so later appends follow the last intact one
+            _channel.truncate(start);
+            _channel.position(start);
+            throw e;
+        }
+        _size++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _channel.close();
+    }
+
+    /**
+     * @return file of the journal
+     */
+    File getFile() {
+        return _file;
+    }
+
+    /**
+     * Replaces every record, called once the other changes are part of the source. The records are written to a file
+     * next to the journal, forced to disk and then atomically renamed over the journal; the journal is never truncated
+     * in place.
+     *
+     * @param records
+     *            to keep, in order
+     * @throws IOException
+     *             if the records cannot be written or renamed, the journal is left as it was
+     */
+    synchronized void rewrite(List<Record> records) throws IOException {
+        File file = _file.getAbsoluteFile();
+        File rewritten = new File(file.getParentFile(), file.getName() + ".rewrite");
+        FileChannel channel = FileChannel.open(rewritten.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeHeader(channel);
+            for (Record record : records) {
+                write(channel, encode(record.op, record.environment, record.key, record.values));
+            }
+            channel.force(false);
+            Files.move(rewritten.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(rewritten.toPath());
+            throw e;
+        }
+
+        try {
+            _channel.close();
+        } catch (IOException e) {
+            LOG.warn("failed to close the replaced journal '" + _file + "'", e);
+        }
+        _channel = channel;
+        _size = records.size();
+    }
+
+    /**
+     * @return number of records in the journal
+     */
+    synchronized int size() {
+        return _size;
+    }
+}
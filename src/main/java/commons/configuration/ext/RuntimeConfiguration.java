@@ -1,17 +1,57 @@
 package commons.configuration.ext;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.configuration.BaseConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConfigurationUtils;
+import org.apache.commons.configuration.ConfigurationRuntimeException;
+import org.apache.commons.configuration.ConversionException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.PropertyConverter;
+import org.apache.commons.lang.StringUtils;
+
+import commons.configuration.ext.metrics.LoadMetrics;
+import commons.configuration.ext.metrics.LoadMetricsListener;
+import commons.configuration.ext.metrics.RuntimeConfigurationMetrics;
 
 /**
  * A {@link Configuration} that can determine what properties to serve based on the runtime environment.
  * <p>
+ * Sources may be runtime xml, json or yaml; the format is taken from the file name's extension or sniffed from the
+ * source, see {@link RuntimeFormat}.
+ * <p>
  * <em>Note:</em>Configuration objects of this type can be read concurrently by multiple threads.
  * 
  * @author Darren Bruxvoort
@@ -19,6 +59,83 @@ import org.apache.commons.configuration.PropertiesConfiguration;
  * @see RuntimeConfigurationHandler
  */
 public class RuntimeConfiguration extends PropertiesConfiguration {
+    /**
+     * Event fired once after a {@link #refresh()} has applied the reloaded properties. The event's property value is
+     * the {@link PropertiesDiff} that was applied.
+     */
+    public static final int EVENT_PROPERTIES_CHANGED = 30;
+
+    /**
+     * Event fired once after {@link #addProperties(Map)} has installed a table of properties. The event's property
+     * value is the unmodifiable table.
+     */
+    public static final int EVENT_PROPERTIES_ADDED = 31;
+
+    /** delimiter that never splits, used when delimiter parsing is disabled */
+    static final char DISABLED_DELIMITER = '\0';
+
+    /** escapes the list delimiter */
+    private static final char LIST_ESCAPE = '\\';
+
+    /** journaled changes that trigger a background compaction by default */
+    private static final int DEFAULT_JOURNAL_COMPACTION_THRESHOLD = 1000;
+
+    /** compacts journals in the background, one at a time for every configuration */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "runtime-configuration-compactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** directory of binary snapshots, null if snapshots are disabled */
+    private File _snapshotDirectory;
+
+    /** true = resolve ${key} references between the properties at load time */
+    private boolean _eagerInterpolation;
+
+    /** true = keep the values of every environment */
+    private boolean _keepEnvironments;
+
+    /** values of every environment of the last load, null if environments are not kept */
+    private volatile EnvironmentTable _environmentTable;
+
+    /** environment of the current properties, and the host environment resolved by the last load */
+    private volatile String _environment, _hostEnvironment;
+
+    /** <key, typed value> of the typed properties of the last load, null until something is loaded */
+    private volatile Map<String, TypedValue> _typedValues;
+
+    /** environment selected by {@link #setEnvironment(String)}, null to follow the host environment */
+    private String _selectedEnvironment;
+
+    /** true = saves merge the changed values into the source */
+    private boolean _mergeOnSave;
+
+    /** journal of the changes made on top of the source, null if changes are not journaled */
+    private PropertyJournal _journal;
+
+    /**
+     * <environment, <key, values>> of the journaled changes not yet compacted into the source, no values for a
+     * removal. Only accessed under the reload lock, null while the super constructors load.
+     */
+    private final Map<String, Map<String, List<String>>> _journaled = new LinkedHashMap<>();
+
+    private int _journalCompactionThreshold = DEFAULT_JOURNAL_COMPACTION_THRESHOLD;
+
+    /** true while a background compaction is queued */
+    private boolean _compactionPending;
+
+    /** serializes compactions */
+    private final Object _compactionLock = new Object();
+
+    /** mirrors the detail events counter, negative while a change is made of other changes; under the reload lock */
+    private int _detailEvents;
+
+    /** notified of load metrics, null until the first listener is added */
+    private volatile List<LoadMetricsListener> _loadMetricsListeners;
 
     public RuntimeConfiguration() {
         super();
@@ -36,17 +153,1126 @@ public class RuntimeConfiguration extends PropertiesConfiguration {
         super(url);
     }
 
+    /**
+     * Measures the loads of this configuration. Loads are only measured while at least one listener is registered;
+     * loads served from a snapshot are not measured.
+     * 
+     * @param listener
+     *            notified after each load
+     * @see RuntimeConfigurationMetrics
+     */
+    public void addLoadMetricsListener(LoadMetricsListener listener) {
+        if (listener == null) throw new NullPointerException("listener required!");
+        synchronized (reloadLock) {
+            if (_loadMetricsListeners == null) _loadMetricsListeners = new CopyOnWriteArrayList<>();
+            _loadMetricsListeners.add(listener);
+        }
+    }
+
+    /**
+     * Installs a table of properties in one step, e.g. all the properties of a source. Values are added as by
+     * {@link #addProperty(String, Object)}, but strings without a list delimiter or escape are not split and no per key
+     * events are fired; a single {@link #EVENT_PROPERTIES_ADDED} event is fired at the end.
+     * 
+     * @param properties
+     *            <key, value> to add
+     */
+    public void addProperties(Map<String, ?> properties) {
+        synchronized (reloadLock) {
+            addPropertiesDirect(properties);
+            fireEvent(EVENT_PROPERTIES_ADDED, null, Collections.unmodifiableMap(properties), false);
+        }
+    }
+
+    /**
+     * Adds a table of properties without firing events, called under the reload lock.
+     * 
+     * @param properties
+     *            <key, value> to add
+     * @see #addProperties(Map)
+     */
+    protected void addPropertiesDirect(Map<String, ?> properties) {
+        char delimiter = isDelimiterParsingDisabled() ? DISABLED_DELIMITER : getListDelimiter();
+        for (Entry<String, ?> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                String string = (String) value;
+                if (string.indexOf(delimiter) < 0 && string.indexOf(LIST_ESCAPE) < 0) {
+                    addPropertyDirect(entry.getKey(), string.trim());
+                    continue;
+                }
+            }
+
+            for (Iterator<?> values = PropertyConverter.toIterator(value, delimiter); values.hasNext();) {
+                addPropertyDirect(entry.getKey(), values.next());
+            }
+        }
+    }
+
+    /**
+     * Applies a reload diff to this configuration, touching only the added, changed and removed keys. No per key
+     * events are fired.
+     * 
+     * @param diff
+     *            to apply
+     */
+    protected void apply(PropertiesDiff diff) {
+        for (String key : diff.getRemoved().keySet()) {
+            clearPropertyDirect(key);
+        }
+        for (Entry<String, Object> entry : diff.getChanged().entrySet()) {
+            clearPropertyDirect(entry.getKey());
+            addPropertyDirect(entry.getKey(), mutable(entry.getValue()));
+        }
+        for (Entry<String, Object> entry : diff.getAdded().entrySet()) {
+            addPropertyDirect(entry.getKey(), mutable(entry.getValue()));
+        }
+    }
+
+    /**
+     * Staged lists are unmodifiable, the store of this configuration expects lists it can add to.
+     */
+    private static Object mutable(Object value) {
+        return value instanceof List ? new ArrayList<Object>((List<?>) value) : value;
+    }
+
+    /**
+     * Compacts the journaled changes of the current environment into the source. The source is merged with the changes
+     * into a file next to it, which is forced to disk and then atomically renamed over the source; the rename is forced
+     * to disk as well before the journal is replaced the same way by one of the changes that were not compacted. Only
+     * the changed properties are rewritten, everything else in the source is kept as it is. Changes made in other
+     * environments or while compacting stay journaled. A crash or failure at any point leaves the source and journal
+     * loading to the same properties.
+     * 
+     * @throws ConfigurationException
+     *             if the source is not a runtime xml file or cannot be replaced
+     * @see #setJournalFile(File)
+     * @see RuntimeXmlMerger
+     */
+    public void compactJournal() throws ConfigurationException {
+        synchronized (_compactionLock) {
+            PropertyJournal journal;
+            Map<String, List<String>> changes;
+            String environment;
+            synchronized (reloadLock) {
+                _compactionPending = false;
+                journal = _journal;
+                environment = _environment;
+                Map<String, List<String>> journaled = _journaled.get(environment);
+                if (journal == null || journaled == null) return;
+                changes = new LinkedHashMap<>(journaled);
+            }
+
+            File source = getFile();
+            if (source == null || !source.isFile()) {
+                throw new ConfigurationException("journal can only be compacted into a file, not '" + getURL() + "'");
+            }
+            checkMerge(environment);
+
+            Map<String, String> merged = new LinkedHashMap<>();
+            for (Entry<String, List<String>> entry : changes.entrySet()) {
+                merged.put(entry.getKey(), entry.getValue().isEmpty() ? null : join(entry.getValue()));
+            }
+
+            File compacted = null;
+            try {
+                compacted = merge(source, environment, merged);
+                synchronized (reloadLock) {
+                    if (journal != _journal) return;
+
+                    Files.move(compacted.toPath(), source.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                    forceDirectory(source);
+
+                    // the old journal replays harmlessly over the compacted source until it is replaced
+                    List<PropertyJournal.Record> remaining = new ArrayList<>();
+                    for (Entry<String, Map<String, List<String>>> journaled : _journaled.entrySet()) {
+                        for (Entry<String, List<String>> entry : journaled.getValue().entrySet()) {
+                            if (!compacted(journaled.getKey(), entry, environment, changes)) {
+                                remaining.add(new PropertyJournal.Record(op(entry.getValue()), journaled.getKey(),
+                                        entry.getKey(), entry.getValue()));
+                            }
+                        }
+                    }
+                    journal.rewrite(remaining);
+
+                    for (Iterator<Entry<String, Map<String, List<String>>>> environments = _journaled.entrySet()
+                            .iterator(); environments.hasNext();) {
+                        Entry<String, Map<String, List<String>>> journaled = environments.next();
+                        for (Iterator<Entry<String, List<String>>> entries = journaled.getValue().entrySet()
+                                .iterator(); entries.hasNext();) {
+                            if (compacted(journaled.getKey(), entries.next(), environment, changes)) entries.remove();
+                        }
+                        if (journaled.getValue().isEmpty()) environments.remove();
+                    }
+                }
+            } catch (IOException e) {
+                throw new ConfigurationException("failed to compact journal '" + journal.getFile() + "' into '" + source
+                        + "'", e);
+            } finally {
+                delete(compacted);
+            }
+        }
+    }
+
+    /**
+     * @return true if a journaled change is one of the compacted changes, not changed again since
+     */
+    private static boolean compacted(String environment, Entry<String, List<String>> entry, String compacted,
+            Map<String, List<String>> changes) {
+        return environment.equals(compacted) && entry.getValue() == changes.get(entry.getKey());
+    }
+
+    /**
+     * Checks that the source can be merged into
+     * 
+     * @param environment
+     *            of the merged values
+     */
+    private void checkMerge(String environment) throws ConfigurationException {
+        if (getFormat() != RuntimeFormat.XML) {
+            throw new ConfigurationException("only runtime xml can be merged into, not '" + getURL() + "'");
+        }
+        if (environment == null) throw new ConfigurationException("environment of '" + getURL() + "' is unknown");
+    }
+
+    /**
+     * Forces the directory of a renamed file to disk, so the rename survives a crash. Platforms that cannot open a
+     * directory are skipped.
+     */
+    private void forceDirectory(File file) {
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            getLogger().debug("could not force directory of '" + file + "'", e);
+        }
+    }
+
+    /**
+     * Deletes a file that is left over, null is ignored
+     */
+    private void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) getLogger().warn("could not delete '" + file + "'");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Changes by {@link #setProperty(String, Object)}, {@link #addProperty(String, Object)} and
+     * {@link #clearProperty(String)} are journaled before they are applied; a change that cannot be journaled is not
+     * applied.
+     * 
+     * @see #setJournalFile(File)
+     */
+    @Override
+    protected void fireEvent(int type, String propName, Object propValue, boolean before) {
+        if (before && _journal != null && _detailEvents >= 0) journal(type, propName, propValue);
+        super.fireEvent(type, propName, propValue, before);
+    }
+
+    /**
+     * @return handler of the format of the file of this configuration
+     * @see #getFormat()
+     */
     protected ConfigurationHandler getConfigurationHandler() {
-        return new RuntimeConfigurationHandler();
+        return getConfigurationHandler(getFormat());
+    }
+
+    /**
+     * @param format
+     *            of the source
+     * @return handler of the format
+     */
+    protected ConfigurationHandler getConfigurationHandler(RuntimeFormat format) {
+        RuntimeConfigurationHandler handler = format.newHandler();
+        handler.setInterpolate(_eagerInterpolation);
+        handler.setListDelimiter(getListDelimiter());
+        handler.setDelimiterParsingDisabled(isDelimiterParsingDisabled());
+        handler.setKeepEnvironments(_keepEnvironments);
+
+        final List<LoadMetricsListener> listeners = _loadMetricsListeners;
+        if (listeners != null && !listeners.isEmpty()) handler.setLoadMetricsListener(new LoadMetricsListener() {
+            @Override
+            public void loaded(LoadMetrics metrics) {
+                for (LoadMetricsListener listener : listeners) {
+                    listener.loaded(metrics);
+                }
+            }
+        });
+        // snapshots only hold the host environment
+        if (_snapshotDirectory != null && !_keepEnvironments) {
+            URL url = getURL();
+            return new SnapshotConfigurationHandler(handler, _snapshotDirectory, url == null ? null : url.toString());
+        }
+        return handler;
+    }
+
+    /**
+     * @return number of journaled changes that triggers a background compaction, 0 if the journal is not compacted in
+     *         the background
+     */
+    public int getJournalCompactionThreshold() {
+        return _journalCompactionThreshold;
+    }
+
+    /**
+     * @return journal of the changes made on top of the source, null if changes are not journaled
+     */
+    public File getJournalFile() {
+        synchronized (reloadLock) {
+            return _journal == null ? null : _journal.getFile();
+        }
+    }
+
+    /**
+     * @return format of the file of this configuration by its extension, xml if the extension is unknown
+     */
+    public RuntimeFormat getFormat() {
+        RuntimeFormat format = RuntimeFormat.forFileName(getFileName());
+        return format == null ? RuntimeFormat.XML : format;
+    }
+
+    /**
+     * Get the byte size of a value declared with value[@type='bytes']. Untyped values are parsed on every call.
+     * 
+     * @param key
+     *            of the property
+     * @return number of bytes
+     * @throws NoSuchElementException
+     *             if the key doesn't map to a value
+     * @throws ConversionException
+     *             if the value is not a byte size
+     * @see ValueType#BYTES
+     */
+    public long getByteSize(String key) {
+        Long bytes = getTyped(key, ValueType.BYTES);
+        if (bytes == null) throw new NoSuchElementException('\'' + key + "' doesn't map to an existing object");
+        return bytes;
+    }
+
+    /**
+     * @param key
+     *            of the property
+     * @param defaultValue
+     *            number of bytes if the key doesn't map to a value
+     * @return number of bytes
+     * @see #getByteSize(String)
+     */
+    public long getByteSize(String key, long defaultValue) {
+        Long bytes = getTyped(key, ValueType.BYTES);
+        return bytes == null ? defaultValue : bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed doubles are returned without boxing the default.
+     */
+    @Override
+    public double getDouble(String key, double defaultValue) {
+        Object value = resolveContainerStore(key);
+        if (value instanceof Double) return (Double) value;
+        return value == null ? defaultValue : super.getDouble(key, defaultValue);
+    }
+
+    /**
+     * Get the duration of a value declared with value[@type='duration']. Untyped values are parsed on every call.
+     * 
+     * @param key
+     *            of the property
+     * @param unit
+     *            of the returned duration
+     * @return duration in the unit, truncated
+     * @throws NoSuchElementException
+     *             if the key doesn't map to a value
+     * @throws ConversionException
+     *             if the value is not a duration
+     * @see ValueType#DURATION
+     */
+    public long getDuration(String key, TimeUnit unit) {
+        Long millis = getTyped(key, ValueType.DURATION);
+        if (millis == null) throw new NoSuchElementException('\'' + key + "' doesn't map to an existing object");
+        return unit.convert(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param key
+     *            of the property
+     * @param unit
+     *            of the default and the returned duration
+     * @param defaultValue
+     *            duration if the key doesn't map to a value
+     * @return duration in the unit, truncated
+     * @see #getDuration(String, TimeUnit)
+     */
+    public long getDuration(String key, TimeUnit unit, long defaultValue) {
+        Long millis = getTyped(key, ValueType.DURATION);
+        return millis == null ? defaultValue : unit.convert(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed ints are returned without boxing the default.
+     */
+    @Override
+    public int getInt(String key, int defaultValue) {
+        Object value = resolveContainerStore(key);
+        if (value instanceof Integer) return (Integer) value;
+        return value == null ? defaultValue : super.getInt(key, defaultValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed longs are returned without boxing the default.
+     */
+    @Override
+    public long getLong(String key, long defaultValue) {
+        Object value = resolveContainerStore(key);
+        if (value instanceof Long) return (Long) value;
+        return value == null ? defaultValue : super.getLong(key, defaultValue);
+    }
+
+    /**
+     * @return environment of the current properties, null if unknown
+     * @see #setEnvironment(String)
+     */
+    public String getEnvironment() {
+        return _environment;
+    }
+
+    /**
+     * @param environment
+     *            name of the environment
+     * @return id of the environment for {@link #getString(String, int)}, -1 if the environment is unknown
+     * @throws IllegalStateException
+     *             if environments are not kept
+     */
+    public int getEnvironmentId(String environment) {
+        return getEnvironmentTableInternal().getEnvironmentId(environment);
+    }
+
+    /**
+     * @return values of every environment of the last load, null if environments are not kept
+     * @see #setKeepEnvironments(boolean)
+     */
+    public EnvironmentTable getEnvironmentTable() {
+        return _environmentTable;
+    }
+
+    private EnvironmentTable getEnvironmentTableInternal() {
+        EnvironmentTable table = _environmentTable;
+        if (table == null) throw new IllegalStateException("environments are not kept, see setKeepEnvironments!");
+        return table;
+    }
+
+    /**
+     * @return directory of binary snapshots, null if snapshots are disabled
+     */
+    public File getSnapshotDirectory() {
+        return _snapshotDirectory;
+    }
+
+    /**
+     * @return <key, value> of the current properties
+     */
+    protected Map<String, Object> getPropertyTable() {
+        Map<String, Object> table = new LinkedHashMap<>();
+        for (Iterator<String> keys = getKeys(); keys.hasNext();) {
+            String key = keys.next();
+            table.put(key, getProperty(key));
+        }
+        return table;
+    }
+
+    /**
+     * Get the value of a key in any environment of the source, as written in the source. Costs one hash probe and one
+     * array index and allocates nothing.
+     * 
+     * @param key
+     *            of the property
+     * @param environment
+     *            id of the environment, see {@link #getEnvironmentId(String)}
+     * @return value of the key in the environment, null if it has none
+     * @throws IllegalStateException
+     *             if environments are not kept
+     * @see #setKeepEnvironments(boolean)
+     */
+    public String getString(String key, int environment) {
+        return getEnvironmentTableInternal().getString(key, environment);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed values are returned as written in the source.
+     */
+    @Override
+    public String getString(String key) {
+        Object value = resolveContainerStore(key);
+        if (value == null || value instanceof String) return super.getString(key);
+        return getTypedText(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed values are returned as written in the source.
+     */
+    @Override
+    public String getString(String key, String defaultValue) {
+        Object value = resolveContainerStore(key);
+        if (value == null || value instanceof String) return super.getString(key, defaultValue);
+        return getTypedText(key, value);
+    }
+
+    /**
+     * @return the source text of a typed value
+     * @throws ConversionException
+     *             if the value was not loaded as a typed value
+     */
+    private String getTypedText(String key, Object value) {
+        TypedValue typed = getTypedValue(key);
+        if (typed == null || !typed.isValue(value)) {
+            throw new ConversionException('\'' + key + "' doesn't map to a String object");
+        }
+        return interpolate(typed.getText());
+    }
+
+    /**
+     * @return typed value of the last load, null if the key was not loaded with a type
+     */
+    TypedValue getTypedValue(String key) {
+        Map<String, TypedValue> typed = _typedValues;
+        return typed == null ? null : typed.get(key);
+    }
+
+    /**
+     * @return <key, source text> of the typed values of the last load
+     */
+    Map<String, String> getTypedTexts() {
+        Map<String, TypedValue> typed = _typedValues;
+        return typed == null ? Collections.<String, String> emptyMap() : TypedValue.texts(typed);
+    }
+
+    /**
+     * @return the value of a duration or byte size, parsed unless it was typed at load; null if the key doesn't map to
+     *         a value
+     */
+    private Long getTyped(String key, ValueType type) {
+        Object value = resolveContainerStore(key);
+        if (value == null || value instanceof Long) return (Long) value;
+        try {
+            return (Long) type.parse(String.valueOf(interpolate(value)));
+        } catch (ConfigurationException e) {
+            throw new ConversionException('\'' + key + "' doesn't map to a " + type.getName(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Values without a ${ reference are returned as is, e.g. values resolved at load time.
+     * 
+     * @see #setEagerInterpolation(boolean)
+     */
+    @Override
+    protected Object interpolate(Object value) {
+        if (value instanceof String && ((String) value).indexOf("${") < 0) return value;
+        return super.interpolate(value);
+    }
+
+    /**
+     * @return true if ${key} references between the properties are resolved at load time
+     */
+    public boolean isEagerInterpolation() {
+        return _eagerInterpolation;
+    }
+
+    /**
+     * @return true if the values of every environment are kept
+     */
+    public boolean isKeepEnvironments() {
+        return _keepEnvironments;
+    }
+
+    /**
+     * @return the values as a single source value, the list delimiter escaped
+     */
+    private String join(List<String> values) {
+        if (isDelimiterParsingDisabled()) return StringUtils.join(values, getListDelimiter());
+
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) joined.append(getListDelimiter());
+            joined.append(PropertyConverter.escapeDelimiters(value, getListDelimiter()));
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Journals a change, called under the reload lock before the change is applied
+     */
+    private void journal(int type, String key, Object value) {
+        List<String> values = new ArrayList<>();
+        switch (type) {
+        case EVENT_ADD_PROPERTY:
+            // the added values follow the current ones
+            values.addAll(values(getProperty(key)));
+            values.addAll(split(value));
+            break;
+        case EVENT_SET_PROPERTY:
+            values.addAll(split(value));
+            break;
+        case EVENT_CLEAR_PROPERTY:
+            break;
+        default:
+            return;
+        }
+
+        String environment = _environment;
+        if (environment == null) {
+            throw new ConfigurationRuntimeException("environment of '" + getURL() + "' is unknown, '" + key
+                    + "' cannot be journaled before a load");
+        }
+        values = Collections.unmodifiableList(values);
+        try {
+            _journal.append(op(values), environment, key, values);
+        } catch (IOException e) {
+            throw new ConfigurationRuntimeException("failed to journal the change of '" + key + "'", e);
+        }
+        journaled(environment).put(key, values);
+
+        if (_journalCompactionThreshold > 0 && !_compactionPending && _journal.size() >= _journalCompactionThreshold) {
+            _compactionPending = true;
+            COMPACTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compactJournal();
+                    } catch (ConfigurationException e) {
+                        getLogger().warn("failed to compact the journal", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return <key, values> of the journaled changes of an environment, added if it has none
+     */
+    private Map<String, List<String>> journaled(String environment) {
+        Map<String, List<String>> journaled = _journaled.get(environment);
+        if (journaled == null) _journaled.put(environment, journaled = new LinkedHashMap<>());
+        return journaled;
+    }
+
+    /**
+     * @return the values of a set or added property as strings, split at the list delimiter
+     */
+    private List<String> split(Object value) {
+        List<String> values = new ArrayList<>();
+        char delimiter = isDelimiterParsingDisabled() ? DISABLED_DELIMITER : getListDelimiter();
+        for (Iterator<?> added = PropertyConverter.toIterator(value, delimiter); added.hasNext();) {
+            values.add(String.valueOf(added.next()));
+        }
+        return values;
+    }
+
+    /**
+     * @return the values of a property as strings, empty for null
+     */
+    private static List<String> values(Object value) {
+        List<String> values = new ArrayList<>();
+        if (value instanceof Collection) for (Object v : (Collection<?>) value)
+            values.add(String.valueOf(v));
+        else if (value != null) values.add(String.valueOf(value));
+        return values;
+    }
+
+    /**
+     * @return true if saves merge the changed values into the source
+     */
+    public boolean isMergeOnSave() {
+        return _mergeOnSave;
     }
 
     @Override
     public synchronized void load(Reader reader) throws ConfigurationException {
-        getConfigurationHandler().load(reader, this);
+        load(reader, this);
+    }
+
+    /**
+     * Loads a source into the target and replays the journaled changes of the loaded environment on top of it
+     */
+    private void load(Reader reader, Configuration target) throws ConfigurationException {
+        loadSource(reader, target);
+        // the journal is not set yet while the super constructors load
+        if (_journal != null) replay(target, _environment);
+    }
+
+    /**
+     * Loads a source into the target, keeping the environment table of the load. The format is that of the file name's
+     * extension or else sniffed from the source. The properties of the selected environment are loaded instead of
+     * those of the host environment.
+     */
+    private void loadSource(Reader reader, Configuration target) throws ConfigurationException {
+        Reader source = reader.markSupported() ? reader : new BufferedReader(reader);
+        RuntimeFormat format = getFormat();
+        if (RuntimeFormat.forFileName(getFileName()) == null) {
+            try {
+                format = RuntimeFormat.sniff(source);
+            } catch (IOException e) {
+                throw new ConfigurationException(e);
+            }
+        }
+
+        ConfigurationHandler handler = format == getFormat() ? getConfigurationHandler()
+                : getConfigurationHandler(format);
+        if (!(handler instanceof RuntimeConfigurationHandler)) {
+            handler.load(source, target);
+            if (handler instanceof SnapshotConfigurationHandler) {
+                _environment = _hostEnvironment = ((SnapshotConfigurationHandler) handler).getEnvironment();
+                _typedValues = ((SnapshotConfigurationHandler) handler).getTypedValues();
+            } else _typedValues = Collections.emptyMap();
+            return;
+        }
+
+        RuntimeConfigurationHandler runtimeHandler = (RuntimeConfigurationHandler) handler;
+        if (_selectedEnvironment == null) runtimeHandler.load(source, target);
+        else runtimeHandler.read(source);
+
+        EnvironmentTable table = runtimeHandler.getEnvironmentTable();
+        _environmentTable = table;
+        _hostEnvironment = runtimeHandler.getEnvironment();
+
+        if (_selectedEnvironment == null) {
+            _environment = _hostEnvironment;
+            _typedValues = runtimeHandler.getTypedValues();
+            return;
+        }
+
+        int selected = table.getEnvironmentId(_selectedEnvironment);
+        if (selected < 0) {
+            // the selected environment is gone from the source, fall back to the host environment
+            getLogger().warn("environment '" + _selectedEnvironment + "' no longer exists, loading '"
+                    + _hostEnvironment + "'");
+            _selectedEnvironment = null;
+            _environment = _hostEnvironment;
+            selected = table.getEnvironmentId(_hostEnvironment);
+            _typedValues = selected < 0 ? Collections.<String, TypedValue> emptyMap() : push(table, selected, target);
+        } else {
+            _typedValues = push(table, selected, target);
+            _environment = _selectedEnvironment;
+        }
+    }
+
+    /**
+     * Merges changes into a copy of a source file next to it, forced to disk
+     * 
+     * @return the merged file, to be renamed over the source
+     */
+    private File merge(File source, String environment, Map<String, String> changes) throws ConfigurationException,
+            IOException {
+        File merged = new File(source.getParentFile(), source.getName() + ".merged");
+        Charset charset = getEncoding() == null ? Charset.defaultCharset() : Charset.forName(getEncoding());
+        try (Reader in = new InputStreamReader(new FileInputStream(source), charset);
+                FileOutputStream out = new FileOutputStream(merged)) {
+            Writer writer = new OutputStreamWriter(out, charset);
+            RuntimeXmlMerger.merge(in, writer, environment, changes);
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        return merged;
+    }
+
+    /**
+     * @return <key, value> of the properties that differ from the source as source values, null for a removed key
+     */
+    private Map<String, String> mergeChanges() throws ConfigurationException {
+        PropertiesDiff diff = PropertiesDiff.compare(stage(), getPropertyTable());
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (String key : diff.getRemoved().keySet()) {
+            changes.put(key, null);
+        }
+        for (Entry<String, Object> entry : diff.getChanged().entrySet()) {
+            changes.put(entry.getKey(), join(values(entry.getValue())));
+        }
+        for (Entry<String, Object> entry : diff.getAdded().entrySet()) {
+            changes.put(entry.getKey(), join(values(entry.getValue())));
+        }
+        return changes;
     }
 
+    /**
+     * @return op of a journal record of the values
+     */
+    private static byte op(List<String> values) {
+        return values.isEmpty() ? PropertyJournal.REMOVE : PropertyJournal.PUT;
+    }
+
+    /**
+     * Pushes the properties of an environment into the target, resolved as by a load
+     * 
+     * @return <key, typed value> of the pushed typed properties
+     */
+    private Map<String, TypedValue> push(EnvironmentTable table, int environment, Configuration target)
+            throws ConfigurationException {
+        Map<String, String> properties = table.getProperties(environment);
+        if (_eagerInterpolation) {
+            properties = PropertyInterpolator.interpolate(properties, getListDelimiter(), isDelimiterParsingDisabled());
+        }
+
+        Map<String, TypedValue> typed = TypedValue.parse(properties, table.getTypes(environment));
+        RuntimeConfigurationHandler.push(properties, typed, target);
+        return typed;
+    }
+
+    /**
+     * @param listener
+     *            to stop notifying
+     * @return true if the listener was registered
+     */
+    public boolean removeLoadMetricsListener(LoadMetricsListener listener) {
+        List<LoadMetricsListener> listeners = _loadMetricsListeners;
+        return listeners != null && listeners.remove(listener);
+    }
+
+    /**
+     * Replays the journaled changes of an environment on top of a loaded source, the values are taken as they are.
+     * Changes made in other environments are kept for loads of their environment.
+     */
+    private void replay(Configuration target, String environment) {
+        synchronized (reloadLock) {
+            Map<String, List<String>> journaled = _journaled.get(environment);
+            if (journaled == null) return;
+            for (Entry<String, List<String>> entry : journaled.entrySet()) {
+                if (target == this) {
+                    clearPropertyDirect(entry.getKey());
+                    for (String value : entry.getValue()) {
+                        addPropertyDirect(entry.getKey(), value);
+                    }
+                } else ((StagingConfiguration) target).replace(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The source is loaded off to the side and compared with the current properties; only the added, changed and
+     * removed keys are applied. The applied diff is reported by a single {@link #EVENT_PROPERTIES_CHANGED} event.
+     */
+    @Override
+    public void refresh() throws ConfigurationException {
+        synchronized (reloadLock) {
+            enterNoReload();
+            try {
+                fireEvent(EVENT_RELOAD, null, getURL(), true);
+                PropertiesDiff diff = PropertiesDiff.compare(getPropertyTable(), stage());
+                apply(diff);
+                fireEvent(EVENT_PROPERTIES_CHANGED, null, diff, false);
+                fireEvent(EVENT_RELOAD, null, getURL(), false);
+            } finally {
+                exitNoReload();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Saving over the source while merging writes a file next to it that then atomically replaces the source.
+     * 
+     * @see #setMergeOnSave(boolean)
+     */
+    @Override
+    public void save(File file) throws ConfigurationException {
+        File source = getFile();
+        if (!_mergeOnSave || source == null || !source.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+            super.save(file);
+            return;
+        }
+
+        synchronized (reloadLock) {
+            checkMerge(_environment);
+            File merged = null;
+            try {
+                merged = merge(source, _environment, mergeChanges());
+                Files.move(merged.toPath(), source.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new ConfigurationException("failed to merge into '" + source + "'", e);
+            } finally {
+                delete(merged);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Urls of files are saved as files, see {@link #save(File)}.
+     */
+    @Override
+    public void save(URL url) throws ConfigurationException {
+        File file = _mergeOnSave ? ConfigurationUtils.fileFromURL(url) : null;
+        if (file == null) super.save(url);
+        else save(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Writes a zero level template, or the source with the changed values merged in.
+     * 
+     * @see #setMergeOnSave(boolean)
+     */
     @Override
     public void save(Writer writer) throws ConfigurationException {
-        getConfigurationHandler().save(this, writer);
+        if (!_mergeOnSave) {
+            getConfigurationHandler().save(this, writer);
+            return;
+        }
+
+        synchronized (reloadLock) {
+            checkMerge(_environment);
+            Map<String, String> changes = mergeChanges();
+            URL url = getURL();
+            InputStream in = getFileSystem().getInputStream(url);
+            try {
+                String encoding = getEncoding();
+                RuntimeXmlMerger.merge(encoding == null ? new InputStreamReader(in) : new InputStreamReader(in,
+                        encoding), writer, _environment, changes);
+            } catch (IOException e) {
+                throw new ConfigurationException("Unable to load the configuration from the URL " + url, e);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    getLogger().warn("Could not close input stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the source of this configuration off to the side.
+     * 
+     * @return <key, value> of the source properties
+     * @throws ConfigurationException
+     *             if the source cannot be loaded
+     * @see #stage(Reader)
+     */
+    protected Map<String, Object> stage() throws ConfigurationException {
+        URL url = getURL();
+        if (url == null) throw new ConfigurationException("No source has been set!");
+
+        InputStream in = getFileSystem().getInputStream(url);
+        try {
+            String encoding = getEncoding();
+            return stage(encoding == null ? new InputStreamReader(in) : new InputStreamReader(in, encoding));
+        } catch (IOException e) {
+            throw new ConfigurationException("Unable to load the configuration from the URL " + url, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                getLogger().warn("Could not close input stream", e);
+            }
+        }
+    }
+
+    /**
+     * Loads a source into a staging configuration with the same list delimiter settings as this configuration.
+     * 
+     * @param reader
+     *            of the source
+     * @return <key, value> of the source properties, multiple values are an unmodifiable List
+     * @throws ConfigurationException
+     *             if the source cannot be loaded
+     */
+    protected Map<String, Object> stage(Reader reader) throws ConfigurationException {
+        StagingConfiguration staging = staging();
+        load(reader, staging);
+        return toTable(staging);
+    }
+
+    /**
+     * @return empty configuration with the same list delimiter settings as this configuration
+     */
+    private StagingConfiguration staging() {
+        StagingConfiguration staging = new StagingConfiguration();
+        staging.setDelimiterParsingDisabled(isDelimiterParsingDisabled());
+        staging.setListDelimiter(getListDelimiter());
+        return staging;
+    }
+
+    /**
+     * @return <key, value> of a staging configuration, multiple values are an unmodifiable List
+     */
+    private static Map<String, Object> toTable(Configuration staging) {
+        Map<String, Object> table = new LinkedHashMap<>();
+        for (Iterator<String> keys = staging.getKeys(); keys.hasNext();) {
+            String key = keys.next();
+            Object value = staging.getProperty(key);
+            table.put(key, value instanceof List ? Collections.unmodifiableList((List<?>) value) : value);
+        }
+        return table;
+    }
+
+    /**
+     * Resolves the ${key} references between the properties when the source is loaded, so reads return the final
+     * values without interpolating. Circular references fail the load instead of the read. Set this before loading.
+     * 
+     * @param eagerInterpolation
+     *            true = resolve references at load time
+     * @see RuntimeConfigurationHandler#setInterpolate(boolean)
+     */
+    public void setEagerInterpolation(boolean eagerInterpolation) {
+        _eagerInterpolation = eagerInterpolation;
+    }
+
+    /**
+     * Switches the properties of this configuration to another environment of the last loaded source, without reading
+     * the source again. Only the keys that differ are touched and the applied diff is reported by a single
+     * {@link #EVENT_PROPERTIES_CHANGED} event. Later reloads keep the selected environment.
+     * 
+     * @param environment
+     *            to switch to, null to switch back to the host environment
+     * @throws ConfigurationException
+     *             if the environment is not in the source or one of its typed values is invalid
+     * @throws IllegalStateException
+     *             if environments are not kept
+     * @see #setKeepEnvironments(boolean)
+     */
+    public void setEnvironment(String environment) throws ConfigurationException {
+        synchronized (reloadLock) {
+            EnvironmentTable table = getEnvironmentTableInternal();
+            String target = environment == null ? _hostEnvironment : environment;
+            int id = target == null ? -1 : table.getEnvironmentId(target);
+            if (id < 0) throw new ConfigurationException("unknown environment '" + target + "'");
+
+            StagingConfiguration staging = staging();
+            Map<String, TypedValue> typed = push(table, id, staging);
+            if (_journal != null) replay(staging, target);
+            PropertiesDiff diff = PropertiesDiff.compare(getPropertyTable(), toTable(staging));
+            apply(diff);
+            _typedValues = typed;
+            _selectedEnvironment = environment;
+            _environment = target;
+            fireEvent(EVENT_PROPERTIES_CHANGED, null, diff, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The changes a change is made of are not journaled unless detail events are enabled.
+     */
+    @Override
+    public void setDetailEvents(boolean enable) {
+        synchronized (reloadLock) {
+            super.setDetailEvents(enable);
+            _detailEvents += enable ? 1 : -1;
+        }
+    }
+
+    /**
+     * Saves by merging the changed values into the source instead of writing a zero level template. The source is
+     * streamed to the destination and only the values of the keys that differ from the source are replaced, in the
+     * current environment; every host, value of another environment and comment is kept as it is. Only runtime xml
+     * sources can be merged into.
+     * 
+     * @param mergeOnSave
+     *            true = merge into the source, false = write a zero level template
+     * @see RuntimeConfigurationHandler#merge(Reader, Writer, String, Map)
+     */
+    public void setMergeOnSave(boolean mergeOnSave) {
+        _mergeOnSave = mergeOnSave;
+    }
+
+    /**
+     * @param journalCompactionThreshold
+     *            number of journaled changes that triggers a background compaction, 0 never compacts in the
+     *            background. Default is 1000.
+     * @see #compactJournal()
+     */
+    public void setJournalCompactionThreshold(int journalCompactionThreshold) {
+        if (journalCompactionThreshold < 0) throw new IllegalArgumentException("threshold must not be negative!");
+        _journalCompactionThreshold = journalCompactionThreshold;
+    }
+
+    /**
+     * Journals the changes made by {@link #setProperty(String, Object)}, {@link #addProperty(String, Object)} and
+     * {@link #clearProperty(String)} to an append only file before they are applied, so they outlive the process. Each
+     * change is a checksummed record of the current environment forced to disk; the changes of the loaded environment
+     * are replayed on top of the source at every load and, once the journal holds
+     * {@link #setJournalCompactionThreshold(int) enough} changes, compacted into the source in the background. Clearing
+     * the whole configuration and loads are not journaled; changes made before the first load are refused. Set this
+     * before loading.
+     * 
+     * @param journalFile
+     *            created if it doesn't exist or is empty, null stops journaling
+     * @throws ConfigurationException
+     *             if the journal cannot be opened or the file is not a journal
+     * @see #compactJournal()
+     */
+    public void setJournalFile(File journalFile) throws ConfigurationException {
+        synchronized (reloadLock) {
+            if (_journal != null) {
+                try {
+                    _journal.close();
+                } catch (IOException e) {
+                    getLogger().warn("could not close journal '" + _journal.getFile() + "'", e);
+                }
+                _journal = null;
+                _journaled.clear();
+            }
+            if (journalFile == null) return;
+
+            List<PropertyJournal.Record> records = new ArrayList<>();
+            try {
+                _journal = PropertyJournal.open(journalFile, records);
+            } catch (IOException e) {
+                throw new ConfigurationException("failed to open journal '" + journalFile + "'", e);
+            }
+            for (PropertyJournal.Record record : records) {
+                journaled(record.environment).put(record.key, record.values);
+            }
+        }
+    }
+
+    /**
+     * Keeps the values of every environment of the source instead of only those of the host environment, see
+     * {@link #getString(String, int)} and {@link #setEnvironment(String)}. Snapshots are not used while environments
+     * are kept. Set this before loading.
+     * 
+     * @param keepEnvironments
+     *            true = keep the values of every environment
+     * @see EnvironmentTable
+     */
+    public void setKeepEnvironments(boolean keepEnvironments) {
+        _keepEnvironments = keepEnvironments;
+    }
+
+    /**
+     * Enables binary snapshots of the resolved properties. Later loads of unchanged content read the snapshot instead
+     * of parsing and validating the source. Set this before loading, e.g.:
+     * 
+     * <pre>
+     * RuntimeConfiguration config = new RuntimeConfiguration();
+     * config.setSnapshotDirectory(new File(&quot;/var/cache/app&quot;));
+     * config.load(&quot;/path/to/config.xml&quot;);
+     * </pre>
+     * 
+     * @param snapshotDirectory
+     *            where snapshots are kept, null disables snapshots
+     * @see SnapshotConfigurationHandler
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        _snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * Staging configuration that journaled values can be replayed into as they are
+     */
+    private static class StagingConfiguration extends BaseConfiguration {
+        void replace(String key, List<String> values) {
+            clearPropertyDirect(key);
+            for (String value : values) {
+                addPropertyDirect(key, value);
+            }
+        }
     }
 }
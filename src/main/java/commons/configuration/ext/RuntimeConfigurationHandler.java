@@ -3,48 +3,43 @@ package commons.configuration.ext;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.Stack;
+import java.util.regex.PatternSyntaxException;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import commons.configuration.ext.matcher.CidrHostMatcher;
 import commons.configuration.ext.matcher.CompoundHostMatcher;
+import commons.configuration.ext.matcher.HostIndex;
 import commons.configuration.ext.matcher.HostMatcher;
+import commons.configuration.ext.matcher.InterfaceHostMatcher;
 import commons.configuration.ext.matcher.LocalHostMatcher;
 import commons.configuration.ext.matcher.MachineHostMatcher;
 import commons.configuration.ext.matcher.MachinePatternHostMatcher;
+import commons.configuration.ext.metrics.LoadMetrics;
+import commons.configuration.ext.metrics.LoadMetricsListener;
 
 /**
  * Loads and writes runtime configurations.
@@ -59,6 +54,7 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
     private static class Attr {
         static final String ENV = "env";
         static final String KEY = "key";
+        static final String TYPE = "type";
     }
 
     /**
@@ -75,16 +71,67 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
 
     private static final String GLOB_ENV_KEY = "*";
 
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** new line and two spaces per level, as indented by previous releases */
+    private static final String[] INDENTS = { LINE_SEPARATOR, LINE_SEPARATOR + "  ", LINE_SEPARATOR + "    ",
+            LINE_SEPARATOR + "      " };
+
+    /** stream writer factories are thread safe once configured */
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
     private String _hostEnvironmentState, _propertyKeyState, _propertyEnvironmentState;
 
+    /** declared type of the current value, null if untyped */
+    private ValueType _valueTypeState;
+
+    /** host environment resolved when the context closes, null until then */
+    private String _environment;
+
+    /** true when the current property was assigned a global (*) value, globals win over environment values */
+    private boolean _globalState;
+
     /** matches the runtime environment with the configured host(s) */
     private final HostMatcher _hostMatcher;
 
-    /** <env,[hosts,...]> */
-    private Map<String, List<String>> _hosts = new HashMap<>();
+    /** configured hosts of each environment */
+    private HostIndex _hosts = new HostIndex();
+
+    /** <key, value> of only the global and host environment values */
+    private Map<String, String> _runtimeProperties = new LinkedHashMap<>();
+
+    /** <key, type> of the runtime properties that declare a type */
+    private Map<String, ValueType> _runtimeTypes = new HashMap<>();
+
+    /** <key, typed value> of the typed runtime properties of the last read */
+    private Map<String, TypedValue> _typedValues = Collections.emptyMap();
+
+    /** true = resolve ${key} references between the properties at load time */
+    private boolean _interpolate;
 
-    /** <key, <env, value>> */
-    private Map<String, Map<String, String>> _runtimeProperties = new HashMap<>();
+    /** list delimiter of the configurations loaded into, lists are not interpolated at load time */
+    private char _listDelimiter = ',';
+
+    /** true = the configurations loaded into never split values into lists */
+    private boolean _delimiterParsingDisabled;
+
+    /** true = keep the values of every environment */
+    private boolean _keepEnvironments;
+
+    /** collects the values of every environment while parsing, null if they are not kept */
+    private EnvironmentTable.Builder _tableBuilder;
+
+    /** values of every environment of the last read, null if they are not kept */
+    private EnvironmentTable _environmentTable;
+
+    /** notified after each load, null if loads are not measured */
+    private LoadMetricsListener _metricsListener;
+
+    /** timings of the current read, only taken when measured */
+    private long _schemaNanos, _parseNanos, _resolveNanos, _charactersRead;
+
+    /** counters of the current read */
+    private int _propertiesParsed, _hostsTried;
 
     /** FSM parse stack */
     private Stack<String> _state;
@@ -94,8 +141,8 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
 
     public RuntimeConfigurationHandler() {
         // match specifically to generally
-        this(Arrays.asList(new HostMatcher[] { MachineHostMatcher.instance(), MachinePatternHostMatcher.instance(),
-                LocalHostMatcher.instance() }));
+        this(Arrays.asList(new HostMatcher[] { MachineHostMatcher.instance(), InterfaceHostMatcher.instance(),
+                CidrHostMatcher.instance(), MachinePatternHostMatcher.instance(), LocalHostMatcher.instance() }));
     }
 
     public RuntimeConfigurationHandler(Collection<HostMatcher> hostMatchers) {
@@ -106,7 +153,11 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
         if (host == null) throw new SAXException("hosts/host element required!");
 
         String escape = StringEscapeUtils.escapeXml(host);
-        _hosts.get(_hostEnvironmentState).add(StringUtils.trim(StringUtils.trim(escape)));
+        try {
+            _hosts.add(_hostEnvironmentState, StringUtils.trim(StringUtils.trim(escape)));
+        } catch (PatternSyntaxException e) {
+            throw new SAXException("invalid host pattern '" + host + "'", e);
+        }
     }
 
     /**
@@ -120,19 +171,41 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
         if (env == null) throw new SAXException("hosts[@env] attribute required!");
 
         String escape = StringEscapeUtils.escapeXml(env);
-        _hosts.put((_hostEnvironmentState = StringUtils.trim(escape)), new ArrayList<String>());
+        _hosts.addEnvironment(_hostEnvironmentState = StringUtils.trim(escape));
+        if (_tableBuilder != null) _tableBuilder.environment(_hostEnvironmentState);
     }
 
+    /**
+     * Keeps the property value only if it is global or belongs to the host environment, every other value is dropped
+     * as soon as it is parsed.
+     */
     private void assignProperty(String property) throws SAXException {
         if (property == null) throw new SAXException("hosts:host element required!");
-        _runtimeProperties.get(_propertyKeyState).put(_propertyEnvironmentState, StringUtils.trim(property));
+        if (_environment == null) throw new SAXException("context must precede property[@key='" + _propertyKeyState
+                + "']");
+
+        if (_tableBuilder != null) {
+            _tableBuilder.value(_propertyKeyState, _propertyEnvironmentState, StringUtils.trim(property),
+                    _valueTypeState);
+        }
+
+        if (GLOB_ENV_KEY.equals(_propertyEnvironmentState)) {
+            keepProperty(property);
+            _globalState = true;
+        } else if (!_globalState && _environment.equals(_propertyEnvironmentState)) {
+            keepProperty(property);
+        }
     }
 
     private void assignPropertyKey(String key) throws SAXException {
         if (key == null) throw new SAXException("property[@key] required!");
 
         String escape = StringEscapeUtils.escapeXml(key);
-        _runtimeProperties.put((_propertyKeyState = StringUtils.trim(escape)), new HashMap<String, String>());
+        _runtimeProperties.remove(_propertyKeyState = StringUtils.trim(escape));
+        _runtimeTypes.remove(_propertyKeyState);
+        if (_tableBuilder != null) _tableBuilder.property(_propertyKeyState);
+        _globalState = false;
+        _propertiesParsed++;
     }
 
     private void assignValueEnvironment(String valueEnv) throws SAXException {
@@ -142,11 +215,27 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
         _propertyEnvironmentState = StringUtils.trim(escape);
     }
 
+    private void assignValueType(String valueType) throws SAXException {
+        try {
+            _valueTypeState = ValueType.forName(StringUtils.trimToNull(valueType));
+        } catch (ConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
         _valueState.append(ch, start, length);
     }
 
+    @Override
+    public void endDocument() throws SAXException {
+        // a document without properties still requires a host environment
+        if (_environment == null) resolveEnvironment();
+        if (_tableBuilder != null) _environmentTable = _tableBuilder.build();
+        _tableBuilder = null;
+    }
+
     /**
      * Pops the element state and assigns the element value(s)
      */
@@ -154,6 +243,7 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
     public void endElement(String uri, String name, String qName) throws SAXException {
         String elementState = _state.pop();
         if (Elem.HOST.equals(elementState)) assignHost(_valueState.toString());
+        if (Elem.CONTEXT.equals(elementState)) resolveEnvironment();
         if (Elem.VALUE.equals(elementState)) assignProperty(_valueState.toString());
 
         // setup for the next element
@@ -161,117 +251,286 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
     }
 
     /**
-     * @return the host env by mapping the config hosts to the host matcher strategy
+     * @return <key, type> of the properties of the last {@link #read(Reader)} that declare a type
+     */
+    public Map<String, ValueType> getTypes() {
+        return Collections.unmodifiableMap(new HashMap<>(_runtimeTypes));
+    }
+
+    /**
+     * @return <key, typed value> of the typed properties of the last {@link #read(Reader)}
+     */
+    Map<String, TypedValue> getTypedValues() {
+        return _typedValues;
+    }
+
+    /**
+     * @return values of every environment of the last {@link #read(Reader)}, null if environments are not kept
+     * @see #setKeepEnvironments(boolean)
+     */
+    public EnvironmentTable getEnvironmentTable() {
+        return _environmentTable;
+    }
+
+    /**
+     * @return the host environment resolved by the last {@link #read(Reader)}, null if nothing has been read
+     */
+    public String getEnvironment() {
+        return _environment;
+    }
+
+    /**
+     * @return configured hosts of each environment of the last {@link #read(Reader)}
+     */
+    HostIndex getHosts() {
+        return _hosts;
+    }
+
+    /**
+     * @param hosts
+     *            configured hosts of each environment
+     * @return environment the hosts resolve to with the host matchers of this handler, null if no host matches
+     */
+    String getHostEnvironment(HostIndex hosts) {
+        return hosts.environment(_hostMatcher);
+    }
+
+    /**
+     * @return the host env by mapping the config hosts to the host matcher strategy, the precedence is documented by
+     *         {@link HostIndex}
      * @throws SAXException
      *             if the host env cannot be determined.
      */
     private String getHostEnvironment() throws ConfigurationException {
+        String environment = _hosts.environment(_hostMatcher);
+        _hostsTried = _hosts.tried();
+        if (environment != null) return environment;
+
         StringBuilder hostsTried = new StringBuilder();
+        for (String host : _hosts.hosts()) {
+            hostsTried.append(host).append(" ");
+        }
+        throw new ConfigurationException(String.format("No host[@env] found for [" + hostsTried + "]"));
+    }
+
+    /**
+     * Resolves the host environment as soon as the context has been parsed so the properties that follow can be
+     * filtered while they stream by.
+     */
+    private void resolveEnvironment() throws SAXException {
+        long start = _metricsListener == null ? 0 : System.nanoTime();
+        try {
+            _environment = getHostEnvironment();
+        } catch (ConfigurationException e) {
+            throw new SAXException(e);
+        } finally {
+            if (_metricsListener != null) _resolveNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Starts a new line indented to the level
+     */
+    private static void indent(XMLStreamWriter out, int level) throws XMLStreamException {
+        out.writeCharacters(INDENTS[level]);
+    }
+
+    /**
+     * @return true if ${key} references between the properties are resolved at load time
+     */
+    public boolean isInterpolate() {
+        return _interpolate;
+    }
+
+    private void keepProperty(String property) {
+        _runtimeProperties.put(_propertyKeyState, StringUtils.trim(property));
+        if (_valueTypeState == null) _runtimeTypes.remove(_propertyKeyState);
+        else _runtimeTypes.put(_propertyKeyState, _valueTypeState);
+    }
 
-        for (Entry<String, List<String>> entry : _hosts.entrySet()) {
-            for (String host : entry.getValue()) {
-                if (_hostMatcher.matches(host)) return entry.getKey();
-                hostsTried.append(host).append(" ");
+    /**
+     * Pushes properties into a configuration, runtime configurations install them in one step
+     * 
+     * @param typed
+     *            <key, typed value> replacing the string values of typed properties
+     */
+    static void push(Map<String, String> properties, Map<String, TypedValue> typed, Configuration config) {
+        if (config instanceof RuntimeConfiguration) {
+            Map<String, Object> values = new LinkedHashMap<String, Object>(properties);
+            for (Entry<String, TypedValue> entry : typed.entrySet()) {
+                values.put(entry.getKey(), entry.getValue().getValue());
             }
+            ((RuntimeConfiguration) config).addProperties(values);
+            return;
         }
 
-        throw new ConfigurationException(String.format("No host[@env] found for [" + hostsTried + "]"));
+        for (Entry<String, String> entry : properties.entrySet()) {
+            TypedValue value = typed.get(entry.getKey());
+            config.addProperty(entry.getKey(), value == null ? entry.getValue() : value.getValue());
+        }
     }
 
     /**
-     * Creates {@link Properties} with only the runtime values
+     * Parses the source, reporting its content to the {@link DefaultHandler} callbacks of this handler. Runtime xml is
+     * parsed by a pooled validating parser; subclasses parse other formats into the same callbacks.
      * 
-     * @return runtime {@link Properties}s
+     * @param source
+     *            of the configuration
      * @throws SAXException
+     *             if the source is invalid
+     * @throws IOException
+     *             if the source cannot be read
      */
-    private Properties getRuntimeProperties() throws ConfigurationException {
-        final Properties runtimeProperties = new Properties();
-        final String env = getHostEnvironment();
-
-        for (Entry<String, Map<String, String>> properties : _runtimeProperties.entrySet()) {
-            String key = properties.getKey();
-            String value = null;
-            if (value == null /* global */) value = properties.getValue().get(GLOB_ENV_KEY);
-            if (value == null /* environment */) value = properties.getValue().get(env);
-            if (value != null) runtimeProperties.put(key, value);
+    protected void parse(Reader source) throws SAXException, IOException {
+        long start = _metricsListener == null ? 0 : System.nanoTime();
+
+        // validating parsers are pooled with the compiled schema
+        SAXParserPool parsers;
+        SAXParser parser;
+        try {
+            parsers = RuntimeXmlSchema.instance().getParserPool();
+            parser = parsers.acquire();
+        } catch (ConfigurationException | ParserConfigurationException e) {
+            throw new SAXException(e);
         }
+        if (_metricsListener != null) _schemaNanos = System.nanoTime() - start;
 
-        return runtimeProperties;
+        try {
+            parser.parse(new InputSource(source), this);
+        } finally {
+            parsers.release(parser);
+        }
+    }
+
+    /**
+     * Reads a runtime xml configuration source in a single pass. The host environment is resolved when the context
+     * closes and only the global (*) and host environment values are kept. Typed values are validated, their types are
+     * available from {@link #getTypes()}.
+     * 
+     * @param source
+     *            of the runtime xml
+     * @return <key, value> runtime properties in document order
+     * @throws ConfigurationException
+     *             if the source cannot be parsed, the host environment cannot be determined, a typed value is invalid
+     *             or the properties reference each other in a cycle
+     */
+    public synchronized Map<String, String> read(Reader source) throws ConfigurationException {
+        // timings are only taken when someone is listening
+        boolean measured = _metricsListener != null;
+        long start = measured ? System.nanoTime() : 0;
+        _schemaNanos = 0;
+        try {
+            // parse the source
+            CountingReader counter = measured ? new CountingReader(source) : null;
+            parse(measured ? counter : source);
+            if (measured) {
+                _parseNanos = System.nanoTime() - start - _schemaNanos - _resolveNanos;
+                _charactersRead = counter.count();
+            }
+            Map<String, String> properties = _interpolate ? PropertyInterpolator.interpolate(_runtimeProperties,
+                    _listDelimiter, _delimiterParsingDisabled) : new LinkedHashMap<>(_runtimeProperties);
+            _typedValues = TypedValue.parse(properties, _runtimeTypes);
+            return properties;
+        } catch (SAXException e) {
+            // unwrap failures raised by this handler
+            if (e.getException() instanceof ConfigurationException) throw (ConfigurationException) e.getException();
+            throw new ConfigurationException(e);
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
     }
 
     /**
      * {@inheritDoc}
-     * Loads a runtime xml configuration source into the target {@link Configuration}
+     * Loads a runtime xml configuration source into the target {@link Configuration}. The compiled schema and the
+     * validating parsers are shared across loads. Typed values are loaded as their parsed wrapper type and a
+     * {@link RuntimeConfiguration} receives all properties in one step.
+     * 
+     * @see #read(Reader)
      */
     @Override
     public synchronized void load(Reader source, Configuration config) throws ConfigurationException {
         if (config == null) throw new NullPointerException();
 
-        try {
-            // load xml schema
-            RuntimeXmlSchema xmlSchema = RuntimeXmlSchema.instance();
-
-            // setup the schema
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(ClassPathUtils.loadResource(xmlSchema.getPath()));
+        Map<String, String> properties = read(source);
+        long start = _metricsListener == null ? 0 : System.nanoTime();
 
-            // setup the parser factory
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            factory.setSchema(schema);
-            factory.setValidating(true);
-            factory.setNamespaceAware(true);
+        // push the parsed properties into the configuration
+        push(properties, _typedValues, config);
 
-            // parse the source
-            SAXParser parser = factory.newSAXParser();
-            parser.parse(new InputSource(source), this);
-
-            // push the parsed properties into the configuration
-            for (Entry<Object, Object> entry : getRuntimeProperties().entrySet()) {
-                config.addProperty((String) entry.getKey(), (String) entry.getValue());
-            }
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            throw new ConfigurationException(e);
+        if (_metricsListener != null) {
+            _metricsListener.loaded(new LoadMetrics(_schemaNanos, _parseNanos, _resolveNanos, System.nanoTime()
+                    - start, _charactersRead, _propertiesParsed, properties.size(), _hosts.environments().size(),
+                    _hostsTried));
         }
     }
 
+    /**
+     * Merges changed values into a runtime xml source instead of writing a template. The source is streamed to the
+     * destination and only the values of the changed keys are replaced, in one environment; every host, value of
+     * another environment and comment is copied as it is. A changed global (*) value is split into a value per
+     * environment, so the other environments keep reading the global value. Memory use does not grow with the source.
+     * 
+     * @param source
+     *            runtime xml
+     * @param destination
+     *            of the merged xml, flushed but not closed
+     * @param environment
+     *            of the changed values, e.g. {@link #getEnvironment()}
+     * @param changes
+     *            <key, value> of the changed properties, a null value removes the key from the environment. Lists are
+     *            written as in the source, joined by the list delimiter.
+     * @throws ConfigurationException
+     *             if the source is not well formed or the destination cannot be written
+     * @see RuntimeConfiguration#setMergeOnSave(boolean)
+     */
+    public void merge(Reader source, Writer destination, String environment, Map<String, String> changes)
+            throws ConfigurationException {
+        RuntimeXmlMerger.merge(source, destination, StringUtils.trim(StringEscapeUtils.escapeXml(environment)),
+                changes);
+    }
+
     /**
      * {@inheritDoc}
-     * saves a zero level xml configuration template
+     * saves a zero level xml configuration template. Properties are streamed to the destination as the keys are
+     * iterated, the output is the indented format of previous releases. Typed values loaded by a
+     * {@link RuntimeConfiguration} keep their type and source text.
      */
     @Override
     public synchronized void save(final Configuration config, final Writer destination) throws ConfigurationException {
         if (config == null) throw new NullPointerException();
 
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder;
-            docBuilder = factory.newDocumentBuilder();
-            Document doc = docBuilder.newDocument();
-            doc.setXmlVersion("1.0");
-
             // load xml schema
             RuntimeXmlSchema xmlSchema = RuntimeXmlSchema.instance();
 
-            // configuration
-            Element configuration = doc.createElementNS(xmlSchema.getNamespace(), Elem.CONFIGURATION);
-            configuration.setAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "xs:schemaLocation",
-                    xmlSchema.getNamespace() + " " + xmlSchema.getSchema());
-
-            doc.appendChild(configuration);
+            // the declaration is written directly, stream writers can not declare standalone
+            destination.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+            destination.write(LINE_SEPARATOR);
 
-            // context
-            Element context = doc.createElement(Elem.CONTEXT);
-            configuration.appendChild(context);
+            XMLStreamWriter out = OUTPUT_FACTORY.createXMLStreamWriter(destination);
 
-            // hosts
-            Element hosts = doc.createElement(Elem.HOSTS);
-            hosts.setAttribute(Attr.ENV, "0");
-            context.appendChild(hosts);
-
-            // host
-            Element host = doc.createElement(Elem.HOST);
-            host.setTextContent("localhost");
-            hosts.appendChild(host);
+            // configuration
+            out.writeStartElement(Elem.CONFIGURATION);
+            out.writeNamespace("xs", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+            out.writeAttribute("xs", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation",
+                    xmlSchema.getNamespace() + " " + xmlSchema.getSchema());
+            out.writeDefaultNamespace(xmlSchema.getNamespace());
+
+            // context/hosts/host
+            indent(out, 1);
+            out.writeStartElement(Elem.CONTEXT);
+            indent(out, 2);
+            out.writeStartElement(Elem.HOSTS);
+            out.writeAttribute(Attr.ENV, "0");
+            indent(out, 3);
+            out.writeStartElement(Elem.HOST);
+            out.writeCharacters("localhost");
+            out.writeEndElement();
+            indent(out, 2);
+            out.writeEndElement();
+            indent(out, 1);
+            out.writeEndElement();
 
             // property/values
             for (Iterator<String> keys = config.getKeys(); keys.hasNext();) {
@@ -279,42 +538,127 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
                 Object value = config.getProperty(key);
 
                 if (value != null) {
+                    // typed values are written as in their source
+                    TypedValue typed = config instanceof RuntimeConfiguration ? ((RuntimeConfiguration) config)
+                            .getTypedValue(key) : null;
+                    if (typed != null && !typed.isValue(value)) typed = null;
+
                     // prepare the value
-                    String v = StringEscapeUtils.escapeXml(String.valueOf(value));
+                    String v = StringEscapeUtils.escapeXml(typed == null ? String.valueOf(value) : typed.getText());
                     v = StringUtils.replace(v, String.valueOf(','), "\\" + ',');
 
                     // property
-                    Element property = doc.createElement(Elem.PROPERTY);
-                    property.setAttribute(Attr.KEY, StringEscapeUtils.escapeXml(key));
-                    configuration.appendChild(property);
+                    indent(out, 1);
+                    out.writeStartElement(Elem.PROPERTY);
+                    out.writeAttribute(Attr.KEY, StringEscapeUtils.escapeXml(key));
 
                     // value
-                    Element val = doc.createElement(Elem.VALUE);
-                    val.setAttribute(Attr.ENV, "0");
-                    val.setTextContent(v);
-                    property.appendChild(val);
+                    indent(out, 2);
+                    if (v.isEmpty()) {
+                        out.writeEmptyElement(Elem.VALUE);
+                        out.writeAttribute(Attr.ENV, "0");
+                    } else {
+                        out.writeStartElement(Elem.VALUE);
+                        out.writeAttribute(Attr.ENV, "0");
+                        if (typed != null) out.writeAttribute(Attr.TYPE, typed.getType().getName());
+                        writeText(out, v);
+                        out.writeEndElement();
+                    }
+
+                    indent(out, 1);
+                    out.writeEndElement();
                 }
             }
 
-            // output the results
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-
-            DOMSource source = new DOMSource(doc);
-            StreamResult result = new StreamResult(destination);
-            transformer.transform(source, result);
-        } catch (ParserConfigurationException | TransformerException e) {
+            indent(out, 0);
+            out.writeEndElement();
+            indent(out, 0);
+            out.flush();
+        } catch (XMLStreamException | IOException e) {
             throw new ConfigurationException(e);
         }
     }
 
+    /**
+     * @param delimiterParsingDisabled
+     *            true if the configurations loaded into never split values into lists. Default is false.
+     */
+    public void setDelimiterParsingDisabled(boolean delimiterParsingDisabled) {
+        _delimiterParsingDisabled = delimiterParsingDisabled;
+    }
+
+    /**
+     * Resolves the ${key} references between the properties at load time, in dependency order, so reads return the
+     * final values. Cycles fail the load. References to keys not in the source are still interpolated on read. Default
+     * is false.
+     * 
+     * @param interpolate
+     *            true = resolve references at load time
+     */
+    public void setInterpolate(boolean interpolate) {
+        _interpolate = interpolate;
+    }
+
+    /**
+     * Keeps the values of every environment of the following reads, not only those of the host environment.
+     * Default is false.
+     * 
+     * @param keepEnvironments
+     *            true = keep the values of every environment
+     * @see #getEnvironmentTable()
+     */
+    public void setKeepEnvironments(boolean keepEnvironments) {
+        _keepEnvironments = keepEnvironments;
+    }
+
+    /**
+     * @param listDelimiter
+     *            of the configurations loaded into, references to list values are left to be interpolated on read.
+     *            Default is ','.
+     */
+    public void setListDelimiter(char listDelimiter) {
+        _listDelimiter = listDelimiter;
+    }
+
+    /**
+     * Measures every following load. Phase timings are only taken while a listener is set.
+     * 
+     * @param listener
+     *            notified after each load, null stops measuring
+     */
+    public void setLoadMetricsListener(LoadMetricsListener listener) {
+        _metricsListener = listener;
+    }
+
+    /**
+     * Writes text content, carriage returns and control characters are written as character references
+     */
+    private static void writeText(XMLStreamWriter out, String text) throws XMLStreamException {
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == 0x7f || (c < 0x20 && c != '\t' && c != '\n')) {
+                out.writeCharacters(text.substring(from, i));
+                out.writeEntityRef("#" + (int) c);
+                from = i + 1;
+            }
+        }
+        out.writeCharacters(from == 0 ? text : text.substring(from));
+    }
+
     @Override
     public void startDocument() throws SAXException {
         _state = new Stack<>();
         _valueState = new StringBuilder();
+        _hosts = new HostIndex();
+        _runtimeProperties.clear();
+        _runtimeTypes.clear();
+        _typedValues = Collections.emptyMap();
+        _environment = null;
+        _environmentTable = null;
+        _tableBuilder = _keepEnvironments ? new EnvironmentTable.Builder() : null;
+        _resolveNanos = 0;
+        _propertiesParsed = _hostsTried = 0;
     }
 
     /**
@@ -325,6 +669,9 @@ public class RuntimeConfigurationHandler extends DefaultHandler implements Confi
         String elementState = _state.push(StringUtils.lowerCase(name));
         if (Elem.HOSTS.equals(elementState)) assignHostEnvironment(attr.getValue(StringUtils.EMPTY, Attr.ENV));
         if (Elem.PROPERTY.equals(elementState)) assignPropertyKey(attr.getValue(StringUtils.EMPTY, Attr.KEY));
-        if (Elem.VALUE.equals(elementState)) assignValueEnvironment(attr.getValue(StringUtils.EMPTY, Attr.ENV));
+        if (Elem.VALUE.equals(elementState)) {
+            assignValueEnvironment(attr.getValue(StringUtils.EMPTY, Attr.ENV));
+            assignValueType(attr.getValue(StringUtils.EMPTY, Attr.TYPE));
+        }
     }
 }
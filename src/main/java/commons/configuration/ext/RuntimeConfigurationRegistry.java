@@ -0,0 +1,294 @@
+package commons.configuration.ext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConfigurationUtils;
+
+/**
+ * JVM wide registry of the resolved properties of runtime configuration sources. Consumers of the same source, e.g.
+ * the web applications of an application server, share a single {@link SharedConfiguration} per content: a source is
+ * parsed and held in memory once no matter how many consumers acquire it.
+ * <p>
+ * Sources are keyed by their canonical url and a hash of their content, so a changed source is parsed again while the
+ * consumers of the previous content keep it. An acquired configuration is held until every consumer released it, then
+ * only weakly; it is reused while it is still reachable and otherwise evicted by the garbage collector. New content is
+ * parsed once, outside the registry lock: concurrent consumers of the same content wait for that parse, consumers of
+ * other sources don't.
+ * <p>
+ * Sources are resolved with the defaults of a {@link RuntimeConfiguration}: the host environment, without eager
+ * interpolation. Content is decoded in the encoding of its byte order mark or xml declaration, otherwise as a
+ * {@link RuntimeConfiguration} without an encoding decodes it.
+ *
+ * <pre>
+ * SharedConfiguration config = RuntimeConfigurationRegistry.instance().acquire(url);
+ * try {
+ *     ...
+ * } finally {
+ *     RuntimeConfigurationRegistry.instance().release(config);
+ * }
+ * </pre>
+ *
+ * @author Timothy Storm
+ */
+public final class RuntimeConfigurationRegistry {
+    private static final RuntimeConfigurationRegistry INSTANCE = new RuntimeConfigurationRegistry();
+
+    /** encoding of an xml declaration */
+    private static final Pattern XML_ENCODING = Pattern
+            .compile("^<\\?xml[^>]*?\\sencoding\\s*=\\s*[\"']([\\w.:-]+)[\"']");
+
+    /** a configuration of the registry, held strongly while acquired */
+    private static class Entry extends WeakReference<SharedConfiguration> {
+        final String key;
+
+        /** the configuration while it is acquired, null once every consumer released it */
+        SharedConfiguration acquired;
+
+        int references;
+
+        Entry(String key, SharedConfiguration configuration, ReferenceQueue<SharedConfiguration> queue) {
+            super(configuration, queue);
+            this.key = key;
+        }
+    }
+
+    /** <canonical url and content hash, entry> */
+    private final Map<String, Entry> _entries = new HashMap<>();
+
+    /** <canonical url and content hash, parse> of the contents being parsed */
+    private final Map<String, FutureTask<SharedConfiguration>> _loading = new HashMap<>();
+
+    /** <configuration, entry> of the acquired configurations */
+    private final Map<SharedConfiguration, Entry> _acquired = new IdentityHashMap<>();
+
+    /** entries whose configuration was collected */
+    private final ReferenceQueue<SharedConfiguration> _collected = new ReferenceQueue<>();
+
+    RuntimeConfigurationRegistry() {}
+
+    /**
+     * @return the registry of this JVM
+     */
+    public static RuntimeConfigurationRegistry instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the url of a file as its canonical path, any other url normalized
+     */
+    static String canonical(URL url) throws IOException {
+        File file = ConfigurationUtils.fileFromURL(url);
+        if (file != null) return file.getCanonicalFile().toURI().toString();
+        try {
+            return url.toURI().normalize().toString();
+        } catch (URISyntaxException e) {
+            return url.toExternalForm();
+        }
+    }
+
+    /**
+     * @return encoding of the byte order mark or xml declaration of the content, null if it declares none
+     */
+    static String encoding(byte[] content) {
+        if (content.length >= 3 && (content[0] & 0xff) == 0xef && (content[1] & 0xff) == 0xbb
+                && (content[2] & 0xff) == 0xbf) return "UTF-8";
+        if (content.length >= 2 && (content[0] & 0xff) == 0xfe && (content[1] & 0xff) == 0xff) return "UTF-16BE";
+        if (content.length >= 2 && (content[0] & 0xff) == 0xff && (content[1] & 0xff) == 0xfe) return "UTF-16LE";
+
+        // the declaration is ascii in every encoding it can name without a byte order mark
+        String declaration = new String(content, 0, Math.min(content.length, 256), StandardCharsets.ISO_8859_1);
+        Matcher matcher = XML_ENCODING.matcher(declaration);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static byte[] hash(byte[] content) throws ConfigurationException {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private static byte[] read(URL source) throws ConfigurationException {
+        try (InputStream in = source.openStream()) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1;) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } catch (IOException e) {
+            throw new ConfigurationException("Unable to load the configuration from the URL " + source, e);
+        }
+    }
+
+    /**
+     * Acquires the resolved properties of a source, parsing the source only if its content is not registered. Every
+     * acquire must be followed by a {@link #release(SharedConfiguration)}.
+     *
+     * @param source
+     *            of a runtime configuration in any {@link RuntimeFormat}
+     * @return the shared configuration of the source's content
+     * @throws ConfigurationException
+     *             if the source cannot be read or resolved
+     */
+    public SharedConfiguration acquire(final URL source) throws ConfigurationException {
+        if (source == null) throw new NullPointerException("source required!");
+
+        final byte[] content = read(source);
+        String key;
+        try {
+            key = canonical(source) + '#' + SnapshotConfigurationHandler.hex(hash(content));
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+
+        FutureTask<SharedConfiguration> task;
+        boolean parse = false;
+        synchronized (this) {
+            purge();
+            Entry entry = _entries.get(key);
+            SharedConfiguration configuration = entry == null ? null : entry.get();
+            if (configuration != null) return acquire(entry, configuration);
+
+            // the first consumer of new content parses it, later ones wait for that parse
+            task = _loading.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<SharedConfiguration>() {
+                    @Override
+                    public SharedConfiguration call() throws ConfigurationException {
+                        return load(source, content);
+                    }
+                });
+                _loading.put(key, task);
+                parse = true;
+            }
+        }
+
+        if (parse) task.run();
+        try {
+            return register(key, task.get(), task);
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (_loading.get(key) == task) _loading.remove(key);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof ConfigurationException) throw (ConfigurationException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ConfigurationException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigurationException("interrupted while waiting for '" + source + "' to be parsed", e);
+        }
+    }
+
+    /**
+     * Takes a reference to the configuration of an entry
+     */
+    private SharedConfiguration acquire(Entry entry, SharedConfiguration configuration) {
+        entry.acquired = configuration;
+        entry.references++;
+        _acquired.put(configuration, entry);
+        return configuration;
+    }
+
+    /**
+     * Resolves a source's content into a shared configuration, the table of the loading configuration is taken as is
+     */
+    private static SharedConfiguration load(URL source, byte[] content) throws ConfigurationException {
+        ConcurrentRuntimeConfiguration loader = new ConcurrentRuntimeConfiguration();
+        loader.setURL(source);
+        String encoding = encoding(content);
+        if (encoding != null) loader.setEncoding(encoding);
+        loader.load(new ByteArrayInputStream(content));
+        return new SharedConfiguration(source, loader.getEnvironment(), loader.getPropertyTable(),
+                loader.getTypedTexts());
+    }
+
+    /**
+     * Registers the parsed configuration of new content, once, and takes a reference to it
+     *
+     * @param task
+     *            that parsed the content
+     */
+    private synchronized SharedConfiguration register(String key, SharedConfiguration configuration,
+            FutureTask<SharedConfiguration> task) {
+        purge();
+        if (_loading.get(key) == task) _loading.remove(key);
+
+        Entry entry = _entries.get(key);
+        if (entry == null || entry.get() != configuration) {
+            entry = new Entry(key, configuration, _collected);
+            _entries.put(key, entry);
+        }
+        return acquire(entry, configuration);
+    }
+
+    /**
+     * Drops the entries whose configuration was collected
+     */
+    private void purge() {
+        for (Reference<? extends SharedConfiguration> collected; (collected = _collected.poll()) != null;) {
+            Entry entry = (Entry) collected;
+            if (_entries.get(entry.key) == entry) _entries.remove(entry.key);
+        }
+    }
+
+    /**
+     * @param configuration
+     *            acquired configuration
+     * @return number of consumers holding the configuration, 0 if it is not acquired
+     */
+    public synchronized int getReferences(SharedConfiguration configuration) {
+        Entry entry = _acquired.get(configuration);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * Releases an acquired configuration. Once every consumer released it the configuration is only held weakly.
+     *
+     * @param configuration
+     *            acquired by {@link #acquire(URL)}
+     * @return true if the configuration was acquired
+     */
+    public synchronized boolean release(SharedConfiguration configuration) {
+        Entry entry = _acquired.get(configuration);
+        if (entry == null) return false;
+
+        if (--entry.references == 0) {
+            entry.acquired = null;
+            _acquired.remove(configuration);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of registered contents that have not been collected
+     */
+    public synchronized int size() {
+        purge();
+        return _entries.size();
+    }
+}
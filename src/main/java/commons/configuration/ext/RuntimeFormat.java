@@ -0,0 +1,101 @@
+package commons.configuration.ext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Formats of a runtime configuration source. The format of a source is known from the extension of its file name or
+ * sniffed from its first characters.
+ *
+ * @author Timothy Storm
+ * @see RuntimeConfiguration#getConfigurationHandler(RuntimeFormat)
+ */
+public enum RuntimeFormat {
+    XML("xml") {
+        @Override
+        public RuntimeConfigurationHandler newHandler() {
+            return new RuntimeConfigurationHandler();
+        }
+    },
+    JSON("json") {
+        @Override
+        public RuntimeConfigurationHandler newHandler() {
+            return new JsonConfigurationHandler();
+        }
+    },
+    YAML("yaml", "yml") {
+        @Override
+        public RuntimeConfigurationHandler newHandler() {
+            return new YamlConfigurationHandler();
+        }
+    };
+
+    /** characters sniffed at most */
+    private static final int SNIFF_LIMIT = 8192;
+
+    private final String[] _extensions;
+
+    private RuntimeFormat(String... extensions) {
+        _extensions = extensions;
+    }
+
+    /**
+     * @param fileName
+     *            of the source, may be a path or url
+     * @return format of the file name's extension, null if the extension is unknown
+     */
+    public static RuntimeFormat forFileName(String fileName) {
+        if (fileName == null) return null;
+
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || fileName.indexOf('/', dot) >= 0 || fileName.indexOf('\\', dot) >= 0) return null;
+        String extension = fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+        for (RuntimeFormat format : values()) {
+            for (String known : format._extensions) {
+                if (known.equals(extension)) return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sniffs the format of a source from its first characters: xml starts with '&lt;', json with '{' and yaml with a
+     * key, a comment or a document marker. Anything else is taken to be xml, so the xml parser reports it.
+     *
+     * @param source
+     *            that supports mark, it is reset to where it was
+     * @return format of the source
+     * @throws IOException
+     *             if the source cannot be read
+     */
+    public static RuntimeFormat sniff(Reader source) throws IOException {
+        if (!source.markSupported()) throw new IllegalArgumentException("source must support mark!");
+
+        source.mark(SNIFF_LIMIT);
+        try {
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                int c = source.read();
+                if (c == -1) return XML;
+                if (Character.isWhitespace(c) || c == '\uFEFF') continue;
+                if (c == '<') return XML;
+                if (c == '{') return JSON;
+                if (c == '#' || c == '-') return YAML;
+
+                // a yaml key is followed by a ':' on the first line
+                for (; i < SNIFF_LIMIT && c != -1 && c != '\n'; i++, c = source.read()) {
+                    if (c == ':') return YAML;
+                }
+                return XML;
+            }
+            return XML;
+        } finally {
+            source.reset();
+        }
+    }
+
+    /**
+     * @return a new handler of this format
+     */
+    public abstract RuntimeConfigurationHandler newHandler();
+}
@@ -0,0 +1,244 @@
+package commons.configuration.ext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+import commons.configuration.ext.matcher.HostIndex;
+
+/**
+ * Compact binary image of resolved runtime properties. Snapshots are identified by a content hash of the source they
+ * were resolved from and the schema version. The configured hosts are kept so the host environment can be resolved
+ * again, without the source, before a snapshot is served.
+ *
+ * <pre>
+ * int     magic
+ * int     format version
+ * bytes   content hash
+ * string  schema
+ * int     environment count
+ * string  environment (repeated, in declaration order)
+ * int     host count
+ * string  environment, string host (repeated, in declaration order)
+ * string  environment
+ * int     property count
+ * string  key, string value, string type (repeated, the type is empty for untyped values)
+ * long    crc32 of everything above
+ * </pre>
+ *
+ * Strings and bytes are written as an int length followed by the (UTF-8) bytes.
+ *
+ * @author Timothy Storm
+ * @see SnapshotConfigurationHandler
+ */
+class RuntimeSnapshot {
+    private static final int MAGIC = 0x52435331; // RCS1
+
+    private static final int FORMAT = 3;
+
+    private final byte[]              _hash;
+    private final String              _schema, _environment;
+    private final HostIndex           _hosts;
+    private final Map<String, String> _properties;
+    private final Map<String, ValueType> _types;
+
+    RuntimeSnapshot(byte[] hash, String schema, HostIndex hosts, String environment, Map<String, String> properties,
+            Map<String, ValueType> types) {
+        _hash = hash;
+        _schema = schema;
+        _hosts = hosts;
+        _environment = environment;
+        _properties = Collections.unmodifiableMap(properties);
+        _types = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Memory maps and decodes a snapshot file
+     *
+     * @param file
+     *            of the snapshot
+     * @return decoded snapshot or null if the file is missing, truncated or corrupt
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static RuntimeSnapshot read(File file) throws IOException {
+        if (!file.isFile()) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < 16 || size > Integer.MAX_VALUE) return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                // verify the checksum before trusting any of the lengths
+                CRC32 crc = new CRC32();
+                byte[] chunk = new byte[8192];
+                for (int remaining = (int) size - 8; remaining > 0; remaining -= chunk.length) {
+                    int length = Math.min(chunk.length, remaining);
+                    buffer.get(chunk, 0, length);
+                    crc.update(chunk, 0, length);
+                }
+                if (crc.getValue() != buffer.getLong()) return null;
+
+                buffer.position(0);
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) return null;
+
+                byte[] hash = readBytes(buffer);
+                String schema = readString(buffer);
+
+                HostIndex hosts = new HostIndex();
+                int count = buffer.getInt();
+                if (count < 0) return null;
+                for (int i = 0; i < count; i++) {
+                    hosts.addEnvironment(readString(buffer));
+                }
+                count = buffer.getInt();
+                if (count < 0) return null;
+                for (int i = 0; i < count; i++) {
+                    hosts.add(readString(buffer), readString(buffer));
+                }
+                String env = readString(buffer);
+
+                count = buffer.getInt();
+                if (count < 0) return null;
+
+                Map<String, String> properties = new LinkedHashMap<>();
+                Map<String, ValueType> types = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String key = readString(buffer);
+                    properties.put(key, readString(buffer));
+                    String type = readString(buffer);
+                    if (!type.isEmpty()) types.put(key, ValueType.forName(type));
+                }
+                return new RuntimeSnapshot(hash, schema, hosts, env, properties, types);
+            } catch (BufferUnderflowException | IllegalArgumentException | ConfigurationException e) {
+                return null; // corrupt
+            }
+        }
+    }
+
+    private static byte[] readBytes(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("corrupt length");
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String getEnvironment() {
+        return _environment;
+    }
+
+    /**
+     * @return configured hosts of each environment
+     */
+    HostIndex getHosts() {
+        return _hosts;
+    }
+
+    Map<String, String> getProperties() {
+        return _properties;
+    }
+
+    /**
+     * @return <key, type> of the properties that declare a type
+     */
+    Map<String, ValueType> getTypes() {
+        return _types;
+    }
+
+    /**
+     * @return true if this snapshot was resolved from the same content and schema
+     */
+    boolean matches(byte[] hash, String schema) {
+        return Arrays.equals(_hash, hash) && _schema.equals(schema);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and then moves it over the target so readers never see a partial file.
+     *
+     * @param file
+     *            target of the snapshot
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    void write(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        writeBytes(out, _hash);
+        writeString(out, _schema);
+        out.writeInt(_hosts.environments().size());
+        for (String environment : _hosts.environments()) {
+            writeString(out, environment);
+        }
+        List<String> hosts = _hosts.hosts();
+        out.writeInt(hosts.size());
+        Iterator<String> environments = _hosts.hostEnvironments().iterator();
+        for (String host : hosts) {
+            writeString(out, environments.next());
+            writeString(out, host);
+        }
+        writeString(out, _environment);
+        out.writeInt(_properties.size());
+        for (Entry<String, String> entry : _properties.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+            ValueType type = _types.get(entry.getKey());
+            writeString(out, type == null ? "" : type.getName());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package commons.configuration.ext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Maps the tree of a json or yaml runtime configuration onto the element callbacks of a
+ * {@link RuntimeConfigurationHandler}, so every format shares the host resolution and value filtering of runtime xml.
+ * The tree is reported as it is parsed and nothing is buffered but the members of a typed value.
+ *
+ * <pre>
+ * context:             &lt;context&gt;
+ *   local:               &lt;hosts env="local"&gt;
+ *     - localhost          &lt;host&gt;localhost&lt;/host&gt;
+ * properties:
+ *   name: app          &lt;property key="name"&gt;&lt;value env="*"&gt;app&lt;/value&gt;&lt;/property&gt;
+ *   url:               &lt;property key="url"&gt;
+ *     local: http://     &lt;value env="local"&gt;http://&lt;/value&gt;
+ *   port:              &lt;property key="port"&gt;
+ *     "*":                 &lt;value env="*" type="int"&gt;8080&lt;/value&gt;
+ *       value: 8080
+ *       type: int
+ * </pre>
+ *
+ * An environment with a single host may map to it directly instead of to a list of hosts.
+ *
+ * @author Timothy Storm
+ */
+final class RuntimeTreeHandler {
+    /** containers of the tree */
+    private enum State {
+        DOCUMENT, CONFIGURATION, CONTEXT, HOSTS, PROPERTIES, PROPERTY, VALUE
+    }
+
+    private static final String CONTEXT = "context", PROPERTIES = "properties", VALUE = "value", TYPE = "type";
+
+    private static final String GLOB_ENV_KEY = "*";
+
+    private final RuntimeConfigurationHandler _handler;
+
+    private final Locator _locator;
+
+    /** open containers, the innermost first */
+    private final Deque<State> _states = new ArrayDeque<>();
+
+    /** key of the current member */
+    private String _key;
+
+    /** environment, text and type of the current typed value */
+    private String _valueEnvironment, _value, _type;
+
+    /**
+     * @param handler
+     *            to report the configuration to
+     * @param locator
+     *            position of the parser, for errors
+     */
+    RuntimeTreeHandler(RuntimeConfigurationHandler handler, Locator locator) {
+        _handler = handler;
+        _locator = locator;
+    }
+
+    private static AttributesImpl attribute(String name, String value) {
+        AttributesImpl attributes = new AttributesImpl();
+        if (value != null) attributes.addAttribute("", name, name, "CDATA", value);
+        return attributes;
+    }
+
+    /**
+     * Ends the innermost object or list
+     */
+    void end() throws SAXException {
+        switch (_states.pop()) {
+        case CONFIGURATION:
+            endElement("configuration");
+            break;
+        case CONTEXT:
+            endElement(CONTEXT);
+            break;
+        case HOSTS:
+            endElement("hosts");
+            break;
+        case PROPERTY:
+            endElement("property");
+            break;
+        case VALUE:
+            if (_value == null) throw error("property[@key] value required for env '" + _valueEnvironment + "'");
+            value(_valueEnvironment, _type, _value);
+            break;
+        default:
+            break;
+        }
+    }
+
+    void endDocument() throws SAXException {
+        if (_states.size() != 1) throw error("unexpected end of document");
+        _handler.endDocument();
+    }
+
+    private void endElement(String name) throws SAXException {
+        _handler.endElement("", name, name);
+    }
+
+    private SAXParseException error(String message) {
+        return new SAXParseException(message, _locator);
+    }
+
+    private void host(String host) throws SAXException {
+        startElement("host", null, null);
+        text(host);
+        endElement("host");
+    }
+
+    /**
+     * Names the member whose value is reported next
+     */
+    void key(String key) throws SAXException {
+        if (key == null) throw error("key required");
+        _key = key;
+    }
+
+    /**
+     * Reports a scalar, null for an empty or null scalar
+     */
+    void scalar(String scalar) throws SAXException {
+        String text = scalar == null ? "" : scalar;
+        switch (_states.peek()) {
+        case CONTEXT:
+            startElement("hosts", "env", _key);
+            host(text);
+            endElement("hosts");
+            break;
+        case HOSTS:
+            host(text);
+            break;
+        case PROPERTIES:
+            startElement("property", "key", _key);
+            value(GLOB_ENV_KEY, null, text);
+            endElement("property");
+            break;
+        case PROPERTY:
+            value(_key, null, text);
+            break;
+        case VALUE:
+            if (VALUE.equals(_key)) _value = text;
+            else if (TYPE.equals(_key)) _type = text;
+            else throw error("unknown value member '" + _key + "'");
+            break;
+        default:
+            throw error("unexpected value '" + text + "'");
+        }
+    }
+
+    /**
+     * Starts a list
+     */
+    void startArray() throws SAXException {
+        if (_states.peek() != State.CONTEXT) throw error("unexpected list");
+        startElement("hosts", "env", _key);
+        _states.push(State.HOSTS);
+    }
+
+    void startDocument() throws SAXException {
+        _states.clear();
+        _states.push(State.DOCUMENT);
+        _handler.setDocumentLocator(_locator);
+        _handler.startDocument();
+    }
+
+    private void startElement(String name, String attribute, String value) throws SAXException {
+        _handler.startElement("", name, name, attribute(attribute, value));
+    }
+
+    /**
+     * Starts an object
+     */
+    void startObject() throws SAXException {
+        switch (_states.peek()) {
+        case DOCUMENT:
+            startElement("configuration", null, null);
+            _states.push(State.CONFIGURATION);
+            break;
+        case CONFIGURATION:
+            if (CONTEXT.equals(_key)) {
+                startElement(CONTEXT, null, null);
+                _states.push(State.CONTEXT);
+            } else if (PROPERTIES.equals(_key)) _states.push(State.PROPERTIES);
+            else throw error("unknown member '" + _key + "'");
+            break;
+        case PROPERTIES:
+            startElement("property", "key", _key);
+            _states.push(State.PROPERTY);
+            break;
+        case PROPERTY:
+            _valueEnvironment = _key;
+            _value = _type = null;
+            _states.push(State.VALUE);
+            break;
+        default:
+            throw error("unexpected object");
+        }
+    }
+
+    private void text(String text) throws SAXException {
+        _handler.characters(text.toCharArray(), 0, text.length());
+    }
+
+    private void value(String environment, String type, String text) throws SAXException {
+        AttributesImpl attributes = attribute("env", environment);
+        if (type != null) attributes.addAttribute("", TYPE, TYPE, "CDATA", type);
+        _handler.startElement("", VALUE, VALUE, attributes);
+        text(text);
+        endElement(VALUE);
+    }
+}
@@ -0,0 +1,353 @@
+package commons.configuration.ext;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Merges changed properties of one environment into a runtime xml source in a single streaming pass. Everything but
+ * the changed properties is copied event by event, so the hosts, the values of the other environments, comments and
+ * formatting survive; only the events of one changed property are held at a time.
+ * <p>
+ * A change replaces the value of the environment, which is added if the property has none, and a removal drops it,
+ * along with the property once it has no values left. A global (*) value takes precedence over every environment, so
+ * it is expanded instead: each other environment of the context gets a copy of the global value, the environment gets
+ * the changed value and the global value is dropped, so the other environments read what they read before. Properties
+ * not in the source are added at the end of the configuration. Keys and environments are matched as the
+ * {@link RuntimeConfigurationHandler} reads them.
+ *
+ * @author Timothy Storm
+ */
+final class RuntimeXmlMerger {
+    private static final String HOSTS = "hosts", PROPERTY = "property", VALUE = "value", KEY = "key", ENV = "env";
+
+    private static final String GLOB_ENV_KEY = "*";
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** stax factories are thread safe once configured */
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private RuntimeXmlMerger() {}
+
+    /**
+     * @return the attribute as read by the handler, null if missing
+     */
+    private static String attribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute == null ? null : StringUtils.trim(StringEscapeUtils.escapeXml(attribute.getValue()));
+    }
+
+    /**
+     * Finds the value elements of a buffered property
+     *
+     * @return <environment, [start, end]> indexes of the start and end events of each value
+     */
+    private static Map<String, int[]> values(List<XMLEvent> property) {
+        Map<String, int[]> values = new LinkedHashMap<>();
+        for (int i = 0; i < property.size(); i++) {
+            XMLEvent event = property.get(i);
+            if (!event.isStartElement() || !VALUE.equals(event.asStartElement().getName().getLocalPart())) continue;
+
+            int end = i + 1;
+            while (!property.get(end).isEndElement()) {
+                end++;
+            }
+            values.put(attribute(event.asStartElement(), ENV), new int[] { i, end });
+            i = end;
+        }
+        return values;
+    }
+
+    /**
+     * Merges changes into a runtime xml source
+     *
+     * @param source
+     *            runtime xml
+     * @param destination
+     *            of the merged xml, flushed but not closed
+     * @param environment
+     *            of the changed values, as read by the handler
+     * @param changes
+     *            <key, value> of the changed properties, a null value removes the property from the environment
+     * @throws ConfigurationException
+     *             if the source is not well formed or the destination cannot be written
+     */
+    static void merge(Reader source, Writer destination, String environment, Map<String, String> changes)
+            throws ConfigurationException {
+        if (environment == null) throw new NullPointerException("environment required!");
+
+        Map<String, String> added = new LinkedHashMap<>(changes);
+        try {
+            XMLEventReader in = INPUT_FACTORY.createXMLEventReader(source);
+            XMLEventWriter out = OUTPUT_FACTORY.createXMLEventWriter(destination);
+
+            List<XMLEvent> property = null, space = new ArrayList<>();
+            List<String> environments = new ArrayList<>();
+            String key = null;
+            int depth = 0;
+            while (in.hasNext()) {
+                XMLEvent event = in.nextEvent();
+                if (property != null) {
+                    property.add(event);
+                    if (event.isEndElement() && PROPERTY.equals(event.asEndElement().getName().getLocalPart())) {
+                        write(out, property, environments, environment, changes.get(key));
+                        property = null;
+                    }
+                    continue;
+                }
+
+                // the declaration is written as declared, white space around the document is not reported
+                if (event.isStartDocument()) {
+                    StartDocument document = (StartDocument) event;
+                    if (document.encodingSet() || document.standaloneSet()) {
+                        out.add(EVENTS.createStartDocument(document.getCharacterEncodingScheme(), document
+                                .getVersion(), document.isStandalone()));
+                        out.add(EVENTS.createCharacters(LINE_SEPARATOR));
+                    }
+                    continue;
+                }
+
+                // white space is held so a property that is dropped takes the line it was on
+                if (isWhitespace(event)) {
+                    space.add(event);
+                    continue;
+                }
+
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement start = event.asStartElement();
+                    // the context precedes the properties, every environment is known before the first is changed
+                    if (HOSTS.equals(start.getName().getLocalPart())) environments.add(attribute(start, ENV));
+                    if (PROPERTY.equals(start.getName().getLocalPart())) {
+                        key = attribute(start, KEY);
+                        if (changes.containsKey(key)) {
+                            // a key declared again replaces the earlier declaration, every declaration is changed
+                            added.remove(key);
+                            property = new ArrayList<>(space);
+                            property.add(event);
+                            space.clear();
+                            depth--;
+                            continue;
+                        }
+                    }
+                }
+                for (XMLEvent held : space) {
+                    out.add(held);
+                }
+                space.clear();
+                if (event.isEndElement() && --depth == 0) {
+                    append(out, event.asEndElement().getName(), environment, added);
+                }
+                out.add(event);
+            }
+            out.add(EVENTS.createCharacters(LINE_SEPARATOR));
+            out.flush();
+        } catch (XMLStreamException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    /**
+     * Appends the properties that are not in the source, before the end of the configuration
+     */
+    private static void append(XMLEventWriter out, QName configuration, String environment, Map<String, String> added)
+            throws XMLStreamException {
+        for (Entry<String, String> entry : added.entrySet()) {
+            if (entry.getValue() == null) continue;
+
+            out.add(EVENTS.createCharacters("  "));
+            out.add(start(configuration, PROPERTY, KEY, StringEscapeUtils.unescapeXml(entry.getKey())));
+            out.add(EVENTS.createCharacters(LINE_SEPARATOR + "    "));
+            for (XMLEvent event : value(configuration, environment, entry.getValue())) {
+                out.add(event);
+            }
+            out.add(EVENTS.createCharacters(LINE_SEPARATOR + "  "));
+            out.add(EVENTS.createEndElement(configuration.getPrefix(), configuration.getNamespaceURI(), PROPERTY));
+            out.add(EVENTS.createCharacters(LINE_SEPARATOR));
+        }
+    }
+
+    private static boolean isWhitespace(XMLEvent event) {
+        return event.isCharacters() && event.asCharacters().isWhiteSpace();
+    }
+
+    private static StartElement start(QName sibling, String name, String attribute, String value) {
+        Iterator<Attribute> attributes = Collections.singletonList(EVENTS.createAttribute(attribute, value))
+                .iterator();
+        return EVENTS.createStartElement(sibling.getPrefix(), sibling.getNamespaceURI(), name, attributes, null);
+    }
+
+    /**
+     * @return events of a new value element
+     */
+    private static List<XMLEvent> value(QName sibling, String environment, String value) {
+        List<XMLEvent> events = new ArrayList<>(3);
+        events.add(start(sibling, VALUE, ENV, StringEscapeUtils.unescapeXml(environment)));
+        if (!value.isEmpty()) events.add(EVENTS.createCharacters(value));
+        events.add(EVENTS.createEndElement(sibling.getPrefix(), sibling.getNamespaceURI(), VALUE));
+        return events;
+    }
+
+    /**
+     * @return index of the start of a buffered property, the white space leading up to it comes first
+     */
+    private static int start(List<XMLEvent> property) {
+        int start = 0;
+        while (!property.get(start).isStartElement()) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @return the events of the property without the values, nor the white space leading up to them, and the
+     *         inserted events in place of the first value dropped
+     */
+    private static List<XMLEvent> drop(List<XMLEvent> property, List<int[]> values, List<XMLEvent> inserted) {
+        boolean[] drop = new boolean[property.size()];
+        int at = drop.length;
+        for (int[] range : values) {
+            int start = isWhitespace(property.get(range[0] - 1)) ? range[0] - 1 : range[0];
+            Arrays.fill(drop, start, range[1] + 1, true);
+            at = Math.min(at, start);
+        }
+
+        List<XMLEvent> merged = new ArrayList<>(property.size() + inserted.size());
+        for (int i = 0; i < drop.length; i++) {
+            if (i == at) merged.addAll(inserted);
+            if (!drop[i]) merged.add(property.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * Expands the global value of a buffered property into a value per environment, the values of the environments
+     * the global value took precedence over are dropped
+     *
+     * @param value
+     *            of the environment, null to remove it
+     * @return the expanded property, null if it has no values left
+     */
+    private static List<XMLEvent> expand(List<XMLEvent> property, Map<String, int[]> values,
+            List<String> environments, String environment, String value) {
+        int[] global = values.get(GLOB_ENV_KEY);
+        XMLEvent indent = property.get(global[0] - 1);
+        StartElement start = property.get(global[0]).asStartElement();
+
+        List<String> expanded = new ArrayList<>(environments);
+        if (!expanded.contains(environment)) expanded.add(environment);
+        if (value == null) expanded.remove(environment);
+
+        List<XMLEvent> inserted = new ArrayList<>();
+        for (String env : expanded) {
+            if (isWhitespace(indent)) inserted.add(indent);
+            inserted.add(withEnvironment(start, env));
+            if (!env.equals(environment)) {
+                inserted.addAll(property.subList(global[0] + 1, global[1]));
+            } else if (!value.isEmpty()) {
+                inserted.add(EVENTS.createCharacters(value));
+            }
+            inserted.add(property.get(global[1]));
+        }
+
+        List<int[]> dropped = new ArrayList<>();
+        for (Entry<String, int[]> entry : values.entrySet()) {
+            if (GLOB_ENV_KEY.equals(entry.getKey()) || entry.getKey().equals(environment)
+                    || environments.contains(entry.getKey())) dropped.add(entry.getValue());
+        }
+        if (inserted.isEmpty() && dropped.size() == values.size()) return null;
+        return drop(property, dropped, inserted);
+    }
+
+    /**
+     * @return copy of a value start element, of another environment
+     */
+    private static StartElement withEnvironment(StartElement start, String environment) {
+        List<Attribute> attributes = new ArrayList<>();
+        for (Iterator<?> it = start.getAttributes(); it.hasNext();) {
+            Attribute attribute = (Attribute) it.next();
+            if (!ENV.equals(attribute.getName().getLocalPart())) attributes.add(attribute);
+        }
+        attributes.add(0, EVENTS.createAttribute(ENV, StringEscapeUtils.unescapeXml(environment)));
+        QName name = start.getName();
+        return EVENTS.createStartElement(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart(), attributes
+                .iterator(), start.getNamespaces());
+    }
+
+    /**
+     * Writes a buffered property with the change applied, nothing is written if it has no values left
+     *
+     * @param environments
+     *            of the context, in declaration order
+     * @param value
+     *            of the environment, null to remove it
+     */
+    private static void write(XMLEventWriter out, List<XMLEvent> property, List<String> environments,
+            String environment, String value) throws XMLStreamException {
+        Map<String, int[]> values = values(property);
+        int[] local = values.get(environment);
+        QName name = property.get(start(property)).asStartElement().getName();
+
+        List<XMLEvent> merged;
+        if (values.containsKey(GLOB_ENV_KEY)) {
+            merged = expand(property, values, environments, environment, value);
+            if (merged == null) return;
+        } else if (value == null) {
+            if (values.size() == (local == null ? 0 : 1)) return;
+            merged = local == null ? property : drop(property, Collections.singletonList(local), Collections
+                    .<XMLEvent> emptyList());
+        } else if (local != null) {
+            merged = new ArrayList<>(property.size() + 1);
+            merged.addAll(property.subList(0, local[0] + 1));
+            if (!value.isEmpty()) merged.add(EVENTS.createCharacters(value));
+            merged.addAll(property.subList(local[1], property.size()));
+        } else {
+            // add the value after the last one, indented like the first
+            merged = new ArrayList<>(property.size() + 4);
+            int end = property.size() - 1;
+            int at = isWhitespace(property.get(end - 1)) ? end - 1 : end;
+            merged.addAll(property.subList(0, at));
+            XMLEvent indent = values.isEmpty() ? null : property.get(values.values().iterator().next()[0] - 1);
+            merged.add(indent != null && isWhitespace(indent) ? indent : EVENTS.createCharacters(LINE_SEPARATOR
+                    + "    "));
+            merged.addAll(value(name, environment, value));
+            merged.addAll(property.subList(at, property.size()));
+        }
+        for (XMLEvent event : merged) {
+            out.add(event);
+        }
+    }
+}
@@ -2,11 +2,19 @@ package commons.configuration.ext;
 
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 
 import org.apache.commons.configuration.ConfigurationException;
+import org.xml.sax.SAXException;
 
 /**
- * Loads an xml schema from the META-INF schemas definition
+ * Loads an xml schema from the META-INF schemas definition. Compiled schemas and their parser pools are cached for the
+ * life of the JVM, keyed by namespace and path, so repeated loads never recompile the schema.
  * 
  * @author Timothy Storm
  */
@@ -17,6 +25,12 @@ class RuntimeXmlSchema {
 
     private static final String SCHEMA_DEFINITION = "META-INF/configuration-ext.schemas";
 
+    /** <namespace path, pool> - each pool holds the compiled schema its parsers validate against */
+    private static final ConcurrentMap<String, SAXParserPool> POOLS = new ConcurrentHashMap<>();
+
+    /** <namespace path, compiled schema> */
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
     public static RuntimeXmlSchema instance() throws ConfigurationException {
         if (_instance == null) {
             synchronized (RuntimeXmlSchema.class) {
@@ -48,10 +62,55 @@ class RuntimeXmlSchema {
         _path = path;
     }
 
+    /**
+     * Compiles the schema once per namespace/path. {@link Schema}s are immutable and thread safe so the compiled
+     * instance is shared by every caller.
+     * 
+     * @return compiled schema
+     * @throws ConfigurationException
+     *             if the schema cannot be compiled
+     */
+    public Schema compileSchema() throws ConfigurationException {
+        String key = getCacheKey();
+        Schema schema = SCHEMAS.get(key);
+        if (schema == null) {
+            try {
+                // SchemaFactory is not thread safe - use a new one per compile
+                SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                schema = schemaFactory.newSchema(ClassPathUtils.loadResource(_path));
+            } catch (SAXException e) {
+                throw new ConfigurationException("failed to compile schema '" + _path + "'", e);
+            }
+
+            Schema existing = SCHEMAS.putIfAbsent(key, schema);
+            if (existing != null) schema = existing;
+        }
+        return schema;
+    }
+
+    private String getCacheKey() {
+        return _namespace + " " + _path;
+    }
+
     public String getNamespace() {
         return _namespace;
     }
 
+    /**
+     * @return the pool of validating parsers for this schema
+     * @throws ConfigurationException
+     *             if the schema cannot be compiled
+     */
+    public SAXParserPool getParserPool() throws ConfigurationException {
+        String key = getCacheKey();
+        SAXParserPool pool = POOLS.get(key);
+        if (pool == null) {
+            SAXParserPool existing = POOLS.putIfAbsent(key, pool = new SAXParserPool(compileSchema()));
+            if (existing != null) pool = existing;
+        }
+        return pool;
+    }
+
     public String getPath() {
         return _path;
     }
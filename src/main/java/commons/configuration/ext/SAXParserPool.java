@@ -0,0 +1,84 @@
+package commons.configuration.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Bounded pool of validating {@link SAXParser}s that share one compiled {@link Schema}. Parsers are reset before they
+ * are returned to the pool so they can be reused by any thread. When the pool is empty a new parser is created, and
+ * when it is full a released parser is simply dropped - callers never block.
+ *
+ * @author Timothy Storm
+ * @see RuntimeXmlSchema#getParserPool()
+ */
+class SAXParserPool {
+    /** default number of idle parsers kept around */
+    static final int DEFAULT_CAPACITY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** factory is not guaranteed to be thread safe - guarded by itself */
+    private final SAXParserFactory _factory;
+
+    private final BlockingQueue<SAXParser> _idle;
+
+    SAXParserPool(Schema schema) {
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+    SAXParserPool(Schema schema, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive!");
+
+        _factory = SAXParserFactory.newInstance();
+        _factory.setSchema(schema);
+        _factory.setValidating(true);
+        _factory.setNamespaceAware(true);
+        _idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return an idle parser from the pool or a new parser if none are idle
+     * @throws ParserConfigurationException
+     *             if a parser cannot be created
+     * @throws SAXException
+     *             if a parser cannot be created
+     */
+    SAXParser acquire() throws ParserConfigurationException, SAXException {
+        SAXParser parser = _idle.poll();
+        if (parser != null) return parser;
+
+        synchronized (_factory) {
+            return _factory.newSAXParser();
+        }
+    }
+
+    /**
+     * Resets the parser and returns it to the pool. Parsers that cannot be reset, or that do not fit in the pool, are
+     * discarded.
+     *
+     * @param parser
+     *            previously {@link #acquire() acquired}, can be null
+     */
+    void release(SAXParser parser) {
+        if (parser == null) return;
+
+        try {
+            parser.reset();
+        } catch (UnsupportedOperationException e) {
+            return; // can't be reused safely
+        }
+        _idle.offer(parser);
+    }
+
+    /**
+     * @return number of idle parsers waiting in the pool
+     */
+    int idle() {
+        return _idle.size();
+    }
+}
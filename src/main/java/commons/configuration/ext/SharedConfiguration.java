@@ -0,0 +1,122 @@
+package commons.configuration.ext;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+/**
+ * The resolved properties of a runtime configuration source, shared by every consumer of the same content through the
+ * {@link RuntimeConfigurationRegistry}. Instances are immutable; reads take no locks and every change throws
+ * {@link UnsupportedOperationException}.
+ *
+ * @author Timothy Storm
+ */
+public final class SharedConfiguration extends AbstractConfiguration {
+    private final URL _source;
+
+    private final String _environment;
+
+    /** immutable <key, value>, values are a String, a typed value or an unmodifiable List */
+    private final Map<String, Object> _properties;
+
+    /** immutable <key, source text> of the typed values */
+    private final Map<String, String> _texts;
+
+    SharedConfiguration(URL source, String environment, Map<String, Object> properties, Map<String, String> texts) {
+        _source = source;
+        _environment = environment;
+        _properties = Collections.unmodifiableMap(properties);
+        _texts = Collections.unmodifiableMap(texts);
+    }
+
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException("shared configurations are immutable!");
+    }
+
+    @Override
+    public void addProperty(String key, Object value) {
+        throw immutable();
+    }
+
+    @Override
+    protected void addPropertyDirect(String key, Object value) {
+        throw immutable();
+    }
+
+    @Override
+    public void clear() {
+        throw immutable();
+    }
+
+    @Override
+    public void clearProperty(String key) {
+        throw immutable();
+    }
+
+    @Override
+    protected void clearPropertyDirect(String key) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return _properties.containsKey(key);
+    }
+
+    /**
+     * @return host environment the properties were resolved for
+     */
+    public String getEnvironment() {
+        return _environment;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed values are returned as written in the source.
+     */
+    @Override
+    public String getString(String key) {
+        String text = _texts.get(key);
+        return text == null ? super.getString(key) : interpolate(text);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed values are returned as written in the source.
+     */
+    @Override
+    public String getString(String key, String defaultValue) {
+        String text = _texts.get(key);
+        return text == null ? super.getString(key, defaultValue) : interpolate(text);
+    }
+
+    @Override
+    public Iterator<String> getKeys() {
+        return _properties.keySet().iterator();
+    }
+
+    @Override
+    public Object getProperty(String key) {
+        return _properties.get(key);
+    }
+
+    /**
+     * @return source the properties were resolved from
+     */
+    public URL getSource() {
+        return _source;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _properties.isEmpty();
+    }
+
+    @Override
+    public void setProperty(String key, Object value) {
+        throw immutable();
+    }
+}
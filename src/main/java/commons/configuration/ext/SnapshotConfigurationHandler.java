@@ -0,0 +1,190 @@
+package commons.configuration.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Loads runtime configurations from a binary snapshot of previously resolved properties. A snapshot is reused when the
+ * content hash of the source and the schema match and its hosts still resolve to the environment it was resolved for,
+ * with the host matchers of the runtime handler; parsing and validation are skipped entirely. Missing, stale or corrupt
+ * snapshots are rebuilt from the source.
+ * <p>
+ * The snapshot of a named source replaces the snapshot of its earlier content, snapshots of unnamed sources are kept
+ * per content.
+ *
+ * @author Timothy Storm
+ * @see RuntimeConfiguration#setSnapshotDirectory(File)
+ */
+public class SnapshotConfigurationHandler implements ConfigurationHandler {
+    private static final Log LOG = LogFactory.getLog(SnapshotConfigurationHandler.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final RuntimeConfigurationHandler _handler;
+
+    private final File _directory;
+
+    /** name of the source, null if unnamed */
+    private final String _source;
+
+    /** host environment of the last load, null if nothing has been loaded */
+    private String _environment;
+
+    /** <key, typed value> of the typed properties of the last load */
+    private Map<String, TypedValue> _typedValues = Collections.emptyMap();
+
+    /**
+     * @param handler
+     *            to resolve the properties when no usable snapshot exists
+     * @param directory
+     *            where snapshots are kept, created if it doesn't exist
+     */
+    public SnapshotConfigurationHandler(RuntimeConfigurationHandler handler, File directory) {
+        this(handler, directory, null);
+    }
+
+    /**
+     * @param handler
+     *            to resolve the properties when no usable snapshot exists
+     * @param directory
+     *            where snapshots are kept, created if it doesn't exist
+     * @param source
+     *            name of the source, e.g. its url, so its snapshot replaces the snapshot of its earlier content. Null
+     *            keeps a snapshot per content.
+     */
+    public SnapshotConfigurationHandler(RuntimeConfigurationHandler handler, File directory, String source) {
+        if (handler == null) throw new NullPointerException("handler required!");
+        if (directory == null) throw new NullPointerException("directory required!");
+        _handler = handler;
+        _directory = directory;
+        _source = source;
+    }
+
+    private static byte[] hash(String content) throws ConfigurationException {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static String read(Reader source) throws ConfigurationException {
+        try {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int read; (read = source.read(buffer)) != -1;) {
+                content.append(buffer, 0, read);
+            }
+            return content.toString();
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    /**
+     * @return directory snapshots are kept in
+     */
+    public File getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * @return host environment of the last load, as resolved when its snapshot was written; null if nothing has been
+     *         loaded
+     */
+    public String getEnvironment() {
+        return _environment;
+    }
+
+    /**
+     * @return <key, typed value> of the typed properties of the last load
+     */
+    Map<String, TypedValue> getTypedValues() {
+        return _typedValues;
+    }
+
+    /**
+     * @param hash
+     *            of the source content
+     * @return snapshot file of the source, or of the content if the source is unnamed
+     * @throws ConfigurationException
+     *             if the source name cannot be hashed
+     */
+    File getSnapshotFile(byte[] hash) throws ConfigurationException {
+        return new File(_directory, hex(_source == null ? hash : hash(_source)) + ".snapshot");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Loads the properties from a matching snapshot, or resolves them from the source and writes a new snapshot.
+     */
+    @Override
+    public void load(Reader source, Configuration config) throws ConfigurationException {
+        if (config == null) throw new NullPointerException();
+
+        String content = read(source);
+        byte[] hash = hash(content);
+        RuntimeXmlSchema xmlSchema = RuntimeXmlSchema.instance();
+        String schema = xmlSchema.getNamespace() + " " + xmlSchema.getPath();
+        if (_handler.isInterpolate()) schema += " interpolated";
+        File file = getSnapshotFile(hash);
+
+        RuntimeSnapshot snapshot = null;
+        try {
+            snapshot = RuntimeSnapshot.read(file);
+        } catch (IOException e) {
+            LOG.warn("failed to read snapshot '" + file + "'", e);
+        }
+
+        // the hosts must still resolve to the same environment, the machine or the matchers may have changed
+        if (snapshot != null && (!snapshot.matches(hash, schema) || !snapshot.getEnvironment().equals(
+                _handler.getHostEnvironment(snapshot.getHosts())))) snapshot = null;
+
+        if (snapshot == null) {
+            Map<String, String> properties = _handler.read(new StringReader(content));
+            snapshot = new RuntimeSnapshot(hash, schema, _handler.getHosts(), _handler.getEnvironment(), properties,
+                    _handler.getTypes());
+            try {
+                if (_directory.isDirectory() || _directory.mkdirs()) snapshot.write(file);
+            } catch (IOException e) {
+                // the snapshot is an optimization - the configuration is still usable
+                LOG.warn("failed to write snapshot '" + file + "'", e);
+            }
+        }
+
+        _environment = snapshot.getEnvironment();
+        _typedValues = TypedValue.parse(snapshot.getProperties(), snapshot.getTypes());
+        RuntimeConfigurationHandler.push(snapshot.getProperties(), _typedValues, config);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Snapshots are only read, saving is delegated to the runtime handler.
+     */
+    @Override
+    public void save(Configuration configuration, Writer destination) throws ConfigurationException {
+        _handler.save(configuration, destination);
+    }
+}
@@ -0,0 +1,94 @@
+package commons.configuration.ext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+/**
+ * A value declared with value[@type], kept with the text it was parsed from so it can still be read and saved as
+ * written in the source.
+ *
+ * @author Timothy Storm
+ */
+final class TypedValue {
+    private final ValueType _type;
+
+    private final Object _value;
+
+    private final String _text;
+
+    private TypedValue(ValueType type, Object value, String text) {
+        _type = type;
+        _value = value;
+        _text = text;
+    }
+
+    /**
+     * Parses the typed properties, every typed value is validated before any is returned
+     *
+     * @param properties
+     *            <key, value> of the properties
+     * @param types
+     *            <key, type> of the properties that declare a type
+     * @return <key, typed value> of the typed properties
+     * @throws ConfigurationException
+     *             if a typed value is invalid
+     */
+    static Map<String, TypedValue> parse(Map<String, String> properties, Map<String, ValueType> types)
+            throws ConfigurationException {
+        if (types.isEmpty()) return Collections.emptyMap();
+
+        Map<String, TypedValue> typed = new HashMap<>();
+        for (Entry<String, ValueType> entry : types.entrySet()) {
+            String text = properties.get(entry.getKey());
+            try {
+                typed.put(entry.getKey(), new TypedValue(entry.getValue(), entry.getValue().parse(text), text));
+            } catch (ConfigurationException e) {
+                throw new ConfigurationException("property[@key='" + entry.getKey() + "'] " + e.getMessage(), e);
+            }
+        }
+        return Collections.unmodifiableMap(typed);
+    }
+
+    /**
+     * @return <key, source text> of typed values
+     */
+    static Map<String, String> texts(Map<String, TypedValue> typed) {
+        Map<String, String> texts = new HashMap<>();
+        for (Entry<String, TypedValue> entry : typed.entrySet()) {
+            texts.put(entry.getKey(), entry.getValue().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * @return text the value was parsed from
+     */
+    String getText() {
+        return _text;
+    }
+
+    /**
+     * @return declared type
+     */
+    ValueType getType() {
+        return _type;
+    }
+
+    /**
+     * @return parsed value, as its wrapper type
+     */
+    Object getValue() {
+        return _value;
+    }
+
+    /**
+     * @return true if the value is still the one parsed from the text
+     */
+    boolean isValue(Object value) {
+        return _value.equals(value);
+    }
+}
@@ -0,0 +1,166 @@
+package commons.configuration.ext;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.PropertyConverter;
+
+/**
+ * Types a runtime xml value can declare with value[@type]. Typed values are parsed and validated once when the source
+ * is loaded and stored as their wrapper type, so the typed getters of a configuration never parse them again. The
+ * source text is kept and returned by getString.
+ * <ul>
+ * <li>int, long, double, boolean - as understood by {@link PropertyConverter}</li>
+ * <li>duration - a number with an optional unit of ms, s, m, h or d, stored as a Long of milliseconds</li>
+ * <li>bytes - a number with an optional unit of b, k(b), m(b), g(b) or t(b) (powers of 1024), stored as a Long of
+ * bytes</li>
+ * </ul>
+ *
+ * @author Timothy Storm
+ * @see RuntimeConfiguration#getDuration(String, TimeUnit)
+ * @see RuntimeConfiguration#getByteSize(String)
+ */
+public enum ValueType {
+    INT("int") {
+        @Override
+        Object convert(String value) {
+            return PropertyConverter.toInteger(value);
+        }
+    },
+    LONG("long") {
+        @Override
+        Object convert(String value) {
+            return PropertyConverter.toLong(value);
+        }
+    },
+    DOUBLE("double") {
+        @Override
+        Object convert(String value) {
+            return PropertyConverter.toDouble(value);
+        }
+    },
+    BOOLEAN("boolean") {
+        @Override
+        Object convert(String value) {
+            return PropertyConverter.toBoolean(value);
+        }
+    },
+    DURATION("duration") {
+        @Override
+        Object convert(String value) {
+            String[] amount = split(value);
+            switch (amount[1]) {
+            case "":
+            case "ms":
+                return Long.valueOf(amount[0]);
+            case "s":
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(amount[0]));
+            case "m":
+                return TimeUnit.MINUTES.toMillis(Long.parseLong(amount[0]));
+            case "h":
+                return TimeUnit.HOURS.toMillis(Long.parseLong(amount[0]));
+            case "d":
+                return TimeUnit.DAYS.toMillis(Long.parseLong(amount[0]));
+            default:
+                throw new ConversionException("unknown duration unit '" + amount[1] + "'");
+            }
+        }
+    },
+    BYTES("bytes") {
+        @Override
+        Object convert(String value) {
+            String[] amount = split(value);
+            long bytes = Long.parseLong(amount[0]);
+            switch (amount[1]) {
+            case "":
+            case "b":
+                return bytes;
+            case "k":
+            case "kb":
+                return scale(bytes, 10);
+            case "m":
+            case "mb":
+                return scale(bytes, 20);
+            case "g":
+            case "gb":
+                return scale(bytes, 30);
+            case "t":
+            case "tb":
+                return scale(bytes, 40);
+            default:
+                throw new ConversionException("unknown byte size unit '" + amount[1] + "'");
+            }
+        }
+    };
+
+    private final String _name;
+
+    private ValueType(String name) {
+        _name = name;
+    }
+
+    /**
+     * @param name
+     *            of the type as declared by value[@type]
+     * @return the type, null if the name is null
+     * @throws ConfigurationException
+     *             if the name is not a known type
+     */
+    public static ValueType forName(String name) throws ConfigurationException {
+        if (name == null) return null;
+        for (ValueType type : values()) {
+            if (type._name.equals(name)) return type;
+        }
+        throw new ConfigurationException("unknown value type '" + name + "'");
+    }
+
+    private static long scale(long value, int shift) {
+        if (Long.numberOfLeadingZeros(Math.abs(value)) <= shift) throw new ConversionException("byte size overflow");
+        return value << shift;
+    }
+
+    /**
+     * Splits a value into its lower case number and unit
+     */
+    private static String[] split(String value) {
+        String amount = value.trim().toLowerCase(Locale.ENGLISH);
+        int unit = 0;
+        if (unit < amount.length() && amount.charAt(unit) == '-') unit++;
+        while (unit < amount.length() && Character.isDigit(amount.charAt(unit))) {
+            unit++;
+        }
+        return new String[] { amount.substring(0, unit), amount.substring(unit).trim() };
+    }
+
+    /**
+     * @throws ConversionException
+     *             or NumberFormatException if the value is not of this type
+     */
+    abstract Object convert(String value);
+
+    /**
+     * @return name of the type as declared by value[@type]
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Parses a value of this type
+     *
+     * @param value
+     *            to parse
+     * @return the value as its wrapper type
+     * @throws ConfigurationException
+     *             if the value is not of this type
+     */
+    public Object parse(String value) throws ConfigurationException {
+        try {
+            return convert(value);
+        } catch (ConversionException | NumberFormatException e) {
+            throw new ConfigurationException("'" + value + "' is not a valid " + _name, e);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package commons.configuration.ext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import commons.configuration.ext.matcher.HostMatcher;
+
+/**
+ * Handles runtime configurations written as yaml. The model is that of runtime xml; the source is parsed line by line
+ * in a single streaming pass without schema validation, the host environment is resolved as soon as the context has
+ * been read and only the global (*) and host environment values are kept.
+ *
+ * <pre>
+ * context:
+ *   local:
+ *     - localhost
+ *     - 127.0.0.1
+ *   prod: prod.example.com
+ * properties:
+ *   name: app
+ *   url:
+ *     local: http://localhost
+ *     prod: https://example.com
+ *   port:
+ *     "*": { value: 8080, type: int }
+ * </pre>
+ *
+ * The subset of yaml needed by the model is understood: block mappings and lists, flow mappings and lists of scalars,
+ * plain, single and double quoted scalars and comments. Anchors, aliases, tags and block scalars are not, so the
+ * global environment must be quoted, "*". A property mapped directly to a value is global (*), ~ and null are read as
+ * an empty value. The context must precede the properties.
+ *
+ * @author Timothy Storm
+ * @see RuntimeFormat#YAML
+ */
+public class YamlConfigurationHandler extends RuntimeConfigurationHandler {
+    public YamlConfigurationHandler() {
+        super();
+    }
+
+    public YamlConfigurationHandler(Collection<HostMatcher> hostMatchers) {
+        super(hostMatchers);
+    }
+
+    /**
+     * Writes a double quoted yaml scalar
+     */
+    private static void quote(Writer out, String text) throws IOException {
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20 || c == 0x7f) {
+                out.write(text, from, i - from);
+                if (c == '"' || c == '\\') out.write(new char[] { '\\', c });
+                else if (c == '\n') out.write("\\n");
+                else if (c == '\r') out.write("\\r");
+                else if (c == '\t') out.write("\\t");
+                else out.write(String.format("\\x%02x", (int) c));
+                from = i + 1;
+            }
+        }
+        out.write(text, from, text.length() - from);
+        out.write('"');
+    }
+
+    /**
+     * {@inheritDoc}
+     * Parses yaml in a single pass, reporting it as runtime xml elements.
+     */
+    @Override
+    protected void parse(Reader source) throws SAXException, IOException {
+        new Parser(source, this).parse();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Saves a zero level yaml configuration template, properties are streamed to the destination as the keys are
+     * iterated.
+     */
+    @Override
+    public synchronized void save(Configuration config, Writer destination) throws ConfigurationException {
+        if (config == null) throw new NullPointerException();
+
+        try {
+            destination.write("context:\n  \"0\":\n    - localhost\nproperties:\n");
+            for (Iterator<String> keys = config.getKeys(); keys.hasNext();) {
+                String key = keys.next();
+                Object value = config.getProperty(key);
+
+                if (value != null) {
+                    destination.write("  ");
+                    quote(destination, key);
+                    destination.write(":\n    \"0\": ");
+                    quote(destination, StringUtils.replace(String.valueOf(value), ",", "\\,"));
+                    destination.write('\n');
+                }
+            }
+            destination.flush();
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    /**
+     * Line based parser of the yaml subset reporting to a {@link RuntimeTreeHandler}. Block collections are tracked on
+     * a stack of indentations; a key without an inline value opens a block that is a list or mapping by its first line.
+     */
+    private static class Parser implements Locator {
+        /** an open block collection */
+        private static class Block {
+            final int indent;
+
+            final boolean list;
+
+            Block(int indent, boolean list) {
+                this.indent = indent;
+                this.list = list;
+            }
+        }
+
+        private final BufferedReader _source;
+
+        private final RuntimeTreeHandler _tree;
+
+        private final Deque<Block> _blocks = new ArrayDeque<>();
+
+        private final StringBuilder _text = new StringBuilder();
+
+        /** current line and position */
+        private String _line;
+
+        private int _lineNumber, _index;
+
+        /** true when the last key had no inline value */
+        private boolean _pending;
+
+        Parser(Reader source, RuntimeConfigurationHandler handler) {
+            _source = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+            _tree = new RuntimeTreeHandler(handler, this);
+        }
+
+        /**
+         * @return true if the rest of the line is white space or a comment
+         */
+        private boolean atEnd() {
+            skipSpaces();
+            return _index == _line.length() || _line.charAt(_index) == '#';
+        }
+
+        private char charAt(int index) {
+            return index < _line.length() ? _line.charAt(index) : '\n';
+        }
+
+        private SAXParseException error(String message) {
+            return new SAXParseException(message, this);
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return _index + 1;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return _lineNumber;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        void parse() throws SAXException, IOException {
+            _tree.startDocument();
+            _tree.startObject();
+            _blocks.push(new Block(0, false));
+
+            while ((_line = _source.readLine()) != null) {
+                _lineNumber++;
+                _index = 0;
+                if (_lineNumber == 1 && _line.startsWith("\uFEFF")) _index++;
+
+                int start = _index;
+                while (_index < _line.length() && _line.charAt(_index) == ' ') {
+                    _index++;
+                }
+                if (atEnd()) continue;
+                if (charAt(_index) == '\t') throw error("tabs can not indent");
+                if (_index == start && (_line.startsWith("---", start) || _line.startsWith("...", start))) {
+                    if (_lineNumber > 1 && _line.startsWith("...", start)) break;
+                    continue;
+                }
+
+                line(_index - start);
+            }
+            _index = 0;
+
+            if (_pending) _tree.scalar(null);
+            while (!_blocks.isEmpty()) {
+                _blocks.pop();
+                _tree.end();
+            }
+            _tree.endDocument();
+        }
+
+        /**
+         * Reads a flow list or mapping of scalars
+         */
+        private void flow() throws SAXException {
+            char close = _line.charAt(_index++) == '[' ? ']' : '}';
+            if (close == ']') _tree.startArray();
+            else _tree.startObject();
+
+            skipSpaces();
+            if (charAt(_index) == close) _index++;
+            else for (;;) {
+                skipSpaces();
+                if (close == '}') {
+                    _tree.key(scalar(true, true));
+                    if (charAt(_index) != ':') throw error("expected ':'");
+                    _index++;
+                    skipSpaces();
+                }
+                if (charAt(_index) == '[' || charAt(_index) == '{') {
+                    throw error("nested flow collections are not supported");
+                }
+                _tree.scalar(scalar(false, true));
+
+                skipSpaces();
+                char c = charAt(_index++);
+                if (c == close) break;
+                if (c != ',') throw error("expected ',' or '" + close + "'");
+            }
+            _tree.end();
+        }
+
+        /**
+         * Reads a line of content
+         *
+         * @param indent
+         *            of the line
+         */
+        private void line(int indent) throws SAXException {
+            boolean item = charAt(_index) == '-' && (charAt(_index + 1) == ' ' || charAt(_index + 1) == '\n');
+
+            // the first line after a key without an inline value opens its block
+            if (_pending) {
+                _pending = false;
+                Block parent = _blocks.peek();
+                if (indent > parent.indent || (item && indent == parent.indent && !parent.list)) {
+                    if (item) _tree.startArray();
+                    else _tree.startObject();
+                    _blocks.push(new Block(indent, item));
+                } else _tree.scalar(null);
+            }
+
+            // close the blocks the line is outdented from, a list at the indentation of its key closes with a key
+            while (indent < _blocks.peek().indent
+                    || (indent == _blocks.peek().indent && _blocks.peek().list && !item && _blocks.size() > 1)) {
+                _blocks.pop();
+                _tree.end();
+            }
+            Block block = _blocks.peek();
+            if (indent != block.indent) throw error("bad indentation");
+            if (item != block.list) throw error(item ? "unexpected list item" : "expected a list item");
+
+            if (item) {
+                _index++;
+                if (atEnd()) throw error("empty list item");
+                value();
+                return;
+            }
+
+            _tree.key(scalar(true, false));
+            if (charAt(_index) != ':') throw error("expected ':'");
+            _index++;
+            if (atEnd()) _pending = true;
+            else value();
+        }
+
+        /**
+         * Reads a plain or quoted scalar
+         *
+         * @param key
+         *            true if the scalar is a key
+         * @param flow
+         *            true if the scalar is in a flow collection
+         * @return the scalar, null for a plain ~ or null
+         */
+        private String scalar(boolean key, boolean flow) throws SAXException {
+            char c = charAt(_index);
+            if (c == '"' || c == '\'') return quoted(c);
+            if (c == '|' || c == '>') throw error("block scalars are not supported");
+            if (c == '&' || c == '*' || c == '!') throw error("anchors, aliases and tags are not supported, quote '" + c
+                    + "'");
+
+            int start = _index;
+            for (; _index < _line.length(); _index++) {
+                c = _line.charAt(_index);
+                char next = charAt(_index + 1);
+                if (c == '#' && _index > start && _line.charAt(_index - 1) == ' ') break;
+                boolean separator = next == ' ' || next == '\n' || (flow && (next == ',' || next == '}'));
+                if (c == ':' && (key || flow) && separator) break;
+                if (flow && (c == ',' || c == ']' || c == '}')) break;
+            }
+            String scalar = _line.substring(start, _index).trim();
+            if (!key && ("~".equals(scalar) || "null".equals(scalar))) return null;
+            if (key && scalar.isEmpty()) throw error("key required");
+            return scalar;
+        }
+
+        /**
+         * Reads a single or double quoted scalar
+         */
+        private String quoted(char quote) throws SAXException {
+            _text.setLength(0);
+            for (_index++;; _index++) {
+                if (_index >= _line.length()) throw error("unterminated string");
+                char c = _line.charAt(_index);
+                if (c == quote) {
+                    // single quotes are escaped by doubling them
+                    if (quote == '\'' && charAt(_index + 1) == '\'') {
+                        _text.append(quote);
+                        _index++;
+                        continue;
+                    }
+                    _index++;
+                    return _text.toString();
+                }
+                if (c != '\\' || quote == '\'') {
+                    _text.append(c);
+                    continue;
+                }
+
+                c = charAt(++_index);
+                switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    _text.append(c);
+                    break;
+                case '0':
+                    _text.append('\0');
+                    break;
+                case 'n':
+                    _text.append('\n');
+                    break;
+                case 'r':
+                    _text.append('\r');
+                    break;
+                case 't':
+                    _text.append('\t');
+                    break;
+                case 'x':
+                    _text.append(unicode(2));
+                    break;
+                case 'u':
+                    _text.append(unicode(4));
+                    break;
+                default:
+                    throw error("invalid escape '\\" + c + "'");
+                }
+            }
+        }
+
+        private void skipSpaces() {
+            while (_index < _line.length() && _line.charAt(_index) == ' ') {
+                _index++;
+            }
+        }
+
+        private char unicode(int digits) throws SAXException {
+            int code = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = Character.digit(charAt(++_index), 16);
+                if (digit < 0) throw error("invalid unicode escape");
+                code = code * 16 + digit;
+            }
+            return (char) code;
+        }
+
+        /**
+         * Reads an inline value, the rest of the line
+         */
+        private void value() throws SAXException {
+            skipSpaces();
+            if (charAt(_index) == '[' || charAt(_index) == '{') flow();
+            else _tree.scalar(scalar(false, false));
+            if (!atEnd()) throw error("unexpected '" + charAt(_index) + "'");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package commons.configuration.ext.matcher;
+
+import java.net.InetAddress;
+import java.util.Collection;
+
+/**
+ * A {@link HostMatcher} for address ranges; hosts in CIDR notation (10.20.0.0/16, fd00::/8) or address ranges
+ * (10.0.0.1-10.0.0.50). A {@link HostIndex} compiles all configured ranges into a radix trie and looks up the
+ * addresses of the matcher in it.
+ * 
+ * @author Timothy Storm
+ */
+public interface AddressHostMatcher extends HostMatcher {
+    /**
+     * @return addresses to look up in the configured ranges, never null
+     */
+    Collection<InetAddress> addresses();
+}
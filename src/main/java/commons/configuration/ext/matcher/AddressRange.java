@@ -0,0 +1,151 @@
+package commons.configuration.ext.matcher;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A range of IPv4 or IPv6 addresses, expressed as the CIDR prefixes that cover it exactly.
+ * <ul>
+ * <li>CIDR: 10.20.0.0/16, fd00::/8</li>
+ * <li>range: 10.0.0.1-10.0.0.50, fd00::1-fd00::ff</li>
+ * </ul>
+ * 
+ * @author Timothy Storm
+ */
+class AddressRange {
+    /**
+     * An address prefix; the first <code>length</code> bits of <code>address</code>
+     */
+    static class Prefix {
+        final byte[] _address;
+        final int _length;
+
+        Prefix(byte[] address, int length) {
+            _address = address;
+            _length = length;
+        }
+    }
+
+    private final List<Prefix> _prefixes;
+
+    private AddressRange(List<Prefix> prefixes) {
+        _prefixes = Collections.unmodifiableList(prefixes);
+    }
+
+    /**
+     * @return the address of an IP literal, null if the text is not an IP literal. Never looks up host names.
+     */
+    static InetAddress literal(String text) {
+        if (text == null || text.isEmpty()) return null;
+
+        boolean ipv6 = text.indexOf(':') >= 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9' || c == '.') continue;
+            if (ipv6 && (c == ':' || c == '%' || Character.digit(c, 16) >= 0)) continue;
+            return null;
+        }
+
+        try {
+            return InetAddress.getByName(text);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param host
+     *            configured host
+     * @return the range of a CIDR or address range host, null if the host is neither
+     */
+    static AddressRange parse(String host) {
+        if (host == null) return null;
+        host = host.trim();
+
+        int slash = host.indexOf('/');
+        if (slash > 0 && slash == host.lastIndexOf('/')) {
+            InetAddress address = literal(host.substring(0, slash));
+            if (address == null) return null;
+
+            int length;
+            try {
+                length = Integer.parseInt(host.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            byte[] bytes = address.getAddress();
+            if (length < 0 || length > bytes.length * 8) return null;
+            return new AddressRange(Collections.singletonList(new Prefix(mask(bytes, length), length)));
+        }
+
+        int dash = host.indexOf('-');
+        if (dash > 0 && dash == host.lastIndexOf('-')) {
+            InetAddress start = literal(host.substring(0, dash).trim()), end = literal(host.substring(dash + 1).trim());
+            if (start == null || end == null) return null;
+            if (start.getAddress().length != end.getAddress().length) return null;
+            return range(start.getAddress(), end.getAddress());
+        }
+        return null;
+    }
+
+    private static byte[] mask(byte[] address, int length) {
+        byte[] masked = address.clone();
+        for (int bit = length; bit < masked.length * 8; bit++) {
+            masked[bit / 8] &= ~(0x80 >>> (bit % 8));
+        }
+        return masked;
+    }
+
+    /**
+     * Splits an address range into the fewest prefixes that cover it exactly
+     */
+    private static AddressRange range(byte[] first, byte[] last) {
+        int bits = first.length * 8;
+        BigInteger start = new BigInteger(1, first), end = new BigInteger(1, last);
+        if (start.compareTo(end) > 0) return null;
+
+        List<Prefix> prefixes = new ArrayList<>();
+        while (start.compareTo(end) <= 0) {
+            // largest aligned block starting at start that does not pass end
+            int size = start.signum() == 0 ? bits : Math.min(start.getLowestSetBit(), bits);
+            while (start.add(BigInteger.ONE.shiftLeft(size)).subtract(BigInteger.ONE).compareTo(end) > 0) {
+                size--;
+            }
+            prefixes.add(new Prefix(bytes(start, first.length), bits - size));
+            start = start.add(BigInteger.ONE.shiftLeft(size));
+        }
+        return new AddressRange(prefixes);
+    }
+
+    private static byte[] bytes(BigInteger value, int length) {
+        byte[] raw = value.toByteArray(), bytes = new byte[length];
+        int copy = Math.min(raw.length, length);
+        System.arraycopy(raw, raw.length - copy, bytes, length - copy, copy);
+        return bytes;
+    }
+
+    /**
+     * @param address
+     *            to test
+     * @return true if the address is in this range
+     */
+    boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        for (Prefix prefix : _prefixes) {
+            if (prefix._address.length != bytes.length) continue;
+            if (AddressTrie.matches(prefix._address, bytes, prefix._length)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return prefixes that exactly cover this range
+     */
+    List<Prefix> prefixes() {
+        return _prefixes;
+    }
+}
@@ -0,0 +1,82 @@
+package commons.configuration.ext.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary radix trie of address prefixes; IPv4 and IPv6 are kept apart. A lookup walks at most one node per address
+ * bit, no matter how many prefixes are stored.
+ * 
+ * @author Timothy Storm
+ * @param <V>
+ *            value stored with each prefix
+ */
+class AddressTrie<V> {
+    private static class Node<V> {
+        Node<V> _zero, _one;
+        List<V> _values;
+    }
+
+    private final Node<V> _ipv4 = new Node<>(), _ipv6 = new Node<>();
+
+    private int _size;
+
+    private static boolean bit(byte[] address, int bit) {
+        return (address[bit / 8] & (0x80 >>> (bit % 8))) != 0;
+    }
+
+    /**
+     * @return true if the first <code>length</code> bits of the prefix and the address are equal
+     */
+    static boolean matches(byte[] prefix, byte[] address, int length) {
+        for (int bit = 0; bit < length; bit++) {
+            if (bit(prefix, bit) != bit(address, bit)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores a value under an address prefix
+     * 
+     * @param prefix
+     *            address, only the first <code>length</code> bits are significant
+     * @param length
+     *            of the prefix in bits
+     * @param value
+     *            to store
+     */
+    void add(byte[] prefix, int length, V value) {
+        Node<V> node = root(prefix);
+        for (int bit = 0; bit < length; bit++) {
+            if (bit(prefix, bit)) node = node._one == null ? (node._one = new Node<>()) : node._one;
+            else node = node._zero == null ? (node._zero = new Node<>()) : node._zero;
+        }
+        if (node._values == null) node._values = new ArrayList<>(1);
+        node._values.add(value);
+        _size++;
+    }
+
+    /**
+     * @param address
+     *            to look up
+     * @return values of every prefix that contains the address, shortest prefix first
+     */
+    List<V> find(byte[] address) {
+        List<V> found = new ArrayList<>();
+        Node<V> node = root(address);
+        for (int bit = 0; node != null; bit++) {
+            if (node._values != null) found.addAll(node._values);
+            if (bit == address.length * 8) break;
+            node = bit(address, bit) ? node._one : node._zero;
+        }
+        return found;
+    }
+
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    private Node<V> root(byte[] address) {
+        return address.length == 4 ? _ipv4 : _ipv6;
+    }
+}
@@ -0,0 +1,80 @@
+package commons.configuration.ext.matcher;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Matches hosts given as address ranges that contain an address of the runtime environment. Ranges are written in CIDR
+ * notation or as an inclusive start-end range of IPv4 or IPv6 addresses:
+ * </p>
+ * <ul>
+ * <li>10.20.0.0/16</li>
+ * <li>fd00:1234::/32</li>
+ * <li>10.0.0.1-10.0.0.50</li>
+ * </ul>
+ * <p>
+ * When used by a {@link HostIndex} all configured ranges are compiled into one binary radix trie, so resolving the host
+ * environment costs O(address bits) per local address regardless of how many ranges are configured. The default
+ * instance matches the addresses of the network interfaces known to {@link InterfaceHostMatcher}.
+ * </p>
+ * 
+ * @author Timothy Storm
+ */
+public class CidrHostMatcher implements AddressHostMatcher {
+    private static volatile HostMatcher SINGLETON;
+
+    public static HostMatcher instance() {
+        if (SINGLETON == null) {
+            synchronized (CidrHostMatcher.class) {
+                if (SINGLETON == null) SINGLETON = new CidrHostMatcher(null) {
+                    @Override
+                    protected Object clone() throws CloneNotSupportedException {
+                        throw new CloneNotSupportedException();
+                    }
+                };
+            }
+        }
+        return SINGLETON;
+    }
+
+    /** fixed addresses to match, null to match the network interfaces */
+    private final Collection<InetAddress> _addresses;
+
+    /** <host, range> so ranges are parsed only once */
+    private final ConcurrentMap<String, AddressRange> _ranges = new ConcurrentHashMap<>();
+
+    /**
+     * @param addresses
+     *            to match the configured ranges against, null for the addresses of the network interfaces
+     */
+    public CidrHostMatcher(Collection<InetAddress> addresses) {
+        _addresses = addresses == null ? null : Collections.unmodifiableList(new ArrayList<>(addresses));
+    }
+
+    @Override
+    public Collection<InetAddress> addresses() {
+        if (_addresses != null) return _addresses;
+        return ((InterfaceHostMatcher) InterfaceHostMatcher.instance()).getAddresses();
+    }
+
+    @Override
+    public boolean matches(String host) {
+        if (host == null || host.isEmpty()) return false;
+
+        AddressRange range = _ranges.get(host);
+        if (range == null) {
+            if ((range = AddressRange.parse(host)) == null) return false;
+            _ranges.putIfAbsent(host, range);
+        }
+
+        for (InetAddress address : addresses()) {
+            if (range.contains(address)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,225 @@
+package commons.configuration.ext.matcher;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Compiled index of the configured hosts of each environment. Literal host names and addresses are kept in a hash table
+ * and <code>/regex/</code> hosts are compiled once, so resolving the host environment costs a lookup per identity of
+ * an {@link IdentityHostMatcher} plus one match per pattern of a {@link PatternHostMatcher}. CIDR and address range
+ * hosts go into a radix trie that an {@link AddressHostMatcher} searches in O(address bits) per address. Any other
+ * {@link HostMatcher} is asked about every configured host, as before.
+ * </p>
+ * <p>
+ * Resolution is deterministic:
+ * </p>
+ * <ol>
+ * <li>matchers are consulted in order and the first matcher with a matching host decides the environment; a
+ * {@link CompoundHostMatcher} is consulted as its matchers in order</li>
+ * <li>when several hosts match the same matcher, the host declared first wins</li>
+ * <li>a host declared in several environments belongs to the environment that declared it first</li>
+ * </ol>
+ * 
+ * @author Timothy Storm
+ */
+public class HostIndex {
+    /** enclosing character of host patterns */
+    private static final String PATTERN_DELIMITER = "/";
+
+    /** <lower case host, declaration> of the literal hosts, first declaration wins */
+    private final Map<String, Declaration> _literals = new HashMap<>();
+
+    /** address ranges, a range covering several prefixes is stored under each */
+    private final AddressTrie<Declaration> _ranges = new AddressTrie<>();
+
+    /** host patterns in declaration order */
+    private final List<Declaration> _patterns = new ArrayList<>();
+
+    /** every host in declaration order */
+    private final List<Declaration> _declarations = new ArrayList<>();
+
+    private final Set<String> _environments = new LinkedHashSet<>();
+
+    /** hosts tried by the last resolution */
+    private int _tried;
+
+    /**
+     * A configured host and the environment that declared it
+     */
+    private static class Declaration {
+        final int _order;
+        final String _environment, _host;
+        final Pattern _pattern;
+
+        Declaration(int order, String environment, String host, Pattern pattern) {
+            _order = order;
+            _environment = environment;
+            _host = host;
+            _pattern = pattern;
+        }
+    }
+
+    /**
+     * @param host
+     *            configured host
+     * @return the compiled pattern of a <code>/regex/</code> host, null if the host is not a pattern
+     */
+    public static Pattern compile(String host) {
+        if (host == null || host.length() < 2) return null;
+        if (!host.startsWith(PATTERN_DELIMITER) || !host.endsWith(PATTERN_DELIMITER)) return null;
+        return Pattern.compile(host.substring(1, host.length() - 1));
+    }
+
+    /**
+     * Adds a configured host
+     * 
+     * @param environment
+     *            that declares the host
+     * @param host
+     *            literal host or <code>/regex/</code> pattern
+     * @return this index
+     */
+    public HostIndex add(String environment, String host) {
+        _environments.add(environment);
+        if (host == null) return this;
+
+        Declaration declaration = new Declaration(_declarations.size(), environment, host, compile(host));
+        _declarations.add(declaration);
+        AddressRange range;
+        if (declaration._pattern != null) _patterns.add(declaration);
+        else if ((range = AddressRange.parse(host)) != null) {
+            for (AddressRange.Prefix prefix : range.prefixes()) {
+                _ranges.add(prefix._address, prefix._length, declaration);
+            }
+        } else {
+            String literal = host.toLowerCase(Locale.ENGLISH);
+            if (!_literals.containsKey(literal)) _literals.put(literal, declaration);
+        }
+        return this;
+    }
+
+    /**
+     * Declares an environment, environments without hosts can never be resolved but are still counted
+     * 
+     * @param environment
+     *            declared
+     * @return this index
+     */
+    public HostIndex addEnvironment(String environment) {
+        _environments.add(environment);
+        return this;
+    }
+
+    /**
+     * @return declared environments in declaration order
+     */
+    public Set<String> environments() {
+        return _environments;
+    }
+
+    /**
+     * Resolves the environment of the runtime host
+     * 
+     * @param matcher
+     *            to match the configured hosts with
+     * @return environment of the first matching host by the precedence of this index, null if no host matches
+     */
+    public String environment(HostMatcher matcher) {
+        _tried = 0;
+        Declaration match = resolve(matcher);
+        return match == null ? null : match._environment;
+    }
+
+    /**
+     * @return every configured host in declaration order
+     */
+    public List<String> hosts() {
+        List<String> hosts = new ArrayList<>(_declarations.size());
+        for (Declaration declaration : _declarations) {
+            hosts.add(declaration._host);
+        }
+        return hosts;
+    }
+
+    /**
+     * @return environment of each host of {@link #hosts()}, in declaration order
+     */
+    public List<String> hostEnvironments() {
+        List<String> environments = new ArrayList<>(_declarations.size());
+        for (Declaration declaration : _declarations) {
+            environments.add(declaration._environment);
+        }
+        return environments;
+    }
+
+    private Declaration resolve(HostMatcher matcher) {
+        if (matcher instanceof CompoundHostMatcher) {
+            for (HostMatcher child : ((CompoundHostMatcher) matcher).getHostMatchersInternal()) {
+                Declaration match = resolve(child);
+                if (match != null) return match;
+            }
+            return null;
+        }
+
+        if (matcher instanceof IdentityHostMatcher) {
+            Declaration first = null;
+            for (String identity : ((IdentityHostMatcher) matcher).identities()) {
+                if (identity == null) continue;
+                _tried++;
+                Declaration declaration = _literals.get(identity.toLowerCase(Locale.ENGLISH));
+                if (declaration != null && (first == null || declaration._order < first._order)) first = declaration;
+            }
+            return first;
+        }
+
+        if (matcher instanceof AddressHostMatcher) {
+            if (_ranges.isEmpty()) return null;
+
+            Declaration first = null;
+            for (InetAddress address : ((AddressHostMatcher) matcher).addresses()) {
+                _tried++;
+                for (Declaration declaration : _ranges.find(address.getAddress())) {
+                    if (first == null || declaration._order < first._order) first = declaration;
+                }
+            }
+            return first;
+        }
+
+        if (matcher instanceof PatternHostMatcher) {
+            for (Declaration declaration : _patterns) {
+                _tried++;
+                if (((PatternHostMatcher) matcher).matches(declaration._pattern)) return declaration;
+            }
+            return null;
+        }
+
+        // unknown matcher, ask about every host
+        for (Declaration declaration : _declarations) {
+            _tried++;
+            if (matcher.matches(declaration._host)) return declaration;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of configured hosts
+     */
+    public int size() {
+        return _declarations.size();
+    }
+
+    /**
+     * @return identities, patterns and hosts tried by the last {@link #environment(HostMatcher)}
+     */
+    public int tried() {
+        return _tried;
+    }
+}
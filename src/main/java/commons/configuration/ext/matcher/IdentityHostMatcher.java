@@ -0,0 +1,16 @@
+package commons.configuration.ext.matcher;
+
+import java.util.Collection;
+
+/**
+ * A {@link HostMatcher} that matches a fixed set of host identities, ignoring case. Knowing the identities up front
+ * lets a {@link HostIndex} resolve them with hash lookups instead of asking the matcher about every configured host.
+ * 
+ * @author Timothy Storm
+ */
+public interface IdentityHostMatcher extends HostMatcher {
+    /**
+     * @return host names and addresses this matcher matches, never null
+     */
+    Collection<String> identities();
+}
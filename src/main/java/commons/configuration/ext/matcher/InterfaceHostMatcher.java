@@ -0,0 +1,205 @@
+package commons.configuration.ext.matcher;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import commons.configuration.ext.util.MachineUtils;
+
+/**
+ * <p>
+ * Matches hosts that are any IPv4 or IPv6 address of any network interface of the runtime environment. Unlike
+ * {@link MachineHostMatcher}, which only knows the one address {@link MachineUtils} picked, this matches on
+ * multi-homed and dual stack machines. Only addresses are matched, no DNS is involved, so the match never depends on
+ * how fast names resolve; {@link InterfaceNameHostMatcher} matches the names of the addresses when asked for.
+ * </p>
+ * <p>
+ * The addresses are kept in an immutable set, so a match is a single hash lookup. The interfaces are checked for
+ * changes every {@value #DEFAULT_REFRESH_MILLIS}ms (system property {@value #REFRESH_PROPERTY}) and the set is rebuilt
+ * when they change. Loopback addresses are left to {@link LocalHostMatcher}.
+ * </p>
+ * 
+ * @author Timothy Storm
+ */
+public class InterfaceHostMatcher implements IdentityHostMatcher {
+    /** system property with the milliseconds between interface change checks */
+    public static final String REFRESH_PROPERTY = "commons.configuration.ext.interfaceRefresh";
+
+    public static final long DEFAULT_REFRESH_MILLIS = 60000;
+
+    private static final Log LOG = LogFactory.getLog(InterfaceHostMatcher.class);
+
+    private static volatile HostMatcher SINGLETON;
+
+    public static HostMatcher instance() {
+        if (SINGLETON == null) {
+            synchronized (InterfaceHostMatcher.class) {
+                if (SINGLETON == null) SINGLETON = new InterfaceHostMatcher(refreshMillis()) {
+                    @Override
+                    protected Object clone() throws CloneNotSupportedException {
+                        throw new CloneNotSupportedException();
+                    }
+                };
+            }
+        }
+        return SINGLETON;
+    }
+
+    /** addresses the identities were built from, only changed by the refresh thread after construction */
+    private volatile Set<InetAddress> _addresses;
+
+    /** lower case addresses */
+    private volatile Set<String> _identities;
+
+    /** run on the refresh thread after the addresses changed */
+    private final List<Runnable> _refreshListeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService _refresher;
+
+    InterfaceHostMatcher(long refreshMillis) {
+        _addresses = addresses();
+        _identities = identities(_addresses);
+
+        _refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "interface-host-matcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        _refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a listener on the refresh thread every time the addresses change
+     */
+    void addRefreshListener(Runnable listener) {
+        _refreshListeners.add(listener);
+    }
+
+    private static void add(Set<String> identities, String identity) {
+        if (identity != null && !identity.isEmpty()) identities.add(identity.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @return non loopback addresses of every network interface
+     */
+    static Set<InetAddress> addresses() {
+        Set<InetAddress> addresses = new LinkedHashSet<>();
+        try {
+            for (Enumeration<NetworkInterface> nets = NetworkInterface.getNetworkInterfaces(); nets != null
+                    && nets.hasMoreElements();) {
+                for (Enumeration<InetAddress> inets = nets.nextElement().getInetAddresses(); inets.hasMoreElements();) {
+                    InetAddress address = inets.nextElement();
+                    if (!address.isLoopbackAddress()) addresses.add(address);
+                }
+            }
+        } catch (SocketException e) {
+            LOG.warn("failed to list the network interfaces", e);
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    /**
+     * @param addresses
+     *            of the network interfaces
+     * @return immutable set of lower case address literals
+     */
+    static Set<String> identities(Set<InetAddress> addresses) {
+        Set<String> identities = new HashSet<>();
+        for (InetAddress address : addresses) {
+            String literal = address.getHostAddress();
+            add(identities, literal);
+
+            // IPv6 addresses carry the interface scope, fe80::1%eth0, match with and without
+            int scope = literal.indexOf('%');
+            if (scope > 0) add(identities, literal.substring(0, scope));
+        }
+        return Collections.unmodifiableSet(identities);
+    }
+
+    static long refreshMillis() {
+        try {
+            return Long.parseLong(System.getProperty(REFRESH_PROPERTY, String.valueOf(DEFAULT_REFRESH_MILLIS)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_REFRESH_MILLIS;
+        }
+    }
+
+    /**
+     * @return current non loopback addresses of the network interfaces
+     */
+    public Set<InetAddress> getAddresses() {
+        return _addresses;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Every address of the network interfaces, in lower case.
+     */
+    @Override
+    public Collection<String> identities() {
+        return _identities;
+    }
+
+    @Override
+    public boolean matches(String host) {
+        if (host == null || host.isEmpty()) return false;
+        return _identities.contains(host.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Rebuilds the identities if the interface addresses changed
+     */
+    void refresh() {
+        Set<InetAddress> addresses = addresses();
+        if (addresses.equals(_addresses)) return;
+
+        _addresses = addresses;
+        _identities = identities(addresses);
+        refreshed();
+    }
+
+    /**
+     * Notifies the refresh listeners, a failing listener doesn't stop the refreshes
+     */
+    void refreshed() {
+        for (Runnable listener : _refreshListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.warn("refresh listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops watching the network interfaces, the identities are kept
+     */
+    void stop() {
+        _refresher.shutdownNow();
+    }
+}
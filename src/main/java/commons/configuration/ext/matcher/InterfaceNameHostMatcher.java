@@ -0,0 +1,90 @@
+package commons.configuration.ext.matcher;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>
+ * Matches hosts that are a name of any address of any network interface of the runtime environment: the host names and
+ * FQDNs the addresses of {@link InterfaceHostMatcher} resolve to. Resolving the names blocks on DNS, so this matcher
+ * is not part of the default chain; add it where hosts are configured by the names of a multi-homed machine.
+ * </p>
+ *
+ * <pre>
+ * new RuntimeConfigurationHandler(Arrays.asList(MachineHostMatcher.instance(), InterfaceHostMatcher.instance(),
+ *         new InterfaceNameHostMatcher(), LocalHostMatcher.instance()));
+ * </pre>
+ * <p>
+ * The names are resolved when the matcher is created and again on the refresh thread of {@link InterfaceHostMatcher}
+ * when the interface addresses change. Matching only reads the last resolved names and never blocks on DNS.
+ * </p>
+ *
+ * @author Timothy Storm
+ */
+public class InterfaceNameHostMatcher implements IdentityHostMatcher {
+    private final InterfaceHostMatcher _interfaces;
+
+    /** addresses the names were resolved from, only accessed while resolving */
+    private Set<InetAddress> _addresses;
+
+    /** immutable lower case names */
+    private volatile Set<String> _names;
+
+    /**
+     * Matches the names of the addresses of {@link InterfaceHostMatcher#instance()}, may block on DNS
+     */
+    public InterfaceNameHostMatcher() {
+        this((InterfaceHostMatcher) InterfaceHostMatcher.instance());
+    }
+
+    InterfaceNameHostMatcher(InterfaceHostMatcher interfaces) {
+        _interfaces = interfaces;
+        _interfaces.addRefreshListener(new Runnable() {
+            @Override
+            public void run() {
+                resolve();
+            }
+        });
+        resolve();
+    }
+
+    private static void add(Set<String> names, String name) {
+        if (name != null && !name.isEmpty()) names.add(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Every name of the addresses of the network interfaces, in lower case.
+     */
+    @Override
+    public Collection<String> identities() {
+        return _names;
+    }
+
+    @Override
+    public boolean matches(String host) {
+        if (host == null || host.isEmpty()) return false;
+        return _names.contains(host.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Resolves the names of the current interface addresses, blocks on DNS. Runs when the matcher is created and on
+     * the refresh thread; the addresses are read under the lock so the last resolve publishes the latest names.
+     */
+    private synchronized void resolve() {
+        Set<InetAddress> addresses = _interfaces.getAddresses();
+        if (addresses == _addresses) return;
+
+        Set<String> names = new HashSet<>();
+        for (InetAddress address : addresses) {
+            add(names, address.getHostName());
+            add(names, address.getCanonicalHostName());
+        }
+        _names = Collections.unmodifiableSet(names);
+        _addresses = addresses;
+    }
+}
@@ -1,5 +1,9 @@
 package commons.configuration.ext.matcher;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * <p>
  * Matches hosts if they are assigned the localhost identity or alias: localhost, 127.0.0.1, ::1.
@@ -9,7 +13,9 @@ package commons.configuration.ext.matcher;
  * 
  * @author Timothy Storm
  */
-public class LocalHostMatcher implements HostMatcher {
+public class LocalHostMatcher implements IdentityHostMatcher {
+    private static final Collection<String> IDENTITIES = Collections.unmodifiableList(Arrays.asList("localhost",
+            "127.0.0.1", "::1"));
 
     private static volatile HostMatcher SINGLETON;
 
@@ -28,6 +34,11 @@ public class LocalHostMatcher implements HostMatcher {
 
     private LocalHostMatcher() {}
 
+    @Override
+    public Collection<String> identities() {
+        return IDENTITIES;
+    }
+
     @Override
     public boolean matches(final String host) {
         if (host == null || host.isEmpty()) return false;
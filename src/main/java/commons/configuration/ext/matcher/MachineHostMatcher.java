@@ -1,5 +1,9 @@
 package commons.configuration.ext.matcher;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
+import commons.configuration.ext.util.MachineIdentity;
 import commons.configuration.ext.util.MachineUtils;
 
 /**
@@ -8,7 +12,7 @@ import commons.configuration.ext.util.MachineUtils;
  * 
  * @author Timothy Storm
  */
-public class MachineHostMatcher implements HostMatcher {
+public class MachineHostMatcher implements IdentityHostMatcher {
     private static volatile HostMatcher SINGLETON;
 
     private MachineHostMatcher() {}
@@ -27,11 +31,25 @@ public class MachineHostMatcher implements HostMatcher {
         return SINGLETON;
     }
 
+    /**
+     * {@inheritDoc}
+     * The host name and address of this machine, if they can be determined.
+     */
+    @Override
+    public Collection<String> identities() {
+        MachineIdentity identity = MachineUtils.identity();
+        Collection<String> identities = new ArrayList<>(2);
+        if (identity.getHostName() != null) identities.add(identity.getHostName());
+        if (identity.getHostAddress() != null) identities.add(identity.getHostAddress());
+        return identities;
+    }
+
     @Override
     public boolean matches(String host) {
         if (host == null || host.isEmpty()) return false;
-        if (MachineUtils.hostName().equalsIgnoreCase(host)) return true;
-        if (MachineUtils.hostAddress().equalsIgnoreCase(host)) return true;
+        MachineIdentity identity = MachineUtils.identity();
+        if (host.equalsIgnoreCase(identity.getHostName())) return true;
+        if (host.equalsIgnoreCase(identity.getHostAddress())) return true;
         return false;
     }
 }
@@ -1,5 +1,7 @@
 package commons.configuration.ext.matcher;
 
+import java.util.regex.Pattern;
+
 import commons.configuration.ext.util.MachineUtils;
 
 /**
@@ -7,7 +9,7 @@ import commons.configuration.ext.util.MachineUtils;
  * 
  * @author Timothy Storm
  */
-public class MachinePatternHostMatcher implements HostMatcher {
+public class MachinePatternHostMatcher implements PatternHostMatcher {
     private static volatile HostMatcher SINGLETON;
 
     private MachinePatternHostMatcher() {}
@@ -41,14 +43,22 @@ public class MachinePatternHostMatcher implements HostMatcher {
      * </ul>
      * </li>
      * </ul>
+     * <p>
+     * The pattern is compiled on every call, a {@link HostIndex} compiles the patterns of a load once and matches them
+     * with {@link #matches(Pattern)}.
+     * </p>
      */
     @Override
     public boolean matches(String host) {
         if (host == null || host.isEmpty()) return false;
-        if (host.startsWith("/") && host.endsWith("/")) {
-            String pattern = host.substring(1, host.length() - 1);
-            return MachineUtils.hostName().matches(pattern);
-        }
-        return false;
+
+        Pattern pattern = HostIndex.compile(host);
+        return pattern != null && matches(pattern);
+    }
+
+    @Override
+    public boolean matches(Pattern pattern) {
+        String hostName = MachineUtils.hostName();
+        return hostName != null && pattern.matcher(hostName).matches();
     }
 }
@@ -0,0 +1,18 @@
+package commons.configuration.ext.matcher;
+
+import java.util.regex.Pattern;
+
+/**
+ * A {@link HostMatcher} for host patterns; hosts of the form <code>/regex/</code>. The patterns are compiled once by a
+ * {@link HostIndex} and handed to the matcher already compiled.
+ * 
+ * @author Timothy Storm
+ */
+public interface PatternHostMatcher extends HostMatcher {
+    /**
+     * @param pattern
+     *            compiled host pattern, without the enclosing '/'
+     * @return true if the pattern matches the criteria of this matcher
+     */
+    boolean matches(Pattern pattern);
+}
@@ -0,0 +1,123 @@
+package commons.configuration.ext.metrics;
+
+/**
+ * Per phase timings and counters of a single runtime configuration load.
+ * 
+ * @author Timothy Storm
+ * @see LoadMetricsListener
+ */
+public class LoadMetrics {
+    private final long _schemaNanos, _parseNanos, _resolveNanos, _pushNanos, _charactersRead;
+
+    private final int _propertiesParsed, _propertiesKept, _environmentsSeen, _hostsTried;
+
+    /**
+     * @param schemaNanos
+     *            time to obtain the compiled schema and a validating parser
+     * @param parseNanos
+     *            time spent parsing, excluding host environment resolution
+     * @param resolveNanos
+     *            time to resolve the host environment
+     * @param pushNanos
+     *            time to push the kept properties into the configuration
+     * @param charactersRead
+     *            characters read from the source
+     * @param propertiesParsed
+     *            properties in the source
+     * @param propertiesKept
+     *            properties kept for the host environment
+     * @param environmentsSeen
+     *            environments declared in the context
+     * @param hostsTried
+     *            identities, patterns and hosts tried while resolving the host environment
+     */
+    public LoadMetrics(long schemaNanos, long parseNanos, long resolveNanos, long pushNanos, long charactersRead,
+            int propertiesParsed, int propertiesKept, int environmentsSeen, int hostsTried) {
+        _schemaNanos = schemaNanos;
+        _parseNanos = parseNanos;
+        _resolveNanos = resolveNanos;
+        _pushNanos = pushNanos;
+        _charactersRead = charactersRead;
+        _propertiesParsed = propertiesParsed;
+        _propertiesKept = propertiesKept;
+        _environmentsSeen = environmentsSeen;
+        _hostsTried = hostsTried;
+    }
+
+    /**
+     * @return characters read from the source
+     */
+    public long getCharactersRead() {
+        return _charactersRead;
+    }
+
+    /**
+     * @return environments declared in the context
+     */
+    public int getEnvironmentsSeen() {
+        return _environmentsSeen;
+    }
+
+    /**
+     * @return identities, patterns and hosts tried while resolving the host environment
+     */
+    public int getHostsTried() {
+        return _hostsTried;
+    }
+
+    /**
+     * @return time spent parsing, excluding host environment resolution
+     */
+    public long getParseNanos() {
+        return _parseNanos;
+    }
+
+    /**
+     * @return properties kept for the host environment
+     */
+    public int getPropertiesKept() {
+        return _propertiesKept;
+    }
+
+    /**
+     * @return properties in the source
+     */
+    public int getPropertiesParsed() {
+        return _propertiesParsed;
+    }
+
+    /**
+     * @return time to push the kept properties into the configuration
+     */
+    public long getPushNanos() {
+        return _pushNanos;
+    }
+
+    /**
+     * @return time to resolve the host environment, this includes any DNS lookups of the host matchers
+     */
+    public long getResolveNanos() {
+        return _resolveNanos;
+    }
+
+    /**
+     * @return time to obtain the compiled schema and a validating parser, only significant on the first load
+     */
+    public long getSchemaNanos() {
+        return _schemaNanos;
+    }
+
+    /**
+     * @return total time of the load
+     */
+    public long getTotalNanos() {
+        return _schemaNanos + _parseNanos + _resolveNanos + _pushNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "schema=" + _schemaNanos + "ns, parse=" + _parseNanos + "ns, resolve=" + _resolveNanos + "ns, push="
+                + _pushNanos + "ns, characters=" + _charactersRead + ", parsed=" + _propertiesParsed + ", kept="
+                + _propertiesKept + ", environments=" + _environmentsSeen + ", hosts=" + _hostsTried;
+    }
+}
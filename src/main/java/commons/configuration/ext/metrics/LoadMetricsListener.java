@@ -0,0 +1,27 @@
+package commons.configuration.ext.metrics;
+
+/**
+ * Notified with the {@link LoadMetrics} of every runtime configuration load. Loads are only measured while a listener
+ * is registered.
+ * 
+ * <pre>
+ * RuntimeConfiguration config = new RuntimeConfiguration();
+ * config.addLoadMetricsListener(new LoadMetricsListener() {
+ *     public void loaded(LoadMetrics metrics) {
+ *         LOG.info(&quot;configuration loaded: &quot; + metrics);
+ *     }
+ * });
+ * config.load(&quot;/path/to/config.xml&quot;);
+ * </pre>
+ * 
+ * @author Timothy Storm
+ */
+public interface LoadMetricsListener {
+    /**
+     * Called on the loading thread once the properties have been pushed into the configuration
+     * 
+     * @param metrics
+     *            of the load
+     */
+    void loaded(LoadMetrics metrics);
+}
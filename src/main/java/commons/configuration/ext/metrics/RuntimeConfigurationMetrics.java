@@ -0,0 +1,166 @@
+package commons.configuration.ext.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import commons.configuration.ext.RuntimeConfiguration;
+
+/**
+ * Publishes the load metrics of a {@link RuntimeConfiguration} as an MBean on the platform MBean server under
+ * <code>commons.configuration.ext:type=RuntimeConfiguration,name=&lt;file name&gt;,id=&lt;identity&gt;</code>.
+ * Registration is opt-in so configurations that are not monitored pay nothing; register before loading to see the
+ * initial load.
+ * 
+ * <pre>
+ * RuntimeConfiguration config = new RuntimeConfiguration();
+ * RuntimeConfigurationMetrics metrics = RuntimeConfigurationMetrics.register(config);
+ * config.load(&quot;/path/to/config.xml&quot;);
+ * ...
+ * metrics.unregister();
+ * </pre>
+ * 
+ * @author Timothy Storm
+ */
+public class RuntimeConfigurationMetrics implements RuntimeConfigurationMetricsMBean, LoadMetricsListener {
+    public static final String DOMAIN = "commons.configuration.ext";
+
+    private static final LoadMetrics NONE = new LoadMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final RuntimeConfiguration _config;
+
+    private final ObjectName _name;
+
+    private volatile LoadMetrics _last = NONE;
+
+    private final AtomicLong _loadCount = new AtomicLong(), _totalLoadNanos = new AtomicLong();
+
+    RuntimeConfigurationMetrics(RuntimeConfiguration config, ObjectName name) {
+        _config = config;
+        _name = name;
+    }
+
+    /**
+     * @return name the metrics of the configuration are registered under
+     */
+    static ObjectName objectName(RuntimeConfiguration config) throws JMException {
+        StringBuilder name = new StringBuilder(DOMAIN).append(":type=RuntimeConfiguration");
+        if (config.getFileName() != null) name.append(",name=").append(ObjectName.quote(config.getFileName()));
+        name.append(",id=").append(Integer.toHexString(System.identityHashCode(config)));
+        return new ObjectName(name.toString());
+    }
+
+    /**
+     * Registers an MBean with the load metrics of the configuration
+     * 
+     * @param config
+     *            to monitor
+     * @return the registered metrics
+     * @throws JMException
+     *             if the MBean cannot be registered
+     */
+    public static RuntimeConfigurationMetrics register(RuntimeConfiguration config) throws JMException {
+        if (config == null) throw new NullPointerException("config required!");
+
+        RuntimeConfigurationMetrics metrics = new RuntimeConfigurationMetrics(config, objectName(config));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics._name);
+        config.addLoadMetricsListener(metrics);
+        return metrics;
+    }
+
+    /**
+     * @return metrics of the last load
+     */
+    public LoadMetrics getLastLoad() {
+        return _last;
+    }
+
+    @Override
+    public long getLastCharactersRead() {
+        return _last.getCharactersRead();
+    }
+
+    @Override
+    public int getLastEnvironmentsSeen() {
+        return _last.getEnvironmentsSeen();
+    }
+
+    @Override
+    public int getLastHostsTried() {
+        return _last.getHostsTried();
+    }
+
+    @Override
+    public long getLastParseNanos() {
+        return _last.getParseNanos();
+    }
+
+    @Override
+    public int getLastPropertiesKept() {
+        return _last.getPropertiesKept();
+    }
+
+    @Override
+    public int getLastPropertiesParsed() {
+        return _last.getPropertiesParsed();
+    }
+
+    @Override
+    public long getLastPushNanos() {
+        return _last.getPushNanos();
+    }
+
+    @Override
+    public long getLastResolveNanos() {
+        return _last.getResolveNanos();
+    }
+
+    @Override
+    public long getLastSchemaNanos() {
+        return _last.getSchemaNanos();
+    }
+
+    @Override
+    public long getLastTotalNanos() {
+        return _last.getTotalNanos();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return _loadCount.get();
+    }
+
+    /**
+     * @return name this MBean is registered under
+     */
+    public ObjectName getObjectName() {
+        return _name;
+    }
+
+    @Override
+    public long getTotalLoadNanos() {
+        return _totalLoadNanos.get();
+    }
+
+    @Override
+    public void loaded(LoadMetrics metrics) {
+        _last = metrics;
+        _loadCount.incrementAndGet();
+        _totalLoadNanos.addAndGet(metrics.getTotalNanos());
+    }
+
+    /**
+     * Stops monitoring the configuration and unregisters the MBean
+     * 
+     * @throws JMException
+     *             if the MBean cannot be unregistered
+     */
+    public void unregister() throws JMException {
+        _config.removeLoadMetricsListener(this);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(_name)) server.unregisterMBean(_name);
+    }
+}
@@ -0,0 +1,33 @@
+package commons.configuration.ext.metrics;
+
+/**
+ * JMX view of the loads of a runtime configuration. Timings are in nanoseconds.
+ * 
+ * @author Timothy Storm
+ * @see RuntimeConfigurationMetrics
+ */
+public interface RuntimeConfigurationMetricsMBean {
+    long getLastCharactersRead();
+
+    int getLastEnvironmentsSeen();
+
+    int getLastHostsTried();
+
+    long getLastParseNanos();
+
+    int getLastPropertiesKept();
+
+    int getLastPropertiesParsed();
+
+    long getLastPushNanos();
+
+    long getLastResolveNanos();
+
+    long getLastSchemaNanos();
+
+    long getLastTotalNanos();
+
+    long getLoadCount();
+
+    long getTotalLoadNanos();
+}
@@ -0,0 +1,254 @@
+package commons.configuration.ext.reloading;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.FileConfiguration;
+import org.apache.commons.configuration.reloading.ReloadingStrategy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import commons.configuration.ext.ConcurrentRuntimeConfiguration;
+
+/**
+ * <p>
+ * Reloads a file based configuration from a background thread when the file changes. Changes are detected by a
+ * {@link WatchService} on the file's directory, so unlike
+ * {@link org.apache.commons.configuration.reloading.FileChangedReloadingStrategy} no file system access happens while
+ * properties are read. Bursts of change events (editors often write a file several times) are debounced into a single
+ * reload, and a reload only happens if the file actually changed: its size or modification time differ, or when both
+ * are unchanged its content hash differs, so an edit that keeps the size within the modification time granularity is
+ * still seen.
+ * </p>
+ * <p>
+ * Use with a {@link ConcurrentRuntimeConfiguration} so the reloaded properties are published atomically; readers never
+ * see a half loaded configuration and never pay for change detection.
+ * </p>
+ *
+ * <pre>
+ * ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(&quot;/path/to/config.xml&quot;);
+ * config.setReloadingStrategy(new WatchServiceReloadingStrategy());
+ * </pre>
+ *
+ * @author Timothy Storm
+ */
+public class WatchServiceReloadingStrategy implements ReloadingStrategy {
+    /** default quiet period after the last change event before reloading */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    private static final Log LOG = LogFactory.getLog(WatchServiceReloadingStrategy.class);
+
+    private FileConfiguration _configuration;
+
+    private final long _debounceMillis;
+
+    /** file being watched, null if not watching; guarded by this */
+    private File _file;
+
+    /** size and modification time of the file at the last (re)load */
+    private volatile long _lastModified, _length;
+
+    /** content hash of the file at the last (re)load, null if it could not be read */
+    private volatile byte[] _digest;
+
+    /** set by the watcher right before it asks the configuration to reload */
+    private volatile boolean _reloadRequired;
+
+    private WatchService _watcher;
+
+    public WatchServiceReloadingStrategy() {
+        this(DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param debounceMillis
+     *            quiet period after the last change event before reloading
+     */
+    public WatchServiceReloadingStrategy(long debounceMillis) {
+        if (debounceMillis < 0) throw new IllegalArgumentException("debounce must not be negative!");
+        _debounceMillis = debounceMillis;
+    }
+
+    /**
+     * @return true if any of the key's events concern the file
+     */
+    private static boolean drain(WatchKey key, File file) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) relevant = true;
+            else if (file.getName().equals(String.valueOf(event.context()))) relevant = true;
+        }
+        key.reset();
+        return relevant;
+    }
+
+    /**
+     * @return true if the file changed since the last (re)load
+     */
+    private boolean changed() {
+        if (_file.lastModified() != _lastModified || _file.length() != _length) return true;
+
+        // same size within the modification time granularity, only the content can tell
+        byte[] digest = digest(_file);
+        return digest == null || !Arrays.equals(digest, _digest);
+    }
+
+    /**
+     * @return SHA-1 of the file content, null if it cannot be read
+     */
+    private static byte[] digest(File file) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            LOG.debug("failed to hash '" + file + "'", e);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return quiet period after the last change event before reloading
+     */
+    public long getDebounceMillis() {
+        return _debounceMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Starts watching the configuration file. Called again after every save, in which case only the file state is
+     * recorded.
+     */
+    @Override
+    public synchronized void init() {
+        if (_configuration == null) return;
+
+        File file = _configuration.getFile();
+        if (file == null) {
+            LOG.warn("configuration is not file based, changes cannot be watched: " + _configuration.getURL());
+            return;
+        }
+
+        file = file.getAbsoluteFile();
+        if (!file.equals(_file)) {
+            stop();
+            start(file);
+        }
+        record();
+    }
+
+    /**
+     * Records the state of the file, nothing once stopped
+     */
+    private synchronized void record() {
+        if (_file == null) return;
+        _lastModified = _file.lastModified();
+        _length = _file.length();
+        _digest = digest(_file);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only true when the background watcher has detected a change; never touches the file system.
+     */
+    @Override
+    public boolean reloadingRequired() {
+        return _reloadRequired;
+    }
+
+    @Override
+    public void reloadingPerformed() {
+        _reloadRequired = false;
+        record();
+    }
+
+    @Override
+    public void setConfiguration(FileConfiguration configuration) {
+        _configuration = configuration;
+    }
+
+    private void start(final File file) {
+        try {
+            Path directory = file.getParentFile().toPath();
+            final WatchService watcher = FileSystems.getDefault().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            _watcher = watcher;
+            _file = file;
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watch(watcher, file);
+                }
+            }, "configuration-watcher[" + file.getName() + "]");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            LOG.warn("failed to watch '" + file + "' for changes", e);
+        }
+    }
+
+    /**
+     * Stops watching the file. The strategy can be started again by {@link #init()}.
+     */
+    public synchronized void stop() {
+        if (_watcher == null) return;
+
+        try {
+            _watcher.close();
+        } catch (IOException e) {
+            LOG.debug("failed to close watcher", e);
+        }
+        _watcher = null;
+        _file = null;
+    }
+
+    /**
+     * Watcher loop, runs until the watch service is closed
+     */
+    private void watch(WatchService watcher, File file) {
+        try {
+            while (true) {
+                if (!drain(watcher.take(), file)) continue;
+
+                // debounce - wait for the events to go quiet
+                for (WatchKey key; (key = watcher.poll(_debounceMillis, TimeUnit.MILLISECONDS)) != null;) {
+                    drain(key, file);
+                }
+
+                synchronized (this) {
+                    if (_watcher != watcher) return; // stopped while debouncing
+                    if (!changed()) continue;
+                    _reloadRequired = true;
+                }
+
+                // reload outside of the strategy lock, the configuration takes its own lock
+                try {
+                    _configuration.reload();
+                } catch (RuntimeException e) {
+                    // keep watching, the next change is another chance to reload
+                    LOG.error("failed to reload '" + file + "'", e);
+                }
+
+                // a failed reload is reported by the configuration, retry on the next change not on the next read
+                _reloadRequired = false;
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.springframework.beans.factory.FactoryBean;
 
+import commons.configuration.ext.FlatCompositeConfiguration;
+
 /**
  * <p>
  * Factory that aids in the creation of a spring injected {@link Configuration}s
@@ -39,6 +41,12 @@ public class ConfigurationFactory implements FactoryBean<Configuration> {
      */
     private Collection<Configuration> _configs;
 
+    /** true = build a single {@link FlatCompositeConfiguration} */
+    private boolean _flatten;
+
+    /** the flattened configuration, built on first use */
+    private FlatCompositeConfiguration _flattened;
+
     public ConfigurationFactory() {}
 
     /**
@@ -63,6 +71,20 @@ public class ConfigurationFactory implements FactoryBean<Configuration> {
         Collection<Configuration> internalConfigs = getConfigurationsInternal();
         internalConfigs.clear();
         internalConfigs.addAll(configs);
+        _flattened = null;
+    }
+
+    /**
+     * Builds a single shared {@link FlatCompositeConfiguration} instead of a new {@link CompositeConfiguration} per
+     * request. Lookups are answered from a flattened index of the configurations, which is rebuilt when one of them
+     * signals a change. Default is false.
+     * 
+     * @param flatten
+     *            true = build a shared, flattened configuration
+     * @see FlatCompositeConfiguration
+     */
+    public void setFlatten(boolean flatten) {
+        _flatten = flatten;
     }
 
     protected Collection<Configuration> getConfigurationsInternal() {
@@ -73,10 +95,15 @@ public class ConfigurationFactory implements FactoryBean<Configuration> {
     /**
      * {@inheritDoc}
      * Builds a {@link CompositeConfiguration} that includes all of the provided {@link Configuration}s
+     * 
+     * @see #setFlatten(boolean)
      */
     @Override
-    public Configuration getObject() throws Exception {
-        return new CompositeConfiguration(getConfigurationsInternal());
+    public synchronized Configuration getObject() throws Exception {
+        if (!_flatten) return new CompositeConfiguration(getConfigurationsInternal());
+
+        if (_flattened == null) _flattened = new FlatCompositeConfiguration(getConfigurationsInternal());
+        return _flattened;
     }
 
     @Override
@@ -86,6 +113,6 @@ public class ConfigurationFactory implements FactoryBean<Configuration> {
 
     @Override
     public boolean isSingleton() {
-        return false;
+        return _flatten;
     }
 }
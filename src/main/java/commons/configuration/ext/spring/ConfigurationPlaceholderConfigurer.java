@@ -1,10 +1,18 @@
 package commons.configuration.ext.spring;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.configuration.Configuration;
 import org.springframework.beans.BeansException;
@@ -64,6 +72,119 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
     private boolean _ignoreUnresolvablePlaceholders = false;
     private String  _placeholderPrefix              = DEFAULT_PLACEHODER_PREFIX;
     private String  _placeholderSuffix              = DEFAULT_PLACEHODER_SUFFIX;
+    private boolean _parallel                       = false;
+
+    /** definitions a parallel task processes without splitting further */
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    /** marks placeholders that could not be resolved */
+    private static final String UNRESOLVED = new String("");
+
+    /** <placeholder, resolved value> during processConfiguration, null otherwise */
+    private volatile Map<String, String> _resolved;
+
+    /** <value, compiled value> each distinct value is parsed only once */
+    private final ConcurrentMap<String, PlaceholderTemplate> _templates = new ConcurrentHashMap<>();
+
+    /**
+     * @return the compiled template of the value
+     */
+    private PlaceholderTemplate compile(String value) {
+        PlaceholderTemplate template = _templates.get(value);
+        if (template == null) {
+            template = PlaceholderTemplate.compile(value, _placeholderPrefix, _placeholderSuffix);
+            PlaceholderTemplate existing = _templates.putIfAbsent(value, template);
+            if (existing != null) template = existing;
+        }
+        return template;
+    }
+
+    /**
+     * Processes a slice of the bean definitions, each definition is processed by exactly one task
+     */
+    private class DefinitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Configuration _config;
+        private final String[] _beanNames;
+        private final BeanDefinition[] _definitions;
+        private final BeanDefinitionStoreException[] _failures;
+        private final int _from, _to;
+
+        DefinitionTask(Configuration config, String[] beanNames, BeanDefinition[] definitions,
+                BeanDefinitionStoreException[] failures, int from, int to) {
+            _config = config;
+            _beanNames = beanNames;
+            _definitions = definitions;
+            _failures = failures;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > PARALLEL_THRESHOLD) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new DefinitionTask(_config, _beanNames, _definitions, _failures, _from, middle),
+                        new DefinitionTask(_config, _beanNames, _definitions, _failures, middle, _to));
+                return;
+            }
+
+            for (int i = _from; i < _to; i++) {
+                try {
+                    parseDefinition(_config, _definitions[i]);
+                } catch (BeanDefinitionStoreException ex) {
+                    _failures[i] = new BeanDefinitionStoreException(_definitions[i].getResourceDescription(),
+                            _beanNames[i], ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if any value of the definition contains the placeholder prefix
+     */
+    private boolean hasPlaceholders(BeanDefinition definition) {
+        MutablePropertyValues mpv = definition.getPropertyValues();
+        if (mpv != null) {
+            for (PropertyValue pv : mpv.getPropertyValues()) {
+                if (hasPlaceholders(pv.getValue())) return true;
+            }
+        }
+
+        ConstructorArgumentValues cav = definition.getConstructorArgumentValues();
+        if (cav != null) {
+            for (ConstructorArgumentValues.ValueHolder holder : cav.getIndexedArgumentValues().values()) {
+                if (hasPlaceholders(holder.getValue())) return true;
+            }
+            for (ConstructorArgumentValues.ValueHolder holder : cav.getGenericArgumentValues()) {
+                if (hasPlaceholders(holder.getValue())) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value, or any value it contains, contains the placeholder prefix
+     */
+    private boolean hasPlaceholders(Object value) {
+        if (value instanceof String) return ((String) value).contains(_placeholderPrefix);
+        if (value instanceof TypedStringValue) return hasPlaceholders(((TypedStringValue) value).getValue());
+        if (value instanceof RuntimeBeanReference) return hasPlaceholders(((RuntimeBeanReference) value).getBeanName());
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (hasPlaceholders(element)) return true;
+            }
+        } else if (value instanceof Map) {
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (hasPlaceholders(entry.getKey()) || hasPlaceholders(entry.getValue())) return true;
+            }
+        } else if (value instanceof BeanDefinition) return hasPlaceholders((BeanDefinition) value);
+        else if (value instanceof BeanDefinitionHolder) {
+            return hasPlaceholders(((BeanDefinitionHolder) value).getBeanDefinition());
+        }
+        return false;
+    }
 
     private boolean nullSafeEquals(Object o1, Object o2) {
         return (o1 == o2 || (o1 != null && o1.equals(o2)));
@@ -177,42 +298,95 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
     }
 
     /**
-     * Parse values recursively to be able to resolve cross-references between placeholder values.
+     * Parse values recursively to be able to resolve cross-references between placeholder values. Each distinct value
+     * is compiled once and rendered in a single pass; each placeholder is resolved once per
+     * {@link #processConfiguration(ConfigurableListableBeanFactory, Configuration)}.
      * 
      * @param config
      *            configuration resolve placeholders against
      * @param value
      *            placeholder
      * @param originalPlaceholder
-     *            recursive placeholder value
-     * @return parsed string
+     *            placeholder the value was resolved from, null for a bean definition value
+     * @return parsed string, the value itself if it has no placeholders
+     * @throws BeanDefinitionStoreException
+     *             if a placeholder cannot be resolved or placeholders reference each other in a cycle
      */
     protected String parseString(Configuration config, String value, String originalPlaceholder) throws BeansException {
-        int startIdx = value.indexOf(_placeholderPrefix);
-        while (startIdx != -1) {
-            int endIdx = value.indexOf(_placeholderSuffix, startIdx + _placeholderPrefix.length());
-            if (endIdx != -1) {
-                String placeholder = value.substring(startIdx + _placeholderPrefix.length(), endIdx);
-                String originalPlaceholderToUse = null;
-
-                if (originalPlaceholder != null) {
-                    originalPlaceholderToUse = originalPlaceholder;
-                    if (placeholder.equals(originalPlaceholder)) { throw new BeanDefinitionStoreException(
-                            "Circular placeholder reference '" + placeholder + "' in property definition [" + config
-                                    + "]"); }
-                } else originalPlaceholderToUse = placeholder;
-
-                String configValue = resolvePlaceholder(placeholder, config);
-                if (configValue != null) {
-                    configValue = parseString(config, configValue, originalPlaceholderToUse);
-                    log.debug("Resolving placeholder '" + placeholder + "' to [" + configValue + "]");
-                    value = value.substring(0, startIdx) + configValue + value.substring(endIdx + 1);
-                    startIdx = value.indexOf(_placeholderPrefix, startIdx + configValue.length());
-                } else if (_ignoreUnresolvablePlaceholders) return value;
-                else throw new BeanDefinitionStoreException("Could not resolve placeholder '" + placeholder + "'");
-            } else startIdx = -1;
+        PlaceholderTemplate template = compile(value);
+        if (!template.hasPlaceholders()) return value;
+
+        Set<String> path = new LinkedHashSet<>();
+        if (originalPlaceholder != null) path.add(originalPlaceholder);
+        Map<String, String> resolved = _resolved != null ? _resolved : new HashMap<String, String>();
+
+        StringBuilder rendered = new StringBuilder(value.length() + 32);
+        render(config, template, path, resolved, rendered);
+        return rendered.toString();
+    }
+
+    /**
+     * Appends the rendered template. An unresolvable placeholder that is ignored leaves it, and the rest of the
+     * template, as is.
+     * 
+     * @param path
+     *            placeholders being resolved, outermost first
+     * @param resolved
+     *            <placeholder, fully resolved value> of the placeholders resolved so far
+     */
+    private void render(Configuration config, PlaceholderTemplate template, Set<String> path,
+            Map<String, String> resolved, StringBuilder rendered) throws BeansException {
+        for (PlaceholderTemplate.Segment segment : template.segments()) {
+            if (!segment._placeholder) {
+                rendered.append(segment._text);
+                continue;
+            }
+
+            String value = resolve(config, segment._text, path, resolved);
+            if (value != null) rendered.append(value);
+            else if (_ignoreUnresolvablePlaceholders) {
+                rendered.append(template.source(), segment._offset, template.source().length());
+                return;
+            } else throw new BeanDefinitionStoreException("Could not resolve placeholder '" + segment._text + "'");
+        }
+    }
+
+    /**
+     * Resolves a placeholder and the placeholders of its value, depth first. Results are memoized so a placeholder
+     * referenced from many definitions is resolved once.
+     * 
+     * @return the fully resolved value, null if the placeholder cannot be resolved
+     */
+    private String resolve(Configuration config, String placeholder, Set<String> path, Map<String, String> resolved)
+            throws BeansException {
+        String value = resolved.get(placeholder);
+        if (value != null) return value == UNRESOLVED ? null : value;
+
+        if (!path.add(placeholder)) {
+            StringBuilder cycle = new StringBuilder();
+            for (String step : path) {
+                cycle.append(step).append(" -> ");
+            }
+            throw new BeanDefinitionStoreException("Circular placeholder reference '" + placeholder
+                    + "' in property definition [" + config + "]: " + cycle.append(placeholder));
+        }
+
+        try {
+            value = resolvePlaceholder(placeholder, config);
+            if (value != null) {
+                PlaceholderTemplate template = compile(value);
+                if (template.hasPlaceholders()) {
+                    StringBuilder rendered = new StringBuilder(value.length() + 32);
+                    render(config, template, path, resolved, rendered);
+                    value = rendered.toString();
+                }
+                if (log.isDebugEnabled()) log.debug("Resolving placeholder '" + placeholder + "' to [" + value + "]");
+            }
+            resolved.put(placeholder, value == null ? UNRESOLVED : value);
+            return value;
+        } finally {
+            path.remove(placeholder);
         }
-        return value;
     }
 
     @SuppressWarnings("rawtypes")
@@ -237,14 +411,56 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
     @Override
     protected void processConfiguration(ConfigurableListableBeanFactory beanFactory, Configuration config)
             throws BeansException {
+        _resolved = new ConcurrentHashMap<>();
+        try {
+            if (_parallel) processConfigurationParallel(beanFactory, config);
+            else {
+                for (String beanName : beanFactory.getBeanDefinitionNames()) {
+                    BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+                    try {
+                        parseDefinition(config, definition);
+                    } catch (BeanDefinitionStoreException ex) {
+                        throw new BeanDefinitionStoreException(definition.getResourceDescription(), beanName, ex
+                                .getMessage());
+                    }
+                }
+            }
+        } finally {
+            // templates and resolved placeholders are only shared within a pass
+            _resolved = null;
+            _templates.clear();
+        }
+    }
+
+    /**
+     * Skips the definitions without placeholders and processes the others on a fork-join pool. The failure of the first
+     * failing definition, in definition order, is reported.
+     */
+    private void processConfigurationParallel(ConfigurableListableBeanFactory beanFactory, Configuration config)
+            throws BeansException {
+        List<String> names = new ArrayList<>();
+        List<BeanDefinition> definitions = new ArrayList<>();
         for (String beanName : beanFactory.getBeanDefinitionNames()) {
             BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
-            try {
-                parseDefinition(config, definition);
-            } catch (BeanDefinitionStoreException ex) {
-                throw new BeanDefinitionStoreException(definition.getResourceDescription(), beanName, ex.getMessage());
+            if (hasPlaceholders(definition)) {
+                names.add(beanName);
+                definitions.add(definition);
             }
         }
+        if (definitions.isEmpty()) return;
+
+        BeanDefinitionStoreException[] failures = new BeanDefinitionStoreException[definitions.size()];
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new DefinitionTask(config, names.toArray(new String[names.size()]), definitions
+                    .toArray(new BeanDefinition[definitions.size()]), failures, 0, failures.length));
+        } finally {
+            pool.shutdown();
+        }
+
+        for (BeanDefinitionStoreException failure : failures) {
+            if (failure != null) throw failure;
+        }
     }
 
     /**
@@ -274,6 +490,21 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
         _ignoreUnresolvablePlaceholders = ignoreUnresolvablePlaceholders;
     }
 
+    /**
+     * Processes the bean definitions in parallel. Definitions without the placeholder prefix are skipped up front and
+     * the others are processed on a fork-join pool, each by a single thread. Default is false.
+     * <p>
+     * <em>Note:</em> the configuration is read from several threads, it must support concurrent reads; see
+     * {@link commons.configuration.ext.ConcurrentRuntimeConfiguration}. Subclasses overriding
+     * {@link #resolvePlaceholder(String, Configuration)} must be thread safe too.
+     * 
+     * @param parallel
+     *            true = process bean definitions in parallel
+     */
+    public void setParallel(boolean parallel) {
+        _parallel = parallel;
+    }
+
     /**
      * Set the prefix that a placeholder string starts with. The default is "%{"
      * 
@@ -283,6 +514,7 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
      */
     public void setPlaceholderPrefix(String placeholderPrefix) {
         _placeholderPrefix = placeholderPrefix;
+        _templates.clear();
     }
 
     /**
@@ -294,5 +526,6 @@ public class ConfigurationPlaceholderConfigurer extends ConfigurationResourceCon
      */
     public void setPlaceholderSuffix(String placeholderSuffix) {
         _placeholderSuffix = placeholderSuffix;
+        _templates.clear();
     }
 }
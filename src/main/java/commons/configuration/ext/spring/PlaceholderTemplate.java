@@ -0,0 +1,98 @@
+package commons.configuration.ext.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A string value parsed once into literal and placeholder segments so it can be rendered in a single pass.
+ * Placeholders are found the same way {@link ConfigurationPlaceholderConfigurer} always has: from each prefix to the
+ * first suffix that follows it; a prefix without a suffix is literal text.
+ * 
+ * @author Timothy Storm
+ */
+class PlaceholderTemplate {
+    /**
+     * A literal text or a placeholder name
+     */
+    static class Segment {
+        /** literal text or placeholder name */
+        final String _text;
+
+        /** true if this is a placeholder */
+        final boolean _placeholder;
+
+        /** where the segment starts in the template, the prefix included */
+        final int _offset;
+
+        Segment(String text, boolean placeholder, int offset) {
+            _text = text;
+            _placeholder = placeholder;
+            _offset = offset;
+        }
+    }
+
+    private final String _source;
+
+    private final List<Segment> _segments;
+
+    private final boolean _placeholders;
+
+    private PlaceholderTemplate(String source, List<Segment> segments) {
+        _source = source;
+        _segments = Collections.unmodifiableList(segments);
+
+        boolean placeholders = false;
+        for (Segment segment : segments) {
+            placeholders |= segment._placeholder;
+        }
+        _placeholders = placeholders;
+    }
+
+    /**
+     * Parses a value
+     * 
+     * @param value
+     *            to parse
+     * @param prefix
+     *            placeholder prefix
+     * @param suffix
+     *            placeholder suffix
+     * @return the compiled template
+     */
+    static PlaceholderTemplate compile(String value, String prefix, String suffix) {
+        List<Segment> segments = new ArrayList<>();
+        int position = 0;
+        for (int start = value.indexOf(prefix); start != -1; start = value.indexOf(prefix, position)) {
+            int end = value.indexOf(suffix, start + prefix.length());
+            if (end == -1) break;
+
+            if (start > position) segments.add(new Segment(value.substring(position, start), false, position));
+            segments.add(new Segment(value.substring(start + prefix.length(), end), true, start));
+            position = end + suffix.length();
+        }
+        if (position < value.length()) segments.add(new Segment(value.substring(position), false, position));
+        return new PlaceholderTemplate(value, segments);
+    }
+
+    /**
+     * @return true if the template contains at least one placeholder
+     */
+    boolean hasPlaceholders() {
+        return _placeholders;
+    }
+
+    /**
+     * @return literal and placeholder segments in order
+     */
+    List<Segment> segments() {
+        return _segments;
+    }
+
+    /**
+     * @return the value this template was compiled from
+     */
+    String source() {
+        return _source;
+    }
+}
@@ -0,0 +1,69 @@
+package commons.configuration.ext.spring;
+
+import org.apache.commons.configuration.Configuration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.core.io.Resource;
+
+import commons.configuration.ext.RuntimeConfigurationRegistry;
+import commons.configuration.ext.SharedConfiguration;
+
+/**
+ * <p>
+ * Factory of the {@link SharedConfiguration} of a runtime configuration source. Every application context of the JVM
+ * that names the same source shares one parsed, immutable configuration through the
+ * {@link RuntimeConfigurationRegistry}; it is released when the context closes.
+ * </p>
+ * 
+ * <pre>
+ * &lt;bean id="AppConfig" class="commons.configuration.ext.spring.SharedConfigurationFactory"&gt;
+ *   &lt;constructor-arg value="file:/path/to/config/file" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
+ * @author Timothy Storm
+ */
+public class SharedConfigurationFactory implements FactoryBean<Configuration>, DisposableBean {
+    private final Resource _source;
+
+    /** the acquired configuration, null until first use and after destroy */
+    private SharedConfiguration _configuration;
+
+    /**
+     * @param source
+     *            of the runtime configuration
+     */
+    public SharedConfigurationFactory(Resource source) {
+        if (source == null) throw new NullPointerException("source required!");
+        _source = source;
+    }
+
+    /**
+     * Releases the shared configuration
+     */
+    @Override
+    public synchronized void destroy() {
+        if (_configuration != null) RuntimeConfigurationRegistry.instance().release(_configuration);
+        _configuration = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Acquires the shared configuration of the source on first use.
+     */
+    @Override
+    public synchronized Configuration getObject() throws Exception {
+        if (_configuration == null) _configuration = RuntimeConfigurationRegistry.instance().acquire(_source.getURL());
+        return _configuration;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return SharedConfiguration.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+}
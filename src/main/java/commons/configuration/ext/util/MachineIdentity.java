@@ -0,0 +1,44 @@
+package commons.configuration.ext.util;
+
+/**
+ * Immutable identity of this machine: host name, address and fully qualified domain name. Any of them can be null if it
+ * could not be determined.
+ * 
+ * @author Timothy Storm
+ * @see MachineUtils
+ */
+public class MachineIdentity {
+    private final String _hostName, _hostAddress, _fqdn;
+
+    public MachineIdentity(String hostName, String hostAddress, String fqdn) {
+        _hostName = hostName;
+        _hostAddress = hostAddress;
+        _fqdn = fqdn;
+    }
+
+    /**
+     * @return fully qualified domain name, null if unknown
+     */
+    public String getFqdn() {
+        return _fqdn;
+    }
+
+    /**
+     * @return IP address in textual presentation, null if unknown
+     */
+    public String getHostAddress() {
+        return _hostAddress;
+    }
+
+    /**
+     * @return host name, null if unknown
+     */
+    public String getHostName() {
+        return _hostName;
+    }
+
+    @Override
+    public String toString() {
+        return "hostName=" + _hostName + ", hostAddress=" + _hostAddress + ", fqdn=" + _fqdn;
+    }
+}
@@ -0,0 +1,41 @@
+package commons.configuration.ext.util;
+
+import java.io.IOException;
+
+/**
+ * Strategy that discovers the {@link MachineIdentity} in two steps: the address, which must not block on DNS, then the
+ * names. Resolvers run on a background thread; callers of {@link MachineUtils} never wait longer than the discovery
+ * timeout and see the address as soon as it is known.
+ * 
+ * <pre>
+ * // tests can stub the machine identity
+ * MachineUtils.setResolver(new MachineIdentityResolver() {
+ *     public String resolveAddress() {
+ *         return &quot;10.0.0.1&quot;;
+ *     }
+ * 
+ *     public MachineIdentity resolve(String address) {
+ *         return new MachineIdentity(&quot;test-host&quot;, address, &quot;test-host.example.com&quot;);
+ *     }
+ * });
+ * </pre>
+ * 
+ * @author Timothy Storm
+ */
+public interface MachineIdentityResolver {
+    /**
+     * @return IP address of this machine in textual presentation, null if it cannot be known without DNS
+     * @throws IOException
+     *             if the address cannot be determined
+     */
+    String resolveAddress() throws IOException;
+
+    /**
+     * @param address
+     *            of this machine as resolved by {@link #resolveAddress()}, may be null
+     * @return identity of this machine, resolving its names may block on DNS
+     * @throws IOException
+     *             if the identity cannot be determined
+     */
+    MachineIdentity resolve(String address) throws IOException;
+}
@@ -1,111 +1,291 @@
 package commons.configuration.ext.util;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Machine (physical and JVM) utilities to identify attributes of this runtime
  * machine.
+ * <p/>
+ * The identity is discovered on a background thread as soon as this class is
+ * first used, or earlier by calling {@link #discover()}. Callers wait at most
+ * the discovery timeout (system property {@value #TIMEOUT_PROPERTY}, default
+ * {@value #DEFAULT_TIMEOUT_MILLIS}ms) for it; if discovery is slower, e.g.
+ * because DNS is misconfigured, the address of the network interfaces, which
+ * needs no DNS, the host name and address overrides and the
+ * <code>HOSTNAME</code>/<code>COMPUTERNAME</code> environment variables are
+ * used until discovery completes, and a warning is logged. The discovered
+ * identity is cached.
+ * <p/>
+ * The host name and address can be overridden with the system properties
+ * {@value #HOST_NAME_PROPERTY} and {@value #HOST_ADDRESS_PROPERTY}, the whole
+ * discovery with {@link #setResolver(MachineIdentityResolver)}.
  * 
  * @author Timothy Storm
  */
 public class MachineUtils {
+	/** system property that overrides the discovered host name */
+	public static final String HOST_NAME_PROPERTY = "commons.configuration.ext.hostName";
+
+	/** system property that overrides the discovered host address */
+	public static final String HOST_ADDRESS_PROPERTY = "commons.configuration.ext.hostAddress";
+
+	/** system property with the milliseconds callers wait for discovery */
+	public static final String TIMEOUT_PROPERTY = "commons.configuration.ext.discoveryTimeout";
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+	private static final Log LOG = LogFactory.getLog(MachineUtils.class);
+
+	/**
+	 * Picks the most likely LAN address of the machine, then resolves its
+	 * names which may block on DNS.
+	 */
+	private static class NetworkInterfaceResolver implements MachineIdentityResolver {
+		@Override
+		public String resolveAddress() throws IOException {
+			InetAddress host = lanAddress();
+			return host == null ? null : host.getHostAddress();
+		}
+
+		@Override
+		public MachineIdentity resolve(String address) throws IOException {
+			// a literal address is parsed without a lookup
+			InetAddress host = address == null ? InetAddress.getLocalHost() : InetAddress.getByName(address);
+			return new MachineIdentity(host.getHostName(), host.getHostAddress(), host.getCanonicalHostName());
+		}
+
+		/**
+		 * Returns an <code>InetAddress</code> object encapsulating what is most
+		 * likely the machine's LAN IP address.
+		 * <p/>
+		 * This method is intended for use as a replacement of JDK method
+		 * <code>InetAddress.getLocalHost</code>, because that method is ambiguous
+		 * on Linux systems. Linux systems enumerate the loopback network interface
+		 * the same way as regular LAN network interfaces, but the JDK
+		 * <code>InetAddress.getLocalHost</code> method does not specify the
+		 * algorithm used to select the address returned under such circumstances,
+		 * and will often return the loopback address, which is not valid for
+		 * network communication. Details
+		 * <a href="http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4665037">here
+		 * </a>.
+		 * <p/>
+		 * This method will scan all IP addresses on all network interfaces on the
+		 * host machine to determine the IP address most likely to be the machine's
+		 * LAN address. If the machine has multiple IP addresses, this method will
+		 * prefer a site-local IP address (e.g. 192.168.x.x or 10.10.x.x, usually
+		 * IPv4) if the machine has one (and will return the first site-local
+		 * address if the machine has more than one), but if the machine does not
+		 * hold a site-local address, this method will return simply the first
+		 * non-loopback address found (IPv4 or IPv6).
+		 * <p/>
+		 * If this method cannot find a non-loopback address using this selection
+		 * algorithm it returns null, the address is then taken from JDK method
+		 * <code>InetAddress.getLocalHost</code> when the names are resolved as
+		 * that may block on DNS.
+		 * <p/>
+		 * 
+		 * @return LAN address, null if there is none
+		 */
+		private static InetAddress lanAddress() throws IOException {
+			InetAddress candidate = null;
+
+			// Iterate all NICs
+			for (Enumeration<NetworkInterface> nets = NetworkInterface.getNetworkInterfaces(); nets
+					.hasMoreElements();) {
+				NetworkInterface n = (NetworkInterface) nets.nextElement();
+
+				// Iterate all IP addresses assigned to each card...
+				for (Enumeration<InetAddress> inets = n.getInetAddresses(); inets.hasMoreElements();) {
+					InetAddress i = (InetAddress) inets.nextElement();
+					if (!i.isLoopbackAddress()) {
+						// short circuit because a site local address was found
+						if (i.isSiteLocalAddress()) return i;
+						else if (candidate == null) candidate = i;
+					}
+				}
+			}
+
+			return candidate;
+		}
+	}
+
+	/**
+	 * A discovery of the identity. The address is published as soon as it is
+	 * known, before the names are resolved.
+	 */
+	private static class Discovery implements Callable<MachineIdentity> {
+		final MachineIdentityResolver _resolver;
+
+		final FutureTask<MachineIdentity> _task = new FutureTask<>(this);
+
+		/** discovered address, null until known */
+		volatile String _address;
+
+		/** set once a caller gave up waiting, later callers don't wait again */
+		volatile boolean _timedOut;
+
+		/** set once the fallback identity has been reported */
+		volatile boolean _warned;
+
+		Discovery(MachineIdentityResolver resolver) {
+			_resolver = resolver;
+		}
+
+		@Override
+		public MachineIdentity call() throws Exception {
+			String address = _resolver.resolveAddress();
+			_address = address;
+
+			MachineIdentity identity = _resolver.resolve(address);
+			identity = new MachineIdentity(override(HOST_NAME_PROPERTY, identity.getHostName()), override(
+					HOST_ADDRESS_PROPERTY, identity.getHostAddress()), identity.getFqdn());
+			if (_timedOut) LOG.warn("machine identity discovered after the timeout (" + identity
+					+ "), host environments resolved before may differ");
+			return identity;
+		}
+
+		/**
+		 * Logs the fallback identity once, so a host environment resolved
+		 * without the discovered identity is not chosen silently
+		 */
+		void warn(String reason, Throwable cause) {
+			if (_warned) return;
+			_warned = true;
+			LOG.warn(reason + ", matching hosts against " + fallback(this), cause);
+		}
+	}
+
+	private static volatile MachineIdentityResolver RESOLVER = new NetworkInterfaceResolver();
+
+	/** running or completed discovery, null until started */
+	private static volatile Discovery DISCOVERY;
+
+	static {
+		discover();
+	}
+
+	/**
+	 * Starts discovering the machine identity in the background, if not
+	 * already started. Call early at startup to overlap discovery with other
+	 * work.
+	 */
+	public static void discover() {
+		discovery();
+	}
+
+	/**
+	 * @return the current discovery, started if necessary
+	 */
+	private static Discovery discovery() {
+		Discovery discovery = DISCOVERY;
+		if (discovery == null) {
+			synchronized (MachineUtils.class) {
+				if ((discovery = DISCOVERY) == null) {
+					discovery = new Discovery(RESOLVER);
+
+					Thread thread = new Thread(discovery._task, "machine-identity-discovery");
+					thread.setDaemon(true);
+					thread.start();
+					DISCOVERY = discovery;
+				}
+			}
+		}
+		return discovery;
+	}
+
 	/**
-	 * Cache host because it <b>should not</b> change while the JVM is running.
+	 * @return identity known without DNS, used while discovery is pending or
+	 *         if it failed
 	 */
-	private static volatile InetAddress HOST;
-	
+	private static MachineIdentity fallback(Discovery discovery) {
+		String hostName = System.getenv("HOSTNAME");
+		if (hostName == null) hostName = System.getenv("COMPUTERNAME");
+		hostName = override(HOST_NAME_PROPERTY, hostName);
+		return new MachineIdentity(hostName, override(HOST_ADDRESS_PROPERTY, discovery._address), hostName);
+	}
+
 	/**
 	 * @return host fully qualified domain name (FQDN). Usually, but not always,
 	 *         matches {@link #hostName()}.  Null if host can't be determined.
 	 */
 	public static String fqdn() {
-		final InetAddress host = inetAddress();
-		return host == null ? null : host.getCanonicalHostName();
+		return identity().getFqdn();
 	}
 
-
 	/**
 	 * @return host IP address string in textual presentation.  Null if host can't be determined.
 	 */
 	public static String hostAddress() {
-		final InetAddress host = inetAddress();
-		return host == null ? null : host.getHostAddress();
+		return identity().getHostAddress();
 	}
 
 	/**
 	 * @return host name for this machine.  Null if host can't be determined.
 	 */
 	public static String hostName() {
-		final InetAddress host = inetAddress();
-		return host == null ? null : host.getHostName();
+		return identity().getHostName();
+	}
+
+	/**
+	 * @return the discovered identity, or the identity known without DNS if
+	 *         discovery did not complete within the timeout or failed. Never
+	 *         null.
+	 */
+	public static MachineIdentity identity() {
+		Discovery discovery = discovery();
+		try {
+			if (discovery._task.isDone()) return discovery._task.get();
+			if (!discovery._timedOut) return discovery._task.get(timeout(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			discovery._timedOut = true;
+			discovery.warn("machine identity discovery did not complete within " + timeout() + "ms", null);
+		} catch (ExecutionException e) {
+			discovery.warn("machine identity discovery failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return fallback(discovery);
+	}
+
+	private static String override(String property, String value) {
+		String override = System.getProperty(property);
+		return override == null || override.trim().isEmpty() ? value : override.trim();
 	}
 
 	/**
-	 * Returns an <code>InetAddress</code> object encapsulating what is most
-	 * likely the machine's LAN IP address.
-	 * <p/>
-	 * This method is intended for use as a replacement of JDK method
-	 * <code>InetAddress.getLocalHost</code>, because that method is ambiguous
-	 * on Linux systems. Linux systems enumerate the loopback network interface
-	 * the same way as regular LAN network interfaces, but the JDK
-	 * <code>InetAddress.getLocalHost</code> method does not specify the
-	 * algorithm used to select the address returned under such circumstances,
-	 * and will often return the loopback address, which is not valid for
-	 * network communication. Details
-	 * <a href="http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4665037">here
-	 * </a>.
-	 * <p/>
-	 * This method will scan all IP addresses on all network interfaces on the
-	 * host machine to determine the IP address most likely to be the machine's
-	 * LAN address. If the machine has multiple IP addresses, this method will
-	 * prefer a site-local IP address (e.g. 192.168.x.x or 10.10.x.x, usually
-	 * IPv4) if the machine has one (and will return the first site-local
-	 * address if the machine has more than one), but if the machine does not
-	 * hold a site-local address, this method will return simply the first
-	 * non-loopback address found (IPv4 or IPv6).
-	 * <p/>
-	 * If this method cannot find a non-loopback address using this selection
-	 * algorithm, it will fall back to calling and returning the result of JDK
-	 * method <code>InetAddress.getLocalHost</code>.
-	 * <p/>
+	 * Replaces the identity discovery and starts a new discovery.
 	 * 
-	 * @return localhost or null if any failures determining this machines
-	 *         network address.
+	 * @param resolver
+	 *            to discover the identity with, null restores the default
+	 *            network interface discovery
 	 */
-	private static InetAddress inetAddress() {
-		if (HOST == null) {
-			synchronized (MachineUtils.class) {
-				if (HOST == null) {
-					try {
-						InetAddress candidate = null;
-
-						// Iterate all NICs
-						for (Enumeration<NetworkInterface> nets = NetworkInterface.getNetworkInterfaces(); nets
-								.hasMoreElements();) {
-							NetworkInterface n = (NetworkInterface) nets.nextElement();
-
-							// Iterate all IP addresses assigned to each card...
-							for (Enumeration<InetAddress> inets = n.getInetAddresses(); inets.hasMoreElements();) {
-								InetAddress i = (InetAddress) inets.nextElement();
-								if (!i.isLoopbackAddress()) {
-									// short circuit because a site local
-									// address was found
-									if (i.isSiteLocalAddress()) return (HOST = i);
-									else if (candidate == null) candidate = i;
-								}
-							}
-						}
-
-						if (HOST == null) HOST = candidate;
-						if (HOST == null) HOST = InetAddress.getLocalHost();
-					} catch (Exception e) {
-						HOST = null; // hope client can live with null
-					}
-				}
-			}
+	public static void setResolver(MachineIdentityResolver resolver) {
+		synchronized (MachineUtils.class) {
+			RESOLVER = resolver == null ? new NetworkInterfaceResolver() : resolver;
+			DISCOVERY = null;
+			discovery();
+		}
+	}
+
+	/**
+	 * @return milliseconds callers wait for discovery
+	 */
+	static long timeout() {
+		try {
+			return Long.parseLong(System.getProperty(TIMEOUT_PROPERTY, String.valueOf(DEFAULT_TIMEOUT_MILLIS)));
+		} catch (NumberFormatException e) {
+			return DEFAULT_TIMEOUT_MILLIS;
 		}
-		return HOST;
 	}
 }
@@ -0,0 +1,133 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConcurrentRuntimeConfigurationTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    File write(String... properties) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"0\"><host>localhost</host></hosts></context>");
+        for (int i = 0; i < properties.length; i += 2) {
+            xml.append("<property key=\"").append(properties[i]).append("\">");
+            xml.append("<value env=\"0\">").append(properties[i + 1]).append("</value>");
+            xml.append("</property>");
+        }
+        xml.append("</configuration>");
+
+        File file = new File(tmpFolder.getRoot(), "runtime.xml");
+        Files.write(file.toPath(), xml.toString().getBytes("UTF-8"));
+        return file;
+    }
+
+    @Test
+    public void load() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(write("key", "value", "list",
+                "a,b"));
+
+        assertEquals("value", config.getProperty("key"));
+        assertEquals(Arrays.asList("a", "b"), config.getList("list"));
+        assertTrue(config.containsKey("key"));
+        assertFalse(config.isEmpty());
+    }
+
+    @Test
+    public void addProperties() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration();
+        config.addProperty("existing", "value");
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("existing", "other");
+        properties.put("list", "a,b");
+        properties.put("port", 8080);
+        config.addProperties(properties);
+
+        assertEquals(Arrays.asList("value", "other"), config.getProperty("existing"));
+        assertEquals(Arrays.asList("a", "b"), config.getProperty("list"));
+        assertEquals(8080, config.getInt("port"));
+    }
+
+    @Test
+    public void empty() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration();
+        assertTrue(config.isEmpty());
+        assertNull(config.getProperty("key"));
+        assertFalse(config.getKeys().hasNext());
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(write("key", "value", "old",
+                "old"));
+        write("key", "changed");
+        config.refresh();
+
+        assertEquals("changed", config.getProperty("key"));
+        assertFalse(config.containsKey("old"));
+    }
+
+    @Test
+    public void refresh_unchanged() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(write("key", "value", "list",
+                "a,b"));
+        Object list = config.getProperty("list");
+        config.refresh();
+
+        // nothing changed so nothing was replaced
+        assertSame(list, config.getProperty("list"));
+        assertEquals("value", config.getProperty("key"));
+    }
+
+    @Test
+    public void setProperty() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration();
+        config.addProperty("key", "first");
+        config.addProperty("key", "second");
+        assertEquals(Arrays.asList("first", "second"), config.getProperty("key"));
+
+        config.setProperty("key", "value");
+        assertEquals("value", config.getProperty("key"));
+
+        config.clearProperty("key");
+        assertFalse(config.containsKey("key"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getProperty_immutable() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration();
+        config.addProperty("key", "a,b");
+
+        @SuppressWarnings("unchecked")
+        List<Object> list = (List<Object>) config.getProperty("key");
+        list.add("c");
+    }
+
+    @Test
+    public void getKeys_snapshot() throws Exception {
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration();
+        config.addProperty("key", "value");
+
+        Iterator<String> keys = config.getKeys();
+        config.clear();
+        assertEquals("key", keys.next());
+        assertTrue(config.isEmpty());
+    }
+}
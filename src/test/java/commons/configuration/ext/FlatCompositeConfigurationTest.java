@@ -0,0 +1,86 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlatCompositeConfigurationTest {
+    MapConfiguration _first, _second;
+    FlatCompositeConfiguration _config;
+
+    @Before
+    public void setUp() throws Exception {
+        _first = new MapConfiguration(new HashMap<String, Object>());
+        _first.setProperty("shared", "first");
+        _first.setProperty("a", "A");
+        _second = new MapConfiguration(new HashMap<String, Object>());
+        _second.setProperty("shared", "second");
+        _second.setProperty("b", "B");
+        _config = new FlatCompositeConfiguration(Arrays.<Configuration> asList(_first, _second));
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        assertEquals("first", _config.getString("shared"));
+        assertEquals("A", _config.getString("a"));
+        assertEquals("B", _config.getString("b"));
+        assertNull(_config.getString("missing"));
+        assertTrue(_config.containsKey("b"));
+        assertFalse(_config.isEmpty());
+    }
+
+    @Test
+    public void child_changed() throws Exception {
+        assertEquals("first", _config.getString("shared"));
+
+        _first.clearProperty("shared");
+        assertEquals("second", _config.getString("shared"));
+
+        _second.setProperty("c", "C");
+        assertEquals("C", _config.getString("c"));
+    }
+
+    @Test
+    public void composite_changed() throws Exception {
+        _config.setProperty("d", "D");
+        assertEquals("D", _config.getString("d"));
+
+        _config.removeConfiguration(_first);
+        assertEquals("second", _config.getString("shared"));
+        assertFalse(_config.containsKey("a"));
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        MapConfiguration silent = new MapConfiguration(values);
+        _config.addConfiguration(silent);
+        assertFalse(_config.containsKey("silent"));
+
+        // changes to the backing map fire no events
+        values.put("silent", "value");
+        assertFalse(_config.containsKey("silent"));
+
+        _config.invalidate();
+        assertEquals("value", _config.getString("silent"));
+    }
+
+    @Test
+    public void copy() throws Exception {
+        FlatCompositeConfiguration copy = (FlatCompositeConfiguration) _config.clone();
+        copy.setProperty("copied", "value");
+
+        assertEquals("value", copy.getString("copied"));
+        assertFalse(_config.containsKey("copied"));
+    }
+}
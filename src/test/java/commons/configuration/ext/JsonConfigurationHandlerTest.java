@@ -0,0 +1,96 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JsonConfigurationHandlerTest {
+    JsonConfigurationHandler _handler;
+
+    @Before
+    public void setUp() throws Exception {
+        _handler = new JsonConfigurationHandler();
+    }
+
+    static String json() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"context\": {\n");
+        json.append("    \"remote\": [\"remote.host.invalid\"],\n");
+        json.append("    \"local\": \"localhost\"\n");
+        json.append("  },\n");
+        json.append("  \"properties\": {\n");
+        json.append("    \"env_key\": { \"remote\": \"remote_value\", \"local\": \"local_value\" },\n");
+        json.append("    \"global_key\": { \"local\": \"local_value\", \"*\": \"global_value\" },\n");
+        json.append("    \"remote_key\": { \"remote\": \"remote_value\" },\n");
+        json.append("    \"short_key\": \"short \\\"value\\\"\\u0021\",\n");
+        json.append("    \"empty_key\": null,\n");
+        json.append("    \"port\": { \"local\": { \"type\": \"int\", \"value\": 8080 } }\n");
+        json.append("  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    @Test
+    public void read() throws Exception {
+        Map<String, String> props = _handler.read(new StringReader(json()));
+        assertEquals("local", _handler.getEnvironment());
+        assertEquals(5, props.size());
+        assertEquals("local_value", props.get("env_key"));
+        assertEquals("global_value", props.get("global_key"));
+        assertEquals("short \"value\"!", props.get("short_key"));
+        assertEquals("", props.get("empty_key"));
+        assertEquals("8080", props.get("port"));
+        assertFalse(props.containsKey("remote_key"));
+        assertEquals(ValueType.INT, _handler.getTypes().get("port"));
+    }
+
+    @Test
+    public void read_invalid() throws Exception {
+        try {
+            _handler.read(new StringReader("{\n  \"context\": {\n    \"local\": [\"localhost\",]\n  }\n}"));
+            throw new AssertionError("expected a parse error");
+        } catch (ConfigurationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("lineNumber: 3"));
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void read_unknownMember() throws Exception {
+        _handler.read(new StringReader("{ \"hosts\": {} }"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void read_propertiesBeforeContext() throws Exception {
+        _handler.read(new StringReader("{ \"properties\": { \"a\": \"b\" }, \"context\": { \"local\": \"localhost\" } }"));
+    }
+
+    /**
+     * A saved configuration reads back the same
+     */
+    @Test
+    public void save() throws Exception {
+        Configuration config = new BaseConfiguration();
+        config.addProperty("key", "value");
+        config.addProperty("quoted", "\"a\\b\"\n");
+        config.addProperty("empty", "");
+
+        StringWriter out = new StringWriter();
+        _handler.save(config, out);
+
+        Map<String, String> props = _handler.read(new StringReader(out.toString()));
+        assertEquals("value", props.get("key"));
+        assertEquals("\"a\\b\"", props.get("quoted"));
+        assertEquals("", props.get("empty"));
+    }
+}
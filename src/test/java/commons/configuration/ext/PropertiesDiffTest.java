@@ -0,0 +1,40 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PropertiesDiffTest {
+    @Test
+    public void compare() throws Exception {
+        Map<String, Object> before = new HashMap<>();
+        before.put("same", "value");
+        before.put("changed", "before");
+        before.put("removed", "value");
+        before.put("list", Arrays.asList("a", "b"));
+
+        Map<String, Object> after = new HashMap<>();
+        after.put("same", "value");
+        after.put("changed", "after");
+        after.put("added", "value");
+        after.put("list", Arrays.asList("a", "b"));
+
+        PropertiesDiff diff = PropertiesDiff.compare(before, after);
+        assertEquals(3, diff.size());
+        assertEquals("value", diff.getAdded().get("added"));
+        assertEquals("after", diff.getChanged().get("changed"));
+        assertEquals("value", diff.getRemoved().get("removed"));
+    }
+
+    @Test
+    public void compare_empty() throws Exception {
+        Map<String, Object> table = new HashMap<>();
+        table.put("key", "value");
+        assertTrue(PropertiesDiff.compare(table, new HashMap<>(table)).isEmpty());
+    }
+}
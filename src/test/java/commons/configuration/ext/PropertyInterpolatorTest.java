@@ -0,0 +1,85 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+public class PropertyInterpolatorTest {
+    @Test
+    public void interpolate() throws Exception {
+        Map<String, String> raw = new LinkedHashMap<>();
+        raw.put("a", "${b}-${b}");
+        raw.put("b", "${c}");
+        raw.put("c", "C");
+        raw.put("escaped", "$${c}");
+        raw.put("list", "x,y");
+        raw.put("listRef", "${list}");
+        raw.put("missing", "${missing.key}");
+        raw.put("unclosed", "${c");
+
+        Map<String, String> interpolated = PropertyInterpolator.interpolate(raw, ',', false);
+        assertEquals("C-C", interpolated.get("a"));
+        assertEquals("C", interpolated.get("b"));
+        assertEquals("$${c}", interpolated.get("escaped"));
+        assertEquals("${list}", interpolated.get("listRef"));
+        assertEquals("${missing.key}", interpolated.get("missing"));
+        assertEquals("${c", interpolated.get("unclosed"));
+    }
+
+    /**
+     * List values are those of the configuration's delimiter
+     */
+    @Test
+    public void interpolate_delimiter() throws Exception {
+        Map<String, String> raw = new LinkedHashMap<>();
+        raw.put("comma", "x,y");
+        raw.put("semicolon", "x;y");
+        raw.put("escaped", "x\\;y");
+        raw.put("commaRef", "${comma}");
+        raw.put("semicolonRef", "${semicolon}");
+        raw.put("escapedRef", "${escaped}");
+
+        Map<String, String> interpolated = PropertyInterpolator.interpolate(raw, ';', false);
+        assertEquals("x,y", interpolated.get("commaRef"));
+        assertEquals("${semicolon}", interpolated.get("semicolonRef"));
+        assertEquals("x\\;y", interpolated.get("escapedRef"));
+
+        // values are never lists when delimiter parsing is disabled
+        interpolated = PropertyInterpolator.interpolate(raw, ',', true);
+        assertEquals("x,y", interpolated.get("commaRef"));
+        assertEquals("x;y", interpolated.get("semicolonRef"));
+    }
+
+    @Test
+    public void interpolate_cycle() throws Exception {
+        Map<String, String> raw = new LinkedHashMap<>();
+        raw.put("a", "${b}");
+        raw.put("b", "${c}");
+        raw.put("c", "[${b}]");
+
+        try {
+            PropertyInterpolator.interpolate(raw, ',', false);
+            fail("circular reference");
+        } catch (ConfigurationException e) {
+            assertEquals("circular property reference a -> b -> c -> b", e.getMessage());
+        }
+    }
+
+    @Test
+    public void interpolate_self() throws Exception {
+        Map<String, String> raw = new LinkedHashMap<>();
+        raw.put("a", "${a}");
+
+        try {
+            PropertyInterpolator.interpolate(raw, ',', false);
+            fail("circular reference");
+        } catch (ConfigurationException e) {
+            assertEquals("circular property reference a -> a", e.getMessage());
+        }
+    }
+}
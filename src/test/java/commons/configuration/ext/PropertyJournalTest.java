@@ -0,0 +1,160 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PropertyJournalTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    static List<PropertyJournal.Record> append(File file) throws Exception {
+        List<PropertyJournal.Record> records = new ArrayList<>();
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            journal.append(PropertyJournal.PUT, "local", "key", Arrays.asList("a", "b,c"));
+            journal.append(PropertyJournal.REMOVE, "local", "gone", Collections.<String> emptyList());
+            journal.append(PropertyJournal.PUT, "remote", "unicode", Arrays.asList("été"));
+        }
+        return records;
+    }
+
+    @Test
+    public void open() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "journal");
+        assertTrue(append(file).isEmpty());
+
+        List<PropertyJournal.Record> records = new ArrayList<>();
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            assertEquals(3, journal.size());
+        }
+        assertEquals(3, records.size());
+        assertEquals("local", records.get(0).environment);
+        assertEquals("key", records.get(0).key);
+        assertEquals(Arrays.asList("a", "b,c"), records.get(0).values);
+        assertEquals(PropertyJournal.REMOVE, records.get(1).op);
+        assertEquals("remote", records.get(2).environment);
+        assertEquals("été", records.get(2).values.get(0));
+    }
+
+    /**
+     * A record that was not completely written is dropped and later records follow the last intact one
+     */
+    @Test
+    public void open_torn() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "journal");
+        append(file);
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 3);
+        }
+
+        List<PropertyJournal.Record> records = new ArrayList<>();
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            assertEquals(2, records.size());
+            journal.append(PropertyJournal.PUT, "local", "next", Arrays.asList("value"));
+        }
+
+        records.clear();
+        PropertyJournal.open(file, records).close();
+        assertEquals(3, records.size());
+        assertEquals("next", records.get(2).key);
+    }
+
+    @Test
+    public void open_corrupt() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "journal");
+        append(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // a byte of the first record's key, after its environment
+        bytes[8 + 4 + 1 + 4 + "local".length() + 4] ^= 0x20;
+        Files.write(file.toPath(), bytes);
+
+        List<PropertyJournal.Record> records = new ArrayList<>();
+        PropertyJournal.open(file, records).close();
+        assertTrue(records.isEmpty());
+        assertEquals(8, file.length());
+    }
+
+    @Test
+    public void open_empty() throws Exception {
+        File file = tmpFolder.newFile();
+
+        List<PropertyJournal.Record> records = new ArrayList<>();
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            assertEquals(0, journal.size());
+        }
+        assertEquals(8, file.length());
+    }
+
+    /**
+     * A file that is not a journal is left as it is
+     */
+    @Test
+    public void open_notJournal() throws Exception {
+        File file = tmpFolder.newFile();
+        Files.write(file.toPath(), "not a journal".getBytes("UTF-8"));
+
+        try {
+            PropertyJournal.open(file, new ArrayList<PropertyJournal.Record>()).close();
+            fail("not a journal");
+        } catch (IOException e) {
+            assertEquals("not a journal", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void rewrite() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "journal");
+        List<PropertyJournal.Record> records = append(file);
+
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            journal.rewrite(records.subList(2, 3));
+            assertEquals(1, journal.size());
+            journal.append(PropertyJournal.PUT, "local", "added", Arrays.asList("value"));
+        }
+        records.clear();
+        PropertyJournal.open(file, records).close();
+        assertEquals(2, records.size());
+        assertEquals("unicode", records.get(0).key);
+        assertEquals("added", records.get(1).key);
+        assertFalse(new File(tmpFolder.getRoot(), "journal.rewrite").exists());
+    }
+
+    /**
+     * A rewrite that fails leaves the journal as it was
+     */
+    @Test
+    public void rewrite_failure() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "journal");
+        List<PropertyJournal.Record> records = append(file);
+
+        // the rewritten journal cannot be created
+        tmpFolder.newFolder("journal.rewrite");
+        try (PropertyJournal journal = PropertyJournal.open(file, records)) {
+            try {
+                journal.rewrite(Collections.<PropertyJournal.Record> emptyList());
+                fail("rewrite failure expected");
+            } catch (IOException e) {
+                assertEquals(3, journal.size());
+            }
+            journal.append(PropertyJournal.PUT, "local", "added", Arrays.asList("value"));
+        }
+        records.clear();
+        PropertyJournal.open(file, records).close();
+        assertEquals(4, records.size());
+    }
+}
@@ -4,14 +4,25 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.apache.commons.configuration.BaseConfiguration;
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -46,6 +57,176 @@ public class RuntimeConfigurationHandlerTest {
         verify(_config);
     }
 
+    /**
+     * Only the global and host environment values survive the read, globals win
+     */
+    @Test
+    public void read_environment() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context>");
+        xml.append("<hosts env=\"remote\"><host>remote.host.invalid</host></hosts>");
+        xml.append("<hosts env=\"local\"><host>localhost</host></hosts>");
+        xml.append("</context>");
+        xml.append("<property key=\"env_key\">");
+        xml.append("<value env=\"remote\">remote_value</value><value env=\"local\">local_value</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"global_key\">");
+        xml.append("<value env=\"local\">local_value</value><value env=\"*\">global_value</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"remote_key\">");
+        xml.append("<value env=\"remote\">remote_value</value>");
+        xml.append("</property>");
+        xml.append("</configuration>");
+
+        Map<String, String> props = _handler.read(new StringReader(xml.toString()));
+        assertEquals("local", _handler.getEnvironment());
+        assertEquals(2, props.size());
+        assertEquals("local_value", props.get("env_key"));
+        assertEquals("global_value", props.get("global_key"));
+        assertFalse(props.containsKey("remote_key"));
+    }
+
+    @Test
+    public void read_keepEnvironments() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context>");
+        xml.append("<hosts env=\"remote\"><host>remote.host.invalid</host></hosts>");
+        xml.append("<hosts env=\"local\"><host>localhost</host></hosts>");
+        xml.append("</context>");
+        xml.append("<property key=\"env_key\">");
+        xml.append("<value env=\"remote\" type=\"int\">1</value><value env=\"local\">local_value</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"global_key\">");
+        xml.append("<value env=\"local\">local_value</value><value env=\"*\">global_value</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"remote_key\">");
+        xml.append("<value env=\"remote\">remote_value</value>");
+        xml.append("</property>");
+        xml.append("</configuration>");
+
+        _handler.setKeepEnvironments(true);
+        Map<String, String> props = _handler.read(new StringReader(xml.toString()));
+        assertEquals(2, props.size());
+
+        EnvironmentTable table = _handler.getEnvironmentTable();
+        int local = table.getEnvironmentId("local"), remote = table.getEnvironmentId("remote");
+        assertEquals(-1, table.getEnvironmentId("missing"));
+        assertEquals("local_value", table.getString("env_key", local));
+        assertEquals("1", table.getString("env_key", remote));
+        assertEquals("global_value", table.getString("global_key", remote));
+        assertEquals(null, table.getString("remote_key", local));
+        assertEquals("remote_value", table.getString("remote_key", remote));
+        assertEquals(ValueType.INT, table.getTypes(remote).get("env_key"));
+        assertTrue(table.getTypes(local).isEmpty());
+        assertEquals(Arrays.asList("env_key", "global_key", "remote_key"), new ArrayList<>(table.getKeys()));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void read_noEnvironment() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"remote\"><host>remote.host.invalid</host></hosts></context>");
+        xml.append("</configuration>");
+
+        _handler.read(new StringReader(xml.toString()));
+    }
+
+    @Test
+    public void read_interpolate() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"local\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"outer\"><value env=\"*\">outer[${inner}]</value></property>");
+        xml.append("<property key=\"inner\"><value env=\"local\">inner[${home}]</value></property>");
+        xml.append("<property key=\"home\"><value env=\"*\">${sys:user.home}</value></property>");
+        xml.append("</configuration>");
+
+        _handler.setInterpolate(true);
+        Map<String, String> props = _handler.read(new StringReader(xml.toString()));
+        assertEquals("outer[inner[${sys:user.home}]]", props.get("outer"));
+        assertEquals("inner[${sys:user.home}]", props.get("inner"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void read_interpolateCycle() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"local\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"a\"><value env=\"*\">${b}</value></property>");
+        xml.append("<property key=\"b\"><value env=\"*\">${a}</value></property>");
+        xml.append("</configuration>");
+
+        _handler.setInterpolate(true);
+        _handler.read(new StringReader(xml.toString()));
+    }
+
+    @Test
+    public void read_typed() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"local\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"port\"><value env=\"*\" type=\"int\">8080</value></property>");
+        xml.append("<property key=\"timeout\"><value env=\"*\" type=\"duration\">30s</value></property>");
+        xml.append("<property key=\"name\"><value env=\"*\">name</value></property>");
+        xml.append("</configuration>");
+
+        Configuration config = new BaseConfiguration();
+        _handler.load(new StringReader(xml.toString()), config);
+        assertEquals(Integer.valueOf(8080), config.getProperty("port"));
+        assertEquals(Long.valueOf(30000), config.getProperty("timeout"));
+        assertEquals("name", config.getProperty("name"));
+        assertEquals(ValueType.INT, _handler.getTypes().get("port"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void read_typedInvalid() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"local\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"port\"><value env=\"*\" type=\"int\">eighty</value></property>");
+        xml.append("</configuration>");
+
+        _handler.read(new StringReader(xml.toString()));
+    }
+
+    /**
+     * A merge replaces the values of the host environment and keeps the other environments
+     */
+    @Test
+    public void merge() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context>");
+        xml.append("<hosts env=\"remote\"><host>remote.host.invalid</host></hosts>");
+        xml.append("<hosts env=\"local\"><host>localhost</host></hosts>");
+        xml.append("</context>");
+        xml.append("<property key=\"env_key\">");
+        xml.append("<value env=\"remote\">remote_value</value><value env=\"local\">local_value</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"remote_key\">");
+        xml.append("<value env=\"remote\">remote_value</value>");
+        xml.append("</property>");
+        xml.append("</configuration>");
+
+        Map<String, String> changes = new LinkedHashMap<>();
+        changes.put("env_key", "changed");
+        changes.put("remote_key", "local_value");
+        StringWriter out = new StringWriter();
+        _handler.merge(new StringReader(xml.toString()), out, "local", changes);
+
+        _handler.setKeepEnvironments(true);
+        Map<String, String> props = _handler.read(new StringReader(out.toString()));
+        assertEquals("changed", props.get("env_key"));
+        assertEquals("local_value", props.get("remote_key"));
+
+        EnvironmentTable table = _handler.getEnvironmentTable();
+        int remote = table.getEnvironmentId("remote");
+        assertEquals("remote_value", table.getString("env_key", remote));
+        assertEquals("remote_value", table.getString("remote_key", remote));
+    }
+
     @Test
     public void save() throws Exception {
         expect(_config.getKeys()).andReturn(
@@ -63,6 +244,53 @@ public class RuntimeConfigurationHandlerTest {
         verify(_config);
     }
 
+    /**
+     * The streamed output matches the indented format of previous releases
+     */
+    @Test
+    public void save_format() throws Exception {
+        BaseConfiguration config = new BaseConfiguration();
+        config.setDelimiterParsingDisabled(true);
+        config.addProperty("plain", "value");
+        config.addProperty("empty", "");
+        config.addProperty("comma", "a,b");
+        config.addProperty("markup", "<a b=\"1\">&</a>");
+        config.addProperty("cr", "line1\r\nline2");
+
+        StringWriter out = new StringWriter();
+        _handler.save(config, out);
+
+        RuntimeXmlSchema schema = RuntimeXmlSchema.instance();
+        String[] lines = {
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>",
+                "<configuration xmlns:xs=\"http://www.w3.org/2001/XMLSchema-instance\" xs:schemaLocation=\""
+                        + schema.getNamespace() + " " + schema.getSchema() + "\" xmlns=\"" + schema.getNamespace()
+                        + "\">",
+                "  <context>",
+                "    <hosts env=\"0\">",
+                "      <host>localhost</host>",
+                "    </hosts>",
+                "  </context>",
+                "  <property key=\"plain\">",
+                "    <value env=\"0\">value</value>",
+                "  </property>",
+                "  <property key=\"empty\">",
+                "    <value env=\"0\"/>",
+                "  </property>",
+                "  <property key=\"comma\">",
+                "    <value env=\"0\">a\\,b</value>",
+                "  </property>",
+                "  <property key=\"markup\">",
+                "    <value env=\"0\">&amp;lt;a b=&amp;quot;1&amp;quot;&amp;gt;&amp;amp;&amp;lt;/a&amp;gt;</value>",
+                "  </property>",
+                "  <property key=\"cr\">",
+                "    <value env=\"0\">line1&#13;",
+                "line2</value>",
+                "  </property>",
+                "</configuration>", "" };
+        assertEquals(StringUtils.join(lines, System.getProperty("line.separator")), out.toString());
+    }
+
     /**
      * @see #recordLoadExpectations()
      */
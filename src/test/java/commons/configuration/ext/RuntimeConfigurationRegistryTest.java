@@ -0,0 +1,148 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RuntimeConfigurationRegistryTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    RuntimeConfigurationRegistry _registry;
+
+    @Before
+    public void setUp() throws Exception {
+        _registry = new RuntimeConfigurationRegistry();
+    }
+
+    static File write(File file, String value) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context>");
+        xml.append("<hosts env=\"remote\"><host>remote.host.invalid</host></hosts>");
+        xml.append("<hosts env=\"local\"><host>localhost</host></hosts>");
+        xml.append("</context>");
+        xml.append("<property key=\"key\"><value env=\"local\">" + value + "</value></property>");
+        xml.append("<property key=\"port\"><value env=\"*\" type=\"int\">8080</value></property>");
+        xml.append("</configuration>");
+        Files.write(file.toPath(), xml.toString().getBytes("UTF-8"));
+        return file;
+    }
+
+    /**
+     * Consumers of the same content share one configuration, whatever url names the source
+     */
+    @Test
+    public void acquire() throws Exception {
+        File file = write(tmpFolder.newFile("config.xml"), "value");
+
+        SharedConfiguration first = _registry.acquire(file.toURI().toURL());
+        URL other = new URL(tmpFolder.getRoot().toURI().toURL(), "./x/../config.xml");
+        SharedConfiguration second = _registry.acquire(other);
+        assertSame(first, second);
+        assertEquals(2, _registry.getReferences(first));
+        assertEquals(1, _registry.size());
+        assertEquals("local", first.getEnvironment());
+        assertEquals("value", first.getString("key"));
+        assertEquals(8080, first.getInt("port"));
+        assertEquals("8080", first.getString("port"));
+
+        // changed content is parsed again, consumers of the previous content keep it
+        write(file, "changed");
+        SharedConfiguration changed = _registry.acquire(file.toURI().toURL());
+        assertNotSame(first, changed);
+        assertEquals("changed", changed.getString("key"));
+        assertEquals("value", first.getString("key"));
+        assertEquals(2, _registry.size());
+    }
+
+    /**
+     * Concurrent consumers of new content share the one parse
+     */
+    @Test
+    public void acquire_concurrent() throws Exception {
+        final URL url = write(tmpFolder.newFile("config.xml"), "value").toURI().toURL();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SharedConfiguration>> acquired = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                acquired.add(executor.submit(new Callable<SharedConfiguration>() {
+                    @Override
+                    public SharedConfiguration call() throws Exception {
+                        return _registry.acquire(url);
+                    }
+                }));
+            }
+            SharedConfiguration first = acquired.get(0).get();
+            for (Future<SharedConfiguration> config : acquired) {
+                assertSame(first, config.get());
+            }
+            assertEquals(8, _registry.getReferences(first));
+            assertEquals(1, _registry.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Content is decoded in the encoding of its xml declaration
+     */
+    @Test
+    public void acquire_encoding() throws Exception {
+        File file = tmpFolder.newFile("config.xml");
+        String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+                + "<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">"
+                + "<context><hosts env=\"local\"><host>localhost</host></hosts></context>"
+                + "<property key=\"key\"><value env=\"*\">\u00e9t\u00e9</value></property></configuration>";
+        Files.write(file.toPath(), xml.getBytes("ISO-8859-1"));
+
+        assertEquals("ISO-8859-1", RuntimeConfigurationRegistry.encoding(Files.readAllBytes(file.toPath())));
+        assertEquals("\u00e9t\u00e9", _registry.acquire(file.toURI().toURL()).getString("key"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void acquire_immutable() throws Exception {
+        File file = write(tmpFolder.newFile("config.xml"), "value");
+        _registry.acquire(file.toURI().toURL()).setProperty("key", "changed");
+    }
+
+    /**
+     * Released configurations are held weakly, reused while reachable and evicted once collected
+     */
+    @Test
+    public void release() throws Exception {
+        URL url = write(tmpFolder.newFile("config.xml"), "value").toURI().toURL();
+
+        SharedConfiguration config = _registry.acquire(url);
+        assertTrue(_registry.release(config));
+        assertFalse(_registry.release(config));
+        assertEquals(0, _registry.getReferences(config));
+        assertSame(config, _registry.acquire(url));
+        assertTrue(_registry.release(config));
+
+        config = null;
+        for (int i = 0; i < 50 && _registry.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, _registry.size());
+    }
+}
@@ -5,15 +5,31 @@ import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -93,6 +109,437 @@ public class RuntimeConfigurationTest {
         assertEquals("value", configIn.getProperty("key"));
     }
 
+    /**
+     * Json and yaml sources are loaded by their extension, or sniffed when the extension is unknown
+     */
+    @Test
+    public void load_formats() throws Exception {
+        File json = tmpFolder.newFile("config.json");
+        Files.write(json.toPath(), JsonConfigurationHandlerTest.json().getBytes("UTF-8"));
+        RuntimeConfiguration config = new RuntimeConfiguration(json);
+        assertEquals(RuntimeFormat.JSON, config.getFormat());
+        assertEquals("local_value", config.getString("env_key"));
+
+        File yaml = tmpFolder.newFile("config.conf");
+        Files.write(yaml.toPath(), YamlConfigurationHandlerTest.yaml().getBytes("UTF-8"));
+        config = new RuntimeConfiguration();
+        config.load(yaml);
+        assertEquals(8080, config.getInt("port", 0));
+        assertEquals(30, config.getDuration("timeout", TimeUnit.SECONDS));
+
+        // saved in the format of the file name
+        File out = tmpFolder.newFile("out.yaml");
+        config.setFile(out);
+        config.save();
+        assertEquals(RuntimeFormat.YAML, RuntimeFormat.sniff(new BufferedReader(new FileReader(out))));
+    }
+
+    /**
+     * Bulk adds split like addProperty but fire a single event
+     */
+    @Test
+    public void addProperties() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        final List<ConfigurationEvent> events = new ArrayList<>();
+        config.addConfigurationListener(new ConfigurationListener() {
+            @Override
+            public void configurationChanged(ConfigurationEvent event) {
+                events.add(event);
+            }
+        });
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("plain", " value ");
+        properties.put("list", "a, b");
+        properties.put("escaped", "a\\,b");
+        properties.put("port", 8080);
+        config.addProperties(properties);
+
+        assertEquals("value", config.getProperty("plain"));
+        assertEquals(Arrays.asList("a", "b"), config.getProperty("list"));
+        assertEquals("a,b", config.getProperty("escaped"));
+        assertEquals(8080, config.getInt("port"));
+
+        assertEquals(1, events.size());
+        assertEquals(RuntimeConfiguration.EVENT_PROPERTIES_ADDED, events.get(0).getType());
+        assertEquals(properties, events.get(0).getPropertyValue());
+    }
+
+    @Test
+    public void typed() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.addProperty("port", 8080);
+        config.addProperty("timeout", 30000L);
+        config.addProperty("untyped", "2m");
+        config.addProperty("size", "64kb");
+
+        assertEquals(8080, config.getInt("port", 0));
+        assertEquals(30, config.getDuration("timeout", TimeUnit.SECONDS));
+        assertEquals(120000, config.getDuration("untyped", TimeUnit.MILLISECONDS));
+        assertEquals(65536, config.getByteSize("size"));
+        assertEquals(5, config.getDuration("missing", TimeUnit.SECONDS, 5));
+    }
+
+    /**
+     * Typed values are still read and saved as written in the source
+     */
+    @Test
+    public void typed_getString() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"local\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"timeout\"><value env=\"*\" type=\"duration\">30s</value></property>");
+        xml.append("<property key=\"enabled\"><value env=\"*\" type=\"boolean\">yes</value></property>");
+        xml.append("</configuration>");
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.load(new StringReader(xml.toString()));
+
+        assertEquals("30s", config.getString("timeout"));
+        assertEquals("yes", config.getString("enabled", "no"));
+        assertEquals(30, config.getDuration("timeout", TimeUnit.SECONDS));
+        assertTrue(config.getBoolean("enabled"));
+
+        StringWriter saved = new StringWriter();
+        config.save(saved);
+        assertTrue(saved.toString().contains("type=\"duration\">30s<"));
+        RuntimeConfiguration reloaded = new RuntimeConfiguration();
+        reloaded.load(new StringReader(saved.toString()));
+        assertEquals("30s", reloaded.getString("timeout"));
+        assertEquals(30000L, reloaded.getProperty("timeout"));
+        assertEquals(Boolean.TRUE, reloaded.getProperty("enabled"));
+
+        // a changed value is no longer the source text
+        config.setProperty("timeout", 5000L);
+        config.save(saved = new StringWriter());
+        assertTrue(saved.toString().contains(">5000<"));
+    }
+
+    @Test(expected = ConversionException.class)
+    public void typed_getStringChanged() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.addProperty("port", 8080);
+        config.getString("port");
+    }
+
+    /**
+     * A refresh applies only the differences and reports them through one event
+     */
+    @Test
+    public void refresh() throws Exception {
+        RuntimeConfiguration configOut = new RuntimeConfiguration();
+        configOut.addProperty("same", "value");
+        configOut.addProperty("changed", "before");
+        configOut.addProperty("removed", "value");
+        File tmpFile = tmpFolder.newFile();
+        configOut.save(tmpFile);
+
+        RuntimeConfiguration configIn = new RuntimeConfiguration(tmpFile);
+        final List<ConfigurationEvent> events = new ArrayList<>();
+        configIn.addConfigurationListener(new ConfigurationListener() {
+            @Override
+            public void configurationChanged(ConfigurationEvent event) {
+                events.add(event);
+            }
+        });
+
+        configOut.setProperty("changed", "after");
+        configOut.clearProperty("removed");
+        configOut.addProperty("added", "value");
+        configOut.save(tmpFile);
+        configIn.refresh();
+
+        assertEquals("value", configIn.getProperty("same"));
+        assertEquals("after", configIn.getProperty("changed"));
+        assertEquals("value", configIn.getProperty("added"));
+        assertFalse(configIn.containsKey("removed"));
+
+        // reload before, diff, reload after
+        assertEquals(3, events.size());
+        ConfigurationEvent event = events.get(1);
+        assertEquals(RuntimeConfiguration.EVENT_PROPERTIES_CHANGED, event.getType());
+        PropertiesDiff diff = (PropertiesDiff) event.getPropertyValue();
+        assertEquals(Collections.singleton("added"), diff.getAdded().keySet());
+        assertEquals(Collections.singleton("changed"), diff.getChanged().keySet());
+        assertEquals(Collections.singleton("removed"), diff.getRemoved().keySet());
+    }
+
+    /**
+     * Switching environments applies only the differences, later reloads keep the selected environment
+     */
+    @Test
+    public void setEnvironment() throws Exception {
+        File tmpFile = tmpFolder.newFile();
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context>");
+        xml.append("<hosts env=\"remote\"><host>remote.host.invalid</host></hosts>");
+        xml.append("<hosts env=\"local\"><host>localhost</host></hosts>");
+        xml.append("</context>");
+        xml.append("<property key=\"port\">");
+        xml.append("<value env=\"local\" type=\"int\">8080</value><value env=\"remote\" type=\"int\">80</value>");
+        xml.append("</property>");
+        xml.append("<property key=\"name\"><value env=\"*\">name</value></property>");
+        xml.append("<property key=\"remote_key\"><value env=\"remote\">remote_value</value></property>");
+        xml.append("</configuration>");
+        Files.write(tmpFile.toPath(), xml.toString().getBytes("UTF-8"));
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setKeepEnvironments(true);
+        config.load(tmpFile);
+        assertEquals("local", config.getEnvironment());
+        assertEquals(8080, config.getInt("port", 0));
+        assertEquals("80", config.getString("port", config.getEnvironmentId("remote")));
+        assertFalse(config.containsKey("remote_key"));
+
+        final List<ConfigurationEvent> events = new ArrayList<>();
+        config.addConfigurationListener(new ConfigurationListener() {
+            @Override
+            public void configurationChanged(ConfigurationEvent event) {
+                events.add(event);
+            }
+        });
+        config.setEnvironment("remote");
+        assertEquals("remote", config.getEnvironment());
+        assertEquals(80, config.getInt("port", 0));
+        assertEquals("80", config.getString("port"));
+        assertEquals("name", config.getString("name"));
+        assertEquals("remote_value", config.getString("remote_key"));
+
+        assertEquals(1, events.size());
+        PropertiesDiff diff = (PropertiesDiff) events.get(0).getPropertyValue();
+        assertEquals(Collections.singleton("remote_key"), diff.getAdded().keySet());
+        assertEquals(Collections.singleton("port"), diff.getChanged().keySet());
+
+        config.setFile(tmpFile);
+        config.refresh();
+        assertEquals(80, config.getInt("port", 0));
+
+        config.setEnvironment(null);
+        assertEquals("local", config.getEnvironment());
+        assertEquals(8080, config.getInt("port", 0));
+        assertFalse(config.containsKey("remote_key"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void setEnvironment_unknown() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setKeepEnvironments(true);
+        config.load(new StringReader("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">"
+                + "<context><hosts env=\"local\"><host>localhost</host></hosts></context></configuration>"));
+        config.setEnvironment("missing");
+    }
+
+    static File journalSource(File file) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">\n");
+        xml.append("  <context>\n");
+        xml.append("    <hosts env=\"remote\"><host>remote.host.invalid</host></hosts>\n");
+        xml.append("    <hosts env=\"local\"><host>localhost</host></hosts>\n");
+        xml.append("  </context>\n");
+        xml.append("  <property key=\"port\">\n");
+        xml.append("    <value env=\"local\" type=\"int\">8080</value>\n");
+        xml.append("    <value env=\"remote\" type=\"int\">80</value>\n");
+        xml.append("  </property>\n");
+        xml.append("  <property key=\"list\"><value env=\"*\">a</value></property>\n");
+        xml.append("  <property key=\"gone\"><value env=\"local\">value</value></property>\n");
+        xml.append("</configuration>\n");
+        Files.write(file.toPath(), xml.toString().getBytes("UTF-8"));
+        return file;
+    }
+
+    /**
+     * Changes are journaled and replayed on top of the source by the next load
+     */
+    @Test
+    public void journal() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+        File journal = new File(tmpFolder.getRoot(), "config.journal");
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setJournalFile(journal);
+        config.load(source);
+        config.setProperty("port", "9090");
+        config.addProperty("list", "b,c\\,d");
+        config.clearProperty("gone");
+        config.setProperty("added", "value");
+        config.setJournalFile(null);
+
+        for (RuntimeConfiguration reloaded : Arrays.asList(new RuntimeConfiguration(),
+                new ConcurrentRuntimeConfiguration())) {
+            reloaded.setJournalFile(journal);
+            reloaded.load(source);
+            assertEquals(9090, reloaded.getInt("port"));
+            assertEquals(Arrays.asList("a", "b", "c,d"), reloaded.getList("list"));
+            assertFalse(reloaded.containsKey("gone"));
+            assertEquals("value", reloaded.getString("added"));
+            reloaded.setJournalFile(null);
+        }
+    }
+
+    /**
+     * Compaction rewrites the changed values of the current environment and empties the journal
+     */
+    @Test
+    public void compactJournal() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+        File journal = new File(tmpFolder.getRoot(), "config.journal");
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setJournalFile(journal);
+        config.load(source);
+        config.setProperty("port", "9090");
+        config.addProperty("list", "b");
+        config.clearProperty("gone");
+        config.compactJournal();
+        config.setJournalFile(null);
+        assertEquals(8, journal.length());
+
+        RuntimeConfiguration compacted = new RuntimeConfiguration();
+        compacted.setKeepEnvironments(true);
+        compacted.load(source);
+        assertEquals(9090, compacted.getInt("port"));
+        assertEquals(Arrays.asList("a", "b"), compacted.getList("list"));
+        assertFalse(compacted.containsKey("gone"));
+        assertEquals("80", compacted.getString("port", compacted.getEnvironmentId("remote")));
+    }
+
+    /**
+     * A compaction that fails to replace the journal after replacing the source loses no change
+     */
+    @Test
+    public void compactJournal_failure() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+        File journal = new File(tmpFolder.getRoot(), "config.journal");
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setJournalFile(journal);
+        config.load(source);
+        config.setProperty("port", "9090");
+        config.clearProperty("gone");
+
+        // the journal cannot be rewritten
+        File rewrite = tmpFolder.newFolder("config.journal.rewrite");
+        try {
+            config.compactJournal();
+            fail("compaction failure expected");
+        } catch (ConfigurationException e) {
+            assertTrue(journal.length() > 8);
+        }
+        config.setProperty("list", "z");
+        config.setJournalFile(null);
+
+        RuntimeConfiguration reloaded = new RuntimeConfiguration();
+        reloaded.setJournalFile(journal);
+        reloaded.load(source);
+        assertEquals(9090, reloaded.getInt("port"));
+        assertEquals("z", reloaded.getString("list"));
+        assertFalse(reloaded.containsKey("gone"));
+
+        assertTrue(rewrite.delete());
+        reloaded.compactJournal();
+        reloaded.setJournalFile(null);
+        assertEquals(8, journal.length());
+        RuntimeConfiguration compacted = new RuntimeConfiguration(source);
+        assertEquals(9090, compacted.getInt("port"));
+        assertEquals("z", compacted.getString("list"));
+        assertFalse(compacted.containsKey("gone"));
+    }
+
+    /**
+     * Changes are replayed and compacted only in the environment they were made in
+     */
+    @Test
+    public void journal_environment() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+        File journal = new File(tmpFolder.getRoot(), "config.journal");
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setJournalFile(journal);
+        config.setKeepEnvironments(true);
+        config.load(source);
+        config.setEnvironment("remote");
+        config.setProperty("port", "7070");
+        config.setJournalFile(null);
+
+        RuntimeConfiguration reloaded = new RuntimeConfiguration();
+        reloaded.setJournalFile(journal);
+        reloaded.setKeepEnvironments(true);
+        reloaded.load(source);
+        assertEquals(8080, reloaded.getInt("port"));
+        reloaded.setProperty("list", "z");
+        reloaded.compactJournal();
+        assertTrue(journal.length() > 8);
+
+        reloaded.setEnvironment("remote");
+        assertEquals(7070, reloaded.getInt("port"));
+        assertEquals("a", reloaded.getString("list"));
+        reloaded.setJournalFile(null);
+
+        // only the change of the local environment is in the source
+        RuntimeConfiguration compacted = new RuntimeConfiguration();
+        compacted.setKeepEnvironments(true);
+        compacted.load(source);
+        assertEquals("z", compacted.getString("list"));
+        assertEquals("a", compacted.getString("list", compacted.getEnvironmentId("remote")));
+        assertEquals("80", compacted.getString("port", compacted.getEnvironmentId("remote")));
+    }
+
+    /**
+     * Compaction starts in the background once the threshold is reached
+     */
+    @Test
+    public void compactJournal_threshold() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+        File journal = new File(tmpFolder.getRoot(), "config.journal");
+
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.setJournalFile(journal);
+        config.setJournalCompactionThreshold(2);
+        config.load(source);
+        config.setProperty("port", "9090");
+        config.setProperty("list", "z");
+
+        for (int i = 0; i < 100 && journal.length() > 8; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(8, journal.length());
+        config.setJournalFile(null);
+
+        RuntimeConfiguration compacted = new RuntimeConfiguration(source);
+        assertEquals(9090, compacted.getInt("port"));
+        assertEquals("z", compacted.getString("list"));
+    }
+
+    /**
+     * Merging saves replace only the changed values of the current environment
+     */
+    @Test
+    public void save_merge() throws Exception {
+        File source = journalSource(tmpFolder.newFile("config.xml"));
+
+        RuntimeConfiguration config = new RuntimeConfiguration(source);
+        config.setMergeOnSave(true);
+        config.setProperty("port", "9090");
+        config.addProperty("list", "b");
+        config.clearProperty("gone");
+        config.setProperty("added", "x,y");
+
+        StringWriter merged = new StringWriter();
+        config.save(merged);
+        assertTrue(merged.toString().contains("remote.host.invalid"));
+        config.save();
+
+        RuntimeConfiguration saved = new RuntimeConfiguration();
+        saved.setKeepEnvironments(true);
+        saved.load(source);
+        assertEquals(merged.toString(), new String(Files.readAllBytes(source.toPath())));
+        assertEquals(9090, saved.getInt("port"));
+        assertEquals(Arrays.asList("a", "b"), saved.getList("list"));
+        assertFalse(saved.containsKey("gone"));
+        assertEquals(Arrays.asList("x", "y"), saved.getList("added"));
+        assertEquals("80", saved.getString("port", saved.getEnvironmentId("remote")));
+    }
+
     void printFile(File file) throws Exception {
         BufferedReader reader = null;
         try {
@@ -0,0 +1,47 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class RuntimeFormatTest {
+    @Test
+    public void forFileName() throws Exception {
+        assertEquals(RuntimeFormat.XML, RuntimeFormat.forFileName("/etc/app/config.xml"));
+        assertEquals(RuntimeFormat.JSON, RuntimeFormat.forFileName("config.JSON"));
+        assertEquals(RuntimeFormat.YAML, RuntimeFormat.forFileName("config.yml"));
+        assertEquals(RuntimeFormat.YAML, RuntimeFormat.forFileName("config.yaml"));
+        assertNull(RuntimeFormat.forFileName("config.properties"));
+        assertNull(RuntimeFormat.forFileName("/etc/app.d/config"));
+        assertNull(RuntimeFormat.forFileName(null));
+    }
+
+    @Test
+    public void sniff() throws Exception {
+        assertEquals(RuntimeFormat.XML, sniff("<?xml version=\"1.0\"?><configuration/>"));
+        assertEquals(RuntimeFormat.JSON, sniff("\n  { \"context\": {} }"));
+        assertEquals(RuntimeFormat.YAML, sniff("# comment\ncontext:\n"));
+        assertEquals(RuntimeFormat.YAML, sniff("---\ncontext:\n"));
+        assertEquals(RuntimeFormat.YAML, sniff("context:\n"));
+        assertEquals(RuntimeFormat.XML, sniff("mock data"));
+        assertEquals(RuntimeFormat.XML, sniff(""));
+    }
+
+    /**
+     * The source is reset after sniffing
+     */
+    @Test
+    public void sniff_reset() throws Exception {
+        BufferedReader source = new BufferedReader(new StringReader("{}"));
+        RuntimeFormat.sniff(source);
+        assertEquals("{}", source.readLine());
+    }
+
+    static RuntimeFormat sniff(String source) throws Exception {
+        return RuntimeFormat.sniff(new BufferedReader(new StringReader(source)));
+    }
+}
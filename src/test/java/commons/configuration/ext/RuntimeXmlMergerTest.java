@@ -0,0 +1,105 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RuntimeXmlMergerTest {
+    static final String XML = "<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">\n"
+            + "  <!-- hosts -->\n"
+            + "  <context>\n"
+            + "    <hosts env=\"local\"><host>localhost</host></hosts>\n"
+            + "    <hosts env=\"prod\"><host>prod.invalid</host></hosts>\n"
+            + "  </context>\n"
+            + "  <property key=\"name\">\n"
+            + "    <value env=\"*\">app</value>\n"
+            + "  </property>\n"
+            + "  <property key=\"url\">\n"
+            + "    <value env=\"local\">http://localhost</value>\n"
+            + "    <value env=\"prod\">https://prod.invalid</value>\n"
+            + "  </property>\n"
+            + "  <property key=\"port\">\n"
+            + "    <value env=\"prod\" type=\"int\">80</value>\n"
+            + "  </property>\n"
+            + "  <property key=\"local_only\">\n"
+            + "    <value env=\"local\">x</value>\n"
+            + "  </property>\n"
+            + "</configuration>\n";
+
+    static String merge(Map<String, String> changes) throws Exception {
+        StringWriter out = new StringWriter();
+        RuntimeXmlMerger.merge(new StringReader(XML), out, "local", changes);
+        return out.toString();
+    }
+
+    static EnvironmentTable read(String xml) throws Exception {
+        RuntimeConfigurationHandler handler = new RuntimeConfigurationHandler();
+        handler.setKeepEnvironments(true);
+        handler.read(new StringReader(xml));
+        return handler.getEnvironmentTable();
+    }
+
+    @Test
+    public void merge() throws Exception {
+        Map<String, String> changes = new LinkedHashMap<>();
+        changes.put("name", "renamed");
+        changes.put("url", "http://127.0.0.1");
+        changes.put("port", "8080");
+        changes.put("local_only", null);
+        changes.put("added", "a & b");
+        String merged = merge(changes);
+
+        assertTrue(merged, merged.contains("<!-- hosts -->"));
+        assertFalse(merged, merged.contains("local_only"));
+
+        EnvironmentTable table = read(merged);
+        int local = table.getEnvironmentId("local");
+        assertEquals("renamed", table.getString("name", local));
+        assertEquals("http://127.0.0.1", table.getString("url", local));
+        assertEquals("8080", table.getString("port", local));
+        assertEquals("a & b", table.getString("added", local));
+        assertEquals(null, table.getString("local_only", local));
+
+        // the other environment is untouched, the global value is kept for it
+        int prod = table.getEnvironmentId("prod");
+        assertEquals("app", table.getString("name", prod));
+        assertEquals("https://prod.invalid", table.getString("url", prod));
+        assertEquals("80", table.getString("port", prod));
+        assertEquals(null, table.getString("added", prod));
+    }
+
+    @Test
+    public void merge_global() throws Exception {
+        String merged = merge(Collections.singletonMap("name", "renamed"));
+        assertFalse(merged, merged.contains("env=\"*\""));
+        assertTrue(merged, merged.contains("<value env=\"prod\">app</value>"));
+
+        EnvironmentTable table = read(merged);
+        assertEquals("renamed", table.getString("name", table.getEnvironmentId("local")));
+        assertEquals("app", table.getString("name", table.getEnvironmentId("prod")));
+    }
+
+    @Test
+    public void merge_globalRemoved() throws Exception {
+        String merged = merge(Collections.<String, String> singletonMap("name", null));
+        assertFalse(merged, merged.contains("env=\"*\""));
+
+        EnvironmentTable table = read(merged);
+        assertEquals(null, table.getString("name", table.getEnvironmentId("local")));
+        assertEquals("app", table.getString("name", table.getEnvironmentId("prod")));
+    }
+
+    @Test
+    public void merge_unchanged() throws Exception {
+        assertEquals(XML, merge(new LinkedHashMap<String, String>()).replace(System.getProperty("line.separator"),
+                "\n"));
+    }
+}
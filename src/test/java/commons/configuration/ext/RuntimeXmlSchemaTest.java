@@ -0,0 +1,22 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class RuntimeXmlSchemaTest {
+    @Test
+    public void compileSchema_cached() throws Exception {
+        RuntimeXmlSchema schema = RuntimeXmlSchema.instance();
+        assertNotNull(schema.compileSchema());
+        assertSame(schema.compileSchema(), schema.compileSchema());
+    }
+
+    @Test
+    public void getParserPool_cached() throws Exception {
+        RuntimeXmlSchema schema = RuntimeXmlSchema.instance();
+        assertNotNull(schema.getParserPool());
+        assertSame(schema.getParserPool(), schema.getParserPool());
+    }
+}
@@ -0,0 +1,50 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.xml.parsers.SAXParser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SAXParserPoolTest {
+    SAXParserPool _pool;
+
+    @Before
+    public void setUp() throws Exception {
+        _pool = new SAXParserPool(RuntimeXmlSchema.instance().compileSchema(), 1);
+    }
+
+    @Test
+    public void acquire() throws Exception {
+        assertNotNull(_pool.acquire());
+        assertEquals(0, _pool.idle());
+    }
+
+    @Test
+    public void release_reuse() throws Exception {
+        SAXParser parser = _pool.acquire();
+        _pool.release(parser);
+        assertEquals(1, _pool.idle());
+        assertSame(parser, _pool.acquire());
+    }
+
+    @Test
+    public void release_bounded() throws Exception {
+        SAXParser first = _pool.acquire(), second = _pool.acquire();
+        assertNotSame(first, second);
+
+        _pool.release(first);
+        _pool.release(second);
+        _pool.release(null);
+        assertEquals(1, _pool.idle());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_invalid() throws Exception {
+        new SAXParserPool(null, 0);
+    }
+}
@@ -0,0 +1,157 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import commons.configuration.ext.matcher.HostMatcher;
+
+public class SnapshotConfigurationHandlerTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    int                          _reads;
+    File                         _directory;
+    SnapshotConfigurationHandler _handler;
+
+    @Before
+    public void setUp() throws Exception {
+        _reads = 0;
+        _directory = new File(tmpFolder.getRoot(), "snapshots");
+        _handler = new SnapshotConfigurationHandler(new RuntimeConfigurationHandler() {
+            @Override
+            public synchronized Map<String, String> read(Reader source) throws ConfigurationException {
+                _reads++;
+                return super.read(source);
+            }
+        }, _directory);
+    }
+
+    Configuration load(String value) throws Exception {
+        Configuration config = new BaseConfiguration();
+        _handler.load(new StringReader(xml(value)), config);
+        return config;
+    }
+
+    @Test
+    public void load_snapshot() throws Exception {
+        assertEquals("value", load("value").getString("key"));
+        assertEquals(1, _reads);
+        assertEquals(1, _directory.list().length);
+
+        // unchanged content is served from the snapshot
+        assertEquals("value", load("value").getString("key"));
+        assertEquals(1, _reads);
+    }
+
+    @Test
+    public void load_typed() throws Exception {
+        String xml = xml("value").replace("<property key=\"key\">", "<property key=\"port\"><value env=\"0\" "
+                + "type=\"int\">8080</value></property><property key=\"key\">");
+        for (int i = 0; i < 2; i++) {
+            Configuration config = new BaseConfiguration();
+            _handler.load(new StringReader(xml), config);
+            assertEquals(Integer.valueOf(8080), config.getProperty("port"));
+        }
+        assertEquals(1, _reads);
+    }
+
+    @Test
+    public void load_stale() throws Exception {
+        load("value");
+        assertEquals("changed", load("changed").getString("key"));
+        assertEquals(2, _reads);
+    }
+
+    @Test
+    public void load_corrupt() throws Exception {
+        load("value");
+
+        File snapshot = _directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.seek(raf.length() / 2);
+            raf.write(~raf.read());
+        }
+
+        // corrupt snapshot is rebuilt
+        assertEquals("value", load("value").getString("key"));
+        assertEquals(2, _reads);
+        assertEquals("value", load("value").getString("key"));
+        assertEquals(2, _reads);
+    }
+
+    @Test
+    public void load_truncated() throws Exception {
+        load("value");
+
+        File snapshot = _directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        assertEquals("value", load("value").getString("key"));
+        assertEquals(2, _reads);
+        assertTrue(snapshot.length() > 0);
+    }
+
+    @Test
+    public void load_environment() throws Exception {
+        String xml = xml("value").replace("<context>", "<context><hosts env=\"remote\"><host>remote.host.invalid</host>"
+                + "</hosts>").replace("<property key=\"key\">", "<property key=\"key\"><value env=\"remote\">remote"
+                + "</value>");
+        Configuration config = new BaseConfiguration();
+        _handler.load(new StringReader(xml), config);
+        assertEquals("value", config.getString("key"));
+        assertEquals("0", _handler.getEnvironment());
+
+        // the same content resolves to another environment with other matchers, the snapshot is not served
+        HostMatcher remote = new HostMatcher() {
+            @Override
+            public boolean matches(String host) {
+                return "remote.host.invalid".equals(host);
+            }
+        };
+        SnapshotConfigurationHandler handler = new SnapshotConfigurationHandler(new RuntimeConfigurationHandler(
+                Collections.singleton(remote)), _directory);
+        config = new BaseConfiguration();
+        handler.load(new StringReader(xml), config);
+        assertEquals("remote", config.getString("key"));
+        assertEquals("remote", handler.getEnvironment());
+    }
+
+    @Test
+    public void load_replaced() throws Exception {
+        _handler = new SnapshotConfigurationHandler(new RuntimeConfigurationHandler(), _directory, "file:/config.xml");
+        load("value");
+        File snapshot = _directory.listFiles()[0];
+
+        // the snapshot of the changed content replaces the stale one
+        assertEquals("changed", load("changed").getString("key"));
+        assertEquals(1, _directory.list().length);
+        assertEquals(snapshot, _directory.listFiles()[0]);
+        assertEquals("changed", load("changed").getString("key"));
+    }
+
+    String xml(String value) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"0\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"key\"><value env=\"0\">").append(value).append("</value></property>");
+        xml.append("</configuration>");
+        return xml.toString();
+    }
+}
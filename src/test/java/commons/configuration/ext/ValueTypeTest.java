@@ -0,0 +1,61 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+public class ValueTypeTest {
+    @Test
+    public void forName() throws Exception {
+        assertEquals(ValueType.DURATION, ValueType.forName("duration"));
+        assertNull(ValueType.forName(null));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void forName_unknown() throws Exception {
+        ValueType.forName("date");
+    }
+
+    @Test
+    public void parse() throws Exception {
+        assertEquals(42, ValueType.INT.parse("42"));
+        assertEquals(42L, ValueType.LONG.parse("42"));
+        assertEquals(0.5, ValueType.DOUBLE.parse("0.5"));
+        assertEquals(Boolean.TRUE, ValueType.BOOLEAN.parse("true"));
+    }
+
+    @Test
+    public void parse_duration() throws Exception {
+        assertEquals(250L, ValueType.DURATION.parse("250"));
+        assertEquals(250L, ValueType.DURATION.parse("250ms"));
+        assertEquals(30000L, ValueType.DURATION.parse("30s"));
+        assertEquals(120000L, ValueType.DURATION.parse("2 m"));
+        assertEquals(3600000L, ValueType.DURATION.parse("1H"));
+        assertEquals(86400000L, ValueType.DURATION.parse("1d"));
+    }
+
+    @Test
+    public void parse_bytes() throws Exception {
+        assertEquals(512L, ValueType.BYTES.parse("512"));
+        assertEquals(2048L, ValueType.BYTES.parse("2k"));
+        assertEquals(1048576L, ValueType.BYTES.parse("1MB"));
+        assertEquals(1L << 30, ValueType.BYTES.parse("1gb"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void parse_invalid() throws Exception {
+        ValueType.INT.parse("eighty");
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void parse_invalidUnit() throws Exception {
+        ValueType.DURATION.parse("5 fortnights");
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void parse_overflow() throws Exception {
+        ValueType.BYTES.parse("9223372036854775807tb");
+    }
+}
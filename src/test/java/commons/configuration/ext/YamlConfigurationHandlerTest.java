@@ -0,0 +1,110 @@
+package commons.configuration.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class YamlConfigurationHandlerTest {
+    YamlConfigurationHandler _handler;
+
+    @Before
+    public void setUp() throws Exception {
+        _handler = new YamlConfigurationHandler();
+    }
+
+    static String yaml() {
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("# runtime configuration\n");
+        yaml.append("---\n");
+        yaml.append("context:\n");
+        yaml.append("  remote:\n");
+        yaml.append("  - remote.host.invalid\n");
+        yaml.append("  local: [localhost, 127.0.0.1]\n");
+        yaml.append("\n");
+        yaml.append("properties:\n");
+        yaml.append("  env_key:\n");
+        yaml.append("    remote: remote_value\n");
+        yaml.append("    local: local_value # trailing comment\n");
+        yaml.append("  global_key:\n");
+        yaml.append("    local: local_value\n");
+        yaml.append("    \"*\": global_value\n");
+        yaml.append("  remote_key:\n");
+        yaml.append("    remote: remote_value\n");
+        yaml.append("  url: http://localhost:8080/#fragment\n");
+        yaml.append("  'quoted key': \"tab\\there\"\n");
+        yaml.append("  single: 'it''s'\n");
+        yaml.append("  empty_key:\n");
+        yaml.append("  port:\n");
+        yaml.append("    local: { value: 8080, type: int }\n");
+        yaml.append("  timeout:\n");
+        yaml.append("    \"*\":\n");
+        yaml.append("      type: duration\n");
+        yaml.append("      value: 30s\n");
+        return yaml.toString();
+    }
+
+    @Test
+    public void read() throws Exception {
+        Map<String, String> props = _handler.read(new StringReader(yaml()));
+        assertEquals("local", _handler.getEnvironment());
+        assertEquals(8, props.size());
+        assertEquals("local_value", props.get("env_key"));
+        assertEquals("global_value", props.get("global_key"));
+        assertEquals("http://localhost:8080/#fragment", props.get("url"));
+        assertEquals("tab\there", props.get("quoted key"));
+        assertEquals("it's", props.get("single"));
+        assertEquals("", props.get("empty_key"));
+        assertEquals("8080", props.get("port"));
+        assertEquals("30s", props.get("timeout"));
+        assertFalse(props.containsKey("remote_key"));
+        assertEquals(ValueType.INT, _handler.getTypes().get("port"));
+        assertEquals(ValueType.DURATION, _handler.getTypes().get("timeout"));
+    }
+
+    @Test
+    public void read_badIndentation() throws Exception {
+        try {
+            _handler.read(new StringReader("context:\n  local:\n    - localhost\n   - 127.0.0.1\n"));
+            throw new AssertionError("expected a parse error");
+        } catch (ConfigurationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("lineNumber: 4"));
+        }
+    }
+
+    /**
+     * * is an alias in yaml, the global environment must be quoted
+     */
+    @Test(expected = ConfigurationException.class)
+    public void read_unquotedGlobal() throws Exception {
+        _handler.read(new StringReader("context:\n  local: localhost\nproperties:\n  key:\n    *: value\n"));
+    }
+
+    /**
+     * A saved configuration reads back the same
+     */
+    @Test
+    public void save() throws Exception {
+        Configuration config = new BaseConfiguration();
+        config.addProperty("key", "value");
+        config.addProperty("quoted", "\"a\\b\" # not a comment");
+        config.addProperty("empty", "");
+
+        StringWriter out = new StringWriter();
+        _handler.save(config, out);
+
+        Map<String, String> props = _handler.read(new StringReader(out.toString()));
+        assertEquals("value", props.get("key"));
+        assertEquals("\"a\\b\" # not a comment", props.get("quoted"));
+        assertEquals("", props.get("empty"));
+    }
+}
@@ -8,5 +8,6 @@ import commons.configuration.ext.util.MachineUtilsTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({ commons.configuration.ext._Suite.class, commons.configuration.ext.matcher._Suite.class,
+        commons.configuration.ext.metrics._Suite.class, commons.configuration.ext.reloading._Suite.class,
         commons.configuration.ext.spring._Suite.class, MachineUtilsTest.class })
 public class _All {}
@@ -6,5 +6,10 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ ClassPathUtilsTest.class, RuntimeConfigurationHandlerTest.class, VersionTest.class,
-        RuntimeConfigurationTest.class, })
+        RuntimeConfigurationTest.class, RuntimeXmlSchemaTest.class, SAXParserPoolTest.class,
+        SnapshotConfigurationHandlerTest.class, ConcurrentRuntimeConfigurationTest.class,
+        PropertiesDiffTest.class, FlatCompositeConfigurationTest.class,
+        PropertyInterpolatorTest.class, ValueTypeTest.class, JsonConfigurationHandlerTest.class,
+        YamlConfigurationHandlerTest.class, RuntimeFormatTest.class, PropertyJournalTest.class,
+        RuntimeXmlMergerTest.class, RuntimeConfigurationRegistryTest.class, })
 public class _Suite {}
@@ -0,0 +1,63 @@
+package commons.configuration.ext.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CidrHostMatcherTest {
+    HostMatcher _matcher = new CidrHostMatcher(Arrays.asList(InetAddress.getByName("10.20.30.40"),
+            InetAddress.getByName("fd00:1234::42")));
+
+    public CidrHostMatcherTest() throws Exception {}
+
+    @Test
+    public void match() throws Exception {
+        assertFalse(_matcher.matches(null));
+        assertFalse(_matcher.matches(""));
+        assertFalse(_matcher.matches("10.20.30.40"));
+        assertFalse(_matcher.matches("/10.20.+/"));
+        assertFalse(_matcher.matches("host-a-b.example.com"));
+        assertFalse(_matcher.matches("10.20.0.0/33"));
+
+        // cidr
+        assertTrue(_matcher.matches("10.20.0.0/16"));
+        assertTrue(_matcher.matches("10.20.30.40/32"));
+        assertTrue(_matcher.matches("0.0.0.0/0"));
+        assertFalse(_matcher.matches("10.21.0.0/16"));
+        assertTrue(_matcher.matches("fd00:1234::/32"));
+        assertFalse(_matcher.matches("fd00:1235::/32"));
+
+        // ranges
+        assertTrue(_matcher.matches("10.20.30.1-10.20.30.40"));
+        assertTrue(_matcher.matches("10.20.30.40 - 10.20.31.0"));
+        assertFalse(_matcher.matches("10.20.30.41-10.20.30.50"));
+        assertTrue(_matcher.matches("fd00:1234::1-fd00:1234::ff"));
+        assertFalse(_matcher.matches("10.20.30.50-10.20.30.1"));
+    }
+
+    @Test
+    public void range_prefixes() throws Exception {
+        // 10.0.0.1-10.0.0.6 = .1/32 .2/31 .4/31 .6/32
+        assertEquals(4, AddressRange.parse("10.0.0.1-10.0.0.6").prefixes().size());
+        assertEquals(1, AddressRange.parse("10.0.0.0-10.0.255.255").prefixes().size());
+        assertNull(AddressRange.parse("10.0.0.1-fd00::1"));
+        assertNull(AddressRange.parse("localhost-remote"));
+    }
+
+    @Test
+    public void index() throws Exception {
+        HostIndex index = new HostIndex().add("WIDE", "10.0.0.0/8").add("NARROW", "10.20.30.0/24")
+                .add("OTHER", "192.168.0.0/16").add("V6", "fd00::/8");
+        assertEquals("WIDE", index.environment(_matcher));
+        assertEquals("V6", index.environment(new CidrHostMatcher(Arrays.asList(InetAddress.getByName("fd00::1")))));
+        assertNull(index.environment(new CidrHostMatcher(Arrays.asList(InetAddress.getByName("172.16.0.1")))));
+        assertEquals("NARROW", new HostIndex().add("NARROW", "10.20.30.0/24").add("WIDE", "10.0.0.0/8")
+                .environment(_matcher));
+    }
+}
@@ -0,0 +1,95 @@
+package commons.configuration.ext.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class HostIndexTest {
+    static IdentityHostMatcher identities(final String... identities) {
+        return new IdentityHostMatcher() {
+            @Override
+            public Collection<String> identities() {
+                return Arrays.asList(identities);
+            }
+
+            @Override
+            public boolean matches(String host) {
+                return identities().contains(host);
+            }
+        };
+    }
+
+    static PatternHostMatcher pattern(final String hostName) {
+        return new PatternHostMatcher() {
+            @Override
+            public boolean matches(Pattern pattern) {
+                return pattern.matcher(hostName).matches();
+            }
+
+            @Override
+            public boolean matches(String host) {
+                return matches(HostIndex.compile(host));
+            }
+        };
+    }
+
+    @Test
+    public void environment_identity() throws Exception {
+        HostIndex index = new HostIndex().add("DEV", "dev.example.com").add("QA", "QA.example.com");
+        assertEquals("QA", index.environment(identities("qa.example.com")));
+        assertEquals(1, index.tried());
+        assertNull(index.environment(identities("prod.example.com")));
+    }
+
+    @Test
+    public void environment_pattern() throws Exception {
+        HostIndex index = new HostIndex().add("DEV", "/dev[0-9]+/").add("QA", "/qa[0-9]+/");
+        assertEquals("QA", index.environment(pattern("qa12")));
+        assertNull(index.environment(pattern("prod1")));
+    }
+
+    @Test
+    public void environment_plainMatcher() throws Exception {
+        HostIndex index = new HostIndex().add("DEV", "dev").add("QA", "qa");
+        assertEquals("QA", index.environment(new HostMatcher() {
+            @Override
+            public boolean matches(String host) {
+                return "qa".equals(host);
+            }
+        }));
+        assertEquals(2, index.tried());
+    }
+
+    /**
+     * matcher order first, then declaration order
+     */
+    @Test
+    public void environment_precedence() throws Exception {
+        HostIndex index = new HostIndex().add("DEV", "localhost").add("QA", "qa.example.com").add("QA", "localhost")
+                .add("PROD", "10.0.0.1");
+
+        // the first matcher with a match decides
+        CompoundHostMatcher matcher = new CompoundHostMatcher(Arrays.<HostMatcher> asList(identities(
+                "qa.example.com", "10.0.0.1"), identities("localhost")));
+        assertEquals("QA", index.environment(matcher));
+
+        // the first declared host of a matcher wins
+        assertEquals("QA", index.environment(identities("10.0.0.1", "qa.example.com")));
+
+        // the first environment declaring a host owns it
+        assertEquals("DEV", index.environment(identities("localhost")));
+    }
+
+    @Test
+    public void environments() throws Exception {
+        HostIndex index = new HostIndex().addEnvironment("EMPTY").add("DEV", "dev").add("DEV", "/dev.+/");
+        assertEquals(Arrays.asList("EMPTY", "DEV"), Arrays.asList(index.environments().toArray()));
+        assertEquals(Arrays.asList("dev", "/dev.+/"), index.hosts());
+        assertEquals(2, index.size());
+    }
+}
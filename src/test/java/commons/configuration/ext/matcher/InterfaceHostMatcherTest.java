@@ -0,0 +1,55 @@
+package commons.configuration.ext.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class InterfaceHostMatcherTest {
+    InterfaceHostMatcher _matcher = new InterfaceHostMatcher(InterfaceHostMatcher.DEFAULT_REFRESH_MILLIS);
+
+    @After
+    public void tearDown() throws Exception {
+        _matcher.stop();
+    }
+
+    @Test
+    public void match() throws Exception {
+        assertFalse(_matcher.matches(null));
+        assertFalse(_matcher.matches(""));
+        assertFalse(_matcher.matches("127.0.0.1"));
+        assertFalse(_matcher.matches("remote.host.invalid"));
+
+        // every interface address
+        for (InetAddress address : InterfaceHostMatcher.addresses()) {
+            assertTrue(address.getHostAddress(), _matcher.matches(address.getHostAddress()));
+            assertTrue(_matcher.matches(address.getHostAddress().toUpperCase()));
+        }
+    }
+
+    @Test
+    public void identities() throws Exception {
+        // addresses only, nothing that needs DNS
+        Set<String> literals = new HashSet<>();
+        for (InetAddress address : _matcher.getAddresses()) {
+            String literal = address.getHostAddress().toLowerCase();
+            literals.add(literal);
+            if (literal.indexOf('%') > 0) literals.add(literal.substring(0, literal.indexOf('%')));
+        }
+        assertEquals(literals, _matcher.identities());
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        _matcher.refresh();
+        for (InetAddress address : InterfaceHostMatcher.addresses()) {
+            assertTrue(_matcher.identities().contains(address.getHostAddress().toLowerCase()));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package commons.configuration.ext.matcher;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class InterfaceNameHostMatcherTest {
+    InterfaceHostMatcher _interfaces = new InterfaceHostMatcher(InterfaceHostMatcher.DEFAULT_REFRESH_MILLIS);
+
+    @After
+    public void tearDown() throws Exception {
+        _interfaces.stop();
+    }
+
+    @Test
+    public void match() throws Exception {
+        InterfaceNameHostMatcher matcher = new InterfaceNameHostMatcher(_interfaces);
+        assertFalse(matcher.matches(null));
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches("remote.host.invalid"));
+
+        // every name of every interface address
+        for (InetAddress address : _interfaces.getAddresses()) {
+            assertTrue(matcher.matches(address.getCanonicalHostName()));
+            assertTrue(matcher.matches(address.getCanonicalHostName().toUpperCase()));
+        }
+    }
+
+    /**
+     * Names are resolved by the refresh, matching only reads them
+     */
+    @Test
+    public void match_refreshed() throws Exception {
+        final AtomicReference<Set<InetAddress>> addresses = new AtomicReference<>(Collections.<InetAddress> emptySet());
+        InterfaceHostMatcher interfaces = new InterfaceHostMatcher(InterfaceHostMatcher.DEFAULT_REFRESH_MILLIS) {
+            @Override
+            public Set<InetAddress> getAddresses() {
+                return addresses.get();
+            }
+        };
+        try {
+            InterfaceNameHostMatcher matcher = new InterfaceNameHostMatcher(interfaces);
+            assertFalse(matcher.matches("name.host.invalid"));
+
+            addresses.set(Collections.singleton(InetAddress.getByAddress("name.host.invalid", new byte[] { 10, 0, 0,
+                    1 })));
+            assertFalse(matcher.matches("name.host.invalid"));
+            interfaces.refreshed();
+            assertTrue(matcher.matches("name.host.invalid"));
+        } finally {
+            interfaces.stop();
+        }
+    }
+}
@@ -7,5 +7,7 @@ import org.junit.runners.Suite.SuiteClasses;
 import commons.configuration.ext.util.MachineUtilsTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ LocalHostMatcherTest.class, MachineHostMatcherTest.class, MachinePatternHostMatcherTest.class })
+@SuiteClasses({ LocalHostMatcherTest.class, MachineHostMatcherTest.class, MachinePatternHostMatcherTest.class,
+        HostIndexTest.class, InterfaceHostMatcherTest.class, InterfaceNameHostMatcherTest.class,
+        CidrHostMatcherTest.class })
 public class _Suite {}
@@ -0,0 +1,79 @@
+package commons.configuration.ext.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+import commons.configuration.ext.RuntimeConfiguration;
+
+public class RuntimeConfigurationMetricsTest {
+    static final String XML = "<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">"
+            + "<context><hosts env=\"QA\"><host>qa.example.com</host></hosts>"
+            + "<hosts env=\"DEV\"><host>dev.example.com</host><host>localhost</host></hosts></context>"
+            + "<property key=\"a\"><value env=\"QA\">qa</value><value env=\"DEV\">dev</value></property>"
+            + "<property key=\"b\"><value env=\"QA\">qa</value></property>" + "</configuration>";
+
+    static class Recorder implements LoadMetricsListener {
+        LoadMetrics _metrics;
+
+        @Override
+        public void loaded(LoadMetrics metrics) {
+            _metrics = metrics;
+        }
+    }
+
+    @Test
+    public void listener() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        Recorder recorder = new Recorder();
+        config.addLoadMetricsListener(recorder);
+        config.load(new StringReader(XML));
+
+        LoadMetrics metrics = recorder._metrics;
+        assertEquals(XML.length(), metrics.getCharactersRead());
+        assertEquals(2, metrics.getPropertiesParsed());
+        assertEquals(1, metrics.getPropertiesKept());
+        assertEquals(2, metrics.getEnvironmentsSeen());
+        assertTrue(metrics.getHostsTried() > 0);
+        assertTrue(metrics.getParseNanos() > 0);
+        assertTrue(metrics.getResolveNanos() > 0);
+        assertTrue(metrics.getTotalNanos() >= metrics.getParseNanos() + metrics.getResolveNanos());
+    }
+
+    @Test
+    public void listener_removed() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        Recorder recorder = new Recorder();
+        config.addLoadMetricsListener(recorder);
+        assertTrue(config.removeLoadMetricsListener(recorder));
+        config.load(new StringReader(XML));
+
+        assertNull(recorder._metrics);
+    }
+
+    @Test
+    public void register() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        RuntimeConfigurationMetrics metrics = RuntimeConfigurationMetrics.register(config);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertTrue(server.isRegistered(metrics.getObjectName()));
+
+            config.load(new StringReader(XML));
+            config.load(new StringReader(XML));
+            assertEquals(2L, server.getAttribute(metrics.getObjectName(), "LoadCount"));
+            assertEquals(1, server.getAttribute(metrics.getObjectName(), "LastPropertiesKept"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(metrics.getObjectName()));
+    }
+}
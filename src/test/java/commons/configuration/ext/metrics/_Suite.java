@@ -0,0 +1,9 @@
+package commons.configuration.ext.metrics;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({ RuntimeConfigurationMetricsTest.class })
+public class _Suite {}
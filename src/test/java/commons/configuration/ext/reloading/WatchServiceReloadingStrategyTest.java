@@ -0,0 +1,116 @@
+package commons.configuration.ext.reloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import commons.configuration.ext.ConcurrentRuntimeConfiguration;
+
+public class WatchServiceReloadingStrategyTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    WatchServiceReloadingStrategy _strategy = new WatchServiceReloadingStrategy(50);
+
+    @After
+    public void tearDown() throws Exception {
+        _strategy.stop();
+    }
+
+    void write(File file, String value) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">");
+        xml.append("<context><hosts env=\"0\"><host>localhost</host></hosts></context>");
+        xml.append("<property key=\"key\"><value env=\"0\">").append(value).append("</value></property>");
+        xml.append("</configuration>");
+        Files.write(file.toPath(), xml.toString().getBytes("UTF-8"));
+    }
+
+    @Test
+    public void reload() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "runtime.xml");
+        write(file, "value");
+
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(file);
+        config.setReloadingStrategy(_strategy);
+        assertFalse(_strategy.reloadingRequired());
+        assertEquals("value", config.getString("key"));
+
+        write(file, "changed value");
+
+        // reloaded in the background
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!"changed value".equals(config.getString("key")) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20);
+        }
+        assertEquals("changed value", config.getString("key"));
+        assertFalse(_strategy.reloadingRequired());
+    }
+
+    void await(ConcurrentRuntimeConfiguration config, String value) throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!value.equals(config.getString("key")) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void reload_sameSize() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "runtime.xml");
+        write(file, "value a");
+        long lastModified = file.lastModified();
+
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(file);
+        config.setReloadingStrategy(_strategy);
+        assertEquals("value a", config.getString("key"));
+
+        // same size and modification time, only the content changed
+        write(file, "value b");
+        file.setLastModified(lastModified);
+
+        await(config, "value b");
+        assertEquals("value b", config.getString("key"));
+    }
+
+    @Test
+    public void reload_failure() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "runtime.xml");
+        write(file, "value");
+
+        final AtomicInteger reloads = new AtomicInteger();
+        ConcurrentRuntimeConfiguration config = new ConcurrentRuntimeConfiguration(file) {
+            @Override
+            public void reload() {
+                if (reloads.incrementAndGet() == 1) throw new IllegalStateException("reload failed");
+                super.reload();
+            }
+        };
+        config.setReloadingStrategy(_strategy);
+
+        // the first reload fails, the watcher keeps watching
+        write(file, "changed value");
+        long timeout = System.currentTimeMillis() + 10000;
+        while (reloads.get() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, reloads.get());
+        assertEquals("value", config.getString("key"));
+
+        write(file, "changed again");
+        await(config, "changed again");
+        assertEquals("changed again", config.getString("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void debounce_invalid() throws Exception {
+        new WatchServiceReloadingStrategy(-1);
+    }
+}
@@ -0,0 +1,9 @@
+package commons.configuration.ext.reloading;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({ WatchServiceReloadingStrategyTest.class })
+public class _Suite {}
@@ -1,14 +1,22 @@
 package commons.configuration.ext.spring;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
 
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import commons.configuration.ext.FlatCompositeConfiguration;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration({ "classpath:configuration-factory-test.xml" })
 public class ConfigurationFactoryTest {
@@ -24,6 +32,23 @@ public class ConfigurationFactoryTest {
         assertEquals(config.getString("key2"), "value2");
     }
 
+    @Test
+    public void flatten() throws Exception {
+        MapConfiguration first = new MapConfiguration(new HashMap<String, Object>());
+        first.setProperty("key", "first");
+        MapConfiguration second = new MapConfiguration(new HashMap<String, Object>());
+        second.setProperty("key", "second");
+
+        ConfigurationFactory factory = new ConfigurationFactory(Arrays.<Configuration> asList(first, second));
+        factory.setFlatten(true);
+        assertTrue(factory.isSingleton());
+
+        Configuration config = factory.getObject();
+        assertTrue(config instanceof FlatCompositeConfiguration);
+        assertSame(config, factory.getObject());
+        assertEquals("first", config.getString("key"));
+    }
+
     /**
      * Mocks a real class that would need to have a {@link Configuration} injected
      */
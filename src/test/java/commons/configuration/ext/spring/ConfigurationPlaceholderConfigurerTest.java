@@ -2,18 +2,30 @@ package commons.configuration.ext.spring;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.StringReader;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import commons.configuration.ext.RuntimeConfiguration;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration({ "classpath:configuration-placeholder-configurer-test.xml" })
 public class ConfigurationPlaceholderConfigurerTest {
@@ -21,6 +33,13 @@ public class ConfigurationPlaceholderConfigurerTest {
     @Autowired
     ConfiguredClass _configuredClass;
 
+    static Configuration config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", "A");
+        values.put("b", "[#{a}]");
+        return new MapConfiguration(values);
+    }
+
     @Test
     public void basic_property_configurer() throws Exception {
         assertEquals("basicValue", _configuredClass.basicValue);
@@ -58,6 +77,138 @@ public class ConfigurationPlaceholderConfigurerTest {
         assertEquals("mapValue", map.get("mapKey"));
     }
 
+    @Test
+    public void parseString() throws Exception {
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer();
+        assertEquals("A", configurer.parseString(config(), "#{a}", null));
+        assertEquals("x[A]y", configurer.parseString(config(), "x#{b}y", null));
+
+        // values without placeholders are returned as is
+        String plain = new String("plain");
+        assertSame(plain, configurer.parseString(config(), plain, null));
+    }
+
+    @Test(expected = BeanDefinitionStoreException.class)
+    public void parseString_unresolvable() throws Exception {
+        new ConfigurationPlaceholderConfigurer().parseString(config(), "#{missing}", null);
+    }
+
+    @Test
+    public void parseString_ignoreUnresolvable() throws Exception {
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer();
+        configurer.setIgnoreUnresolvablePlaceholder(true);
+
+        // the rest of the value is left as is after an unresolvable placeholder
+        assertEquals("A #{missing} #{a}", configurer.parseString(config(), "#{a} #{missing} #{a}", null));
+    }
+
+    @Test
+    public void parseString_prefixSuffix() throws Exception {
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer();
+        configurer.setPlaceholderPrefix("@@");
+        configurer.setPlaceholderSuffix("@@");
+        assertEquals("xAy#{a}", configurer.parseString(config(), "x@@a@@y#{a}", null));
+    }
+
+    @Test
+    public void placeholder_cycle() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", "#{b}");
+        values.put("b", "#{c}");
+        values.put("c", "x#{b}");
+        try {
+            new ConfigurationPlaceholderConfigurer().parseString(new MapConfiguration(values), "#{a}", null);
+            fail("cycle expected");
+        } catch (BeanDefinitionStoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("a -> b -> c -> b"));
+        }
+    }
+
+    @Test
+    public void processConfiguration_memoized() throws Exception {
+        final Map<String, Integer> resolutions = new HashMap<>();
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer() {
+            @Override
+            protected String resolvePlaceholder(String placeholder, Configuration config) {
+                Integer count = resolutions.get(placeholder);
+                resolutions.put(placeholder, count == null ? 1 : count + 1);
+                return super.resolvePlaceholder(placeholder, config);
+            }
+        };
+
+        DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+        for (int i = 0; i < 3; i++) {
+            factory.registerBeanDefinition("bean" + i, BeanDefinitionBuilder.genericBeanDefinition(Object.class)
+                    .addPropertyValue("value", "#{b}").getBeanDefinition());
+        }
+        configurer.processConfiguration(factory, config());
+
+        assertEquals(Integer.valueOf(1), resolutions.get("a"));
+        assertEquals(Integer.valueOf(1), resolutions.get("b"));
+        assertEquals("[A]", factory.getBeanDefinition("bean2").getPropertyValues().getPropertyValue("value")
+                .getValue());
+    }
+
+    /**
+     * Typed values resolve to their source text
+     */
+    @Test
+    public void placeholder_typed() throws Exception {
+        RuntimeConfiguration config = new RuntimeConfiguration();
+        config.load(new StringReader("<configuration xmlns=\"http://commons.apache.org/schema/env-configuration\">"
+                + "<context><hosts env=\"local\"><host>localhost</host></hosts></context>"
+                + "<property key=\"timeout\"><value env=\"*\" type=\"duration\">30s</value></property>"
+                + "</configuration>"));
+        assertEquals("timeout=30s", new ConfigurationPlaceholderConfigurer().parseString(config, "timeout=#{timeout}",
+                null));
+    }
+
+    @Test
+    public void parallel_property_configurer() throws Exception {
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer();
+        configurer.setParallel(true);
+
+        DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+        for (int i = 0; i < 100; i++) {
+            factory.registerBeanDefinition("bean" + i, BeanDefinitionBuilder.genericBeanDefinition(Object.class)
+                    .addPropertyValue("value", i % 2 == 0 ? "#{b}" : "plain").getBeanDefinition());
+        }
+        configurer.processConfiguration(factory, config());
+
+        assertEquals("[A]", factory.getBeanDefinition("bean98").getPropertyValues().getPropertyValue("value")
+                .getValue());
+        assertEquals("plain", factory.getBeanDefinition("bean99").getPropertyValues().getPropertyValue("value")
+                .getValue());
+    }
+
+    /**
+     * The first failure in registration order is reported with the bean name and resource of its definition
+     */
+    @Test
+    public void parallel_property_configurer_failure() throws Exception {
+        ConfigurationPlaceholderConfigurer configurer = new ConfigurationPlaceholderConfigurer();
+        configurer.setParallel(true);
+
+        DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+        for (int i = 0; i < 100; i++) {
+            AbstractBeanDefinition definition = BeanDefinitionBuilder.genericBeanDefinition(Object.class)
+                    .addPropertyValue("value", i == 40 || i == 70 ? "#{missing}" : "#{a}").getBeanDefinition();
+            definition.setResourceDescription("beans-" + i + ".xml");
+            factory.registerBeanDefinition("bean" + i, definition);
+        }
+
+        try {
+            configurer.processConfiguration(factory, config());
+            fail("unresolvable placeholder");
+        } catch (BeanDefinitionStoreException e) {
+            assertEquals("bean40", e.getBeanName());
+            assertEquals("beans-40.xml", e.getResourceDescription());
+            assertTrue(e.getMessage(), e.getMessage().contains("bean40"));
+            assertTrue(e.getMessage(), e.getMessage().contains("beans-40.xml"));
+            assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+        }
+    }
+
     public static class ConfiguredClass {
         String              indexValue, basicValue, nestedValue;
         List<String>        listValue;
@@ -0,0 +1,28 @@
+package commons.configuration.ext.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PlaceholderTemplateTest {
+    @Test
+    public void compile() throws Exception {
+        PlaceholderTemplate template = PlaceholderTemplate.compile("x#{a}y#{b}#{open", "#{", "}");
+        List<PlaceholderTemplate.Segment> segments = template.segments();
+        assertEquals(5, segments.size());
+        assertEquals("x", segments.get(0)._text);
+        assertTrue(segments.get(1)._placeholder);
+        assertEquals("a", segments.get(1)._text);
+        assertEquals("y", segments.get(2)._text);
+        assertEquals("b", segments.get(3)._text);
+        assertEquals("#{open", segments.get(4)._text);
+        assertFalse(segments.get(4)._placeholder);
+        assertTrue(template.hasPlaceholders());
+
+        assertFalse(PlaceholderTemplate.compile("plain", "#{", "}").hasPlaceholders());
+    }
+}
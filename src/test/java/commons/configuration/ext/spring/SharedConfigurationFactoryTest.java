@@ -0,0 +1,31 @@
+package commons.configuration.ext.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import commons.configuration.ext.RuntimeConfigurationRegistry;
+import commons.configuration.ext.SharedConfiguration;
+
+public class SharedConfigurationFactoryTest {
+    @Test
+    public void getObject() throws Exception {
+        SharedConfigurationFactory first = new SharedConfigurationFactory(new ClassPathResource(
+                "configuration-placeholder-configurer-runtime-config.xml"));
+        SharedConfigurationFactory second = new SharedConfigurationFactory(new ClassPathResource(
+                "configuration-placeholder-configurer-runtime-config.xml"));
+
+        Configuration config = first.getObject();
+        assertSame(config, second.getObject());
+        assertEquals("basicValue", config.getString("basic"));
+
+        RuntimeConfigurationRegistry registry = RuntimeConfigurationRegistry.instance();
+        assertEquals(2, registry.getReferences((SharedConfiguration) config));
+        first.destroy();
+        second.destroy();
+        assertEquals(0, registry.getReferences((SharedConfiguration) config));
+    }
+}
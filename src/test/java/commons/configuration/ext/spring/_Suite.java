@@ -5,5 +5,6 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ ConfigurationFactoryTest.class, ConfigurationPlaceholderConfigurerTest.class })
+@SuiteClasses({ ConfigurationFactoryTest.class, ConfigurationPlaceholderConfigurerTest.class,
+        PlaceholderTemplateTest.class, SharedConfigurationFactoryTest.class })
 public class _Suite {}
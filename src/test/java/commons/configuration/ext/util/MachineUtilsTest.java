@@ -1,12 +1,41 @@
 package commons.configuration.ext.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
 import org.junit.Test;
 
 import commons.configuration.ext.util.MachineUtils;
 
 public class MachineUtilsTest {
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(MachineUtils.HOST_NAME_PROPERTY);
+        System.clearProperty(MachineUtils.HOST_ADDRESS_PROPERTY);
+        System.clearProperty(MachineUtils.TIMEOUT_PROPERTY);
+        MachineUtils.setResolver(null);
+    }
+
+    static MachineIdentityResolver stub(final MachineIdentity identity) {
+        return new MachineIdentityResolver() {
+            @Override
+            public String resolveAddress() {
+                return identity.getHostAddress();
+            }
+
+            @Override
+            public MachineIdentity resolve(String address) {
+                return identity;
+            }
+        };
+    }
+
     /**
      * Test that everything returns an answer
      */
@@ -16,4 +45,97 @@ public class MachineUtilsTest {
         assertNotNull(MachineUtils.hostName());
         assertNotNull(MachineUtils.fqdn());
     }
+
+    @Test
+    public void resolver() throws Exception {
+        MachineUtils.setResolver(stub(new MachineIdentity("stub", "10.0.0.1", "stub.example.com")));
+        assertEquals("stub", MachineUtils.hostName());
+        assertEquals("10.0.0.1", MachineUtils.hostAddress());
+        assertEquals("stub.example.com", MachineUtils.fqdn());
+    }
+
+    @Test
+    public void override() throws Exception {
+        System.setProperty(MachineUtils.HOST_NAME_PROPERTY, "override");
+        System.setProperty(MachineUtils.HOST_ADDRESS_PROPERTY, "10.0.0.2");
+        MachineUtils.setResolver(stub(new MachineIdentity("stub", "10.0.0.1", "stub.example.com")));
+        assertEquals("override", MachineUtils.hostName());
+        assertEquals("10.0.0.2", MachineUtils.hostAddress());
+    }
+
+    /**
+     * A hanging resolver must not block callers beyond the timeout, the address is known without DNS
+     */
+    @Test(timeout = 5000)
+    public void timeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        System.setProperty(MachineUtils.TIMEOUT_PROPERTY, "50");
+        System.setProperty(MachineUtils.HOST_NAME_PROPERTY, "override");
+        MachineUtils.setResolver(new MachineIdentityResolver() {
+            @Override
+            public String resolveAddress() {
+                return "10.0.0.3";
+            }
+
+            @Override
+            public MachineIdentity resolve(String address) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new MachineIdentity("late", address, "late.example.com");
+            }
+        });
+
+        // fallback with the address while the names are pending
+        assertEquals("override", MachineUtils.hostName());
+        assertEquals("10.0.0.3", MachineUtils.hostAddress());
+        assertEquals("override", MachineUtils.fqdn());
+
+        // the discovered identity once available
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!"late.example.com".equals(MachineUtils.fqdn()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("late.example.com", MachineUtils.fqdn());
+        assertEquals("10.0.0.3", MachineUtils.hostAddress());
+        assertEquals("override", MachineUtils.hostName());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        MachineUtils.setResolver(new MachineIdentityResolver() {
+            @Override
+            public String resolveAddress() throws IOException {
+                throw new IOException("expected");
+            }
+
+            @Override
+            public MachineIdentity resolve(String address) throws IOException {
+                throw new IOException("unexpected");
+            }
+        });
+        assertNull(MachineUtils.hostAddress());
+        assertTrue(MachineUtils.identity() != null);
+    }
+
+    @Test
+    public void failure_names() throws Exception {
+        MachineUtils.setResolver(new MachineIdentityResolver() {
+            @Override
+            public String resolveAddress() {
+                return "10.0.0.4";
+            }
+
+            @Override
+            public MachineIdentity resolve(String address) throws IOException {
+                throw new IOException("expected");
+            }
+        });
+
+        // the address survives a failed name lookup
+        assertEquals("10.0.0.4", MachineUtils.hostAddress());
+    }
 }